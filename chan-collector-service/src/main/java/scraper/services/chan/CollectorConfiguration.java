@@ -0,0 +1,82 @@
+package scraper.services.chan;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import scraper.services.chan.processor.BoardCollector;
+import scraper.services.chan.processor.FairWorkerPool;
+import scraper.services.chan.processor.PageCollector;
+import scraper.services.chan.processor.WorkerPool;
+import scraper.services.chan.repository.ThreadBatchWriter;
+
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration for chan collector service.
+ */
+@Configuration
+public class CollectorConfiguration {
+
+    @Bean(name = "threadFetchPool", destroyMethod = "shutdownNow")
+    public static WorkerPool getWorkerPool(@Value("${scraper.collector.thread-fetch.concurrency:4}") int concurrency,
+            @Value("${scraper.collector.thread-fetch.max-per-board:2}") int maxPerBoard) {
+        return new FairWorkerPool(concurrency, maxPerBoard, new CustomizableThreadFactory("thread-fetch-"));
+    }
+
+    @Bean(name = "threadParsePool", destroyMethod = "shutdownNow")
+    public static WorkerPool getParsePool(@Value("${scraper.collector.thread-parse.concurrency:2}") int concurrency,
+            @Value("${scraper.collector.thread-parse.max-per-board:1}") int maxPerBoard) {
+        return new FairWorkerPool(concurrency, maxPerBoard, new CustomizableThreadFactory("thread-parse-"));
+    }
+
+    @Bean(name = "boardRunExecutor", destroyMethod = "shutdownNow")
+    public static ExecutorService getBoardRunExecutor(@Value("${scraper.collector.engine.max-boards:4}") int maxBoards) {
+        return Executors.newFixedThreadPool(maxBoards, new CustomizableThreadFactory("board-run-"));
+    }
+
+    @Bean(name = "pageFetchExecutor", destroyMethod = "shutdownNow")
+    public static ExecutorService getPageFetchExecutor(@Value("${scraper.collector.page-prefetch.depth:0}") int prefetchDepth) {
+        return Executors.newFixedThreadPool(Math.max(1, prefetchDepth), new CustomizableThreadFactory("page-fetch-"));
+    }
+
+    @Bean(name = "mediaExecutor", destroyMethod = "shutdownNow")
+    public static ExecutorService getMediaExecutor(@Value("${scraper.collector.media.concurrency:2}") int concurrency,
+            @Value("${scraper.collector.media.queue-size:1000}") int queueSize) {
+        return new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), new CustomizableThreadFactory("media-"));
+    }
+
+    @Bean
+    public static MeterBinder getWorkerPoolMetrics(@Qualifier("threadFetchPool") WorkerPool fetchPool, @Qualifier("threadParsePool") WorkerPool parsePool) {
+        return registry -> {
+            Gauge.builder("scraper.worker.queued", fetchPool, WorkerPool::getQueued).register(registry);
+            Gauge.builder("scraper.worker.running", fetchPool, WorkerPool::getRunning).register(registry);
+            Gauge.builder("scraper.parser.queued", parsePool, WorkerPool::getQueued).register(registry);
+            Gauge.builder("scraper.parser.running", parsePool, WorkerPool::getRunning).register(registry);
+        };
+    }
+
+    @Bean
+    public static MeterBinder getPipelineMetrics(BoardCollector boardCollector, PageCollector pageCollector, ThreadBatchWriter threadWriter) {
+        return registry -> {
+            Gauge.builder("scraper.pipeline.queue.depth", boardCollector, BoardCollector::getQueuedPages).tags("stage", "page").register(registry);
+            Gauge.builder("scraper.pipeline.queue.depth", pageCollector, PageCollector::getQueuedFetches).tags("stage", "fetch").register(registry);
+            Gauge.builder("scraper.pipeline.queue.depth", pageCollector, PageCollector::getQueuedParses).tags("stage", "parse").register(registry);
+            Gauge.builder("scraper.pipeline.queue.depth", threadWriter, ThreadBatchWriter::getPending).tags("stage", "persist").register(registry);
+        };
+    }
+
+    @Bean(destroyMethod = "")
+    public static FileSystem getFileSystem() {
+        return FileSystems.getDefault();
+    }
+}
@@ -0,0 +1,76 @@
+package scraper.services.chan.dto;
+
+import scraper.common.Utils;
+
+/**
+ * Statistics of known threads index of one board.
+ */
+public class KnownThreadsJsonDto {
+
+    private final String board;
+
+    private final long threads;
+
+    private final long memoryFootprint;
+
+    private final double estimatedFalsePositiveRate;
+
+    private final double observedFalsePositiveRate;
+
+    public KnownThreadsJsonDto(String board, long threads, long memoryFootprint, double estimatedFalsePositiveRate, double observedFalsePositiveRate) {
+        this.board = board;
+        this.threads = threads;
+        this.memoryFootprint = memoryFootprint;
+        this.estimatedFalsePositiveRate = estimatedFalsePositiveRate;
+        this.observedFalsePositiveRate = observedFalsePositiveRate;
+    }
+
+    public String getBoard() {
+        return board;
+    }
+
+    public long getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return memory used by the index, in bytes
+     */
+    public long getMemoryFootprint() {
+        return memoryFootprint;
+    }
+
+    /**
+     * @return false positive rate estimated from index size and number of threads
+     */
+    public double getEstimatedFalsePositiveRate() {
+        return estimatedFalsePositiveRate;
+    }
+
+    /**
+     * @return fraction of positive index answers that turned out not to be stored threads
+     */
+    public double getObservedFalsePositiveRate() {
+        return observedFalsePositiveRate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        KnownThreadsJsonDto other = (KnownThreadsJsonDto) o;
+
+        return Utils.computeEq(board, other.board, threads, other.threads, memoryFootprint, other.memoryFootprint, estimatedFalsePositiveRate,
+                other.estimatedFalsePositiveRate, observedFalsePositiveRate, other.observedFalsePositiveRate);
+    }
+
+    @Override
+    public int hashCode() {
+        return Utils.computeHash(board, threads, memoryFootprint, estimatedFalsePositiveRate, observedFalsePositiveRate);
+    }
+}
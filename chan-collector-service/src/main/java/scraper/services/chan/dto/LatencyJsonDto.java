@@ -0,0 +1,95 @@
+package scraper.services.chan.dto;
+
+import scraper.common.Utils;
+
+import java.util.Map;
+
+/**
+ * Latency histogram of one stage of the collection.
+ */
+public class LatencyJsonDto {
+
+    private final long count;
+
+    private final double meanMillis;
+
+    private final double maxMillis;
+
+    private final double p50Millis;
+
+    private final double p90Millis;
+
+    private final double p99Millis;
+
+    private final Map<String, Long> buckets;
+
+    public LatencyJsonDto(long count, double meanMillis, double maxMillis, double p50Millis, double p90Millis, double p99Millis, Map<String, Long> buckets) {
+        this.count = count;
+        this.meanMillis = meanMillis;
+        this.maxMillis = maxMillis;
+        this.p50Millis = p50Millis;
+        this.p90Millis = p90Millis;
+        this.p99Millis = p99Millis;
+        this.buckets = buckets;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanMillis() {
+        return meanMillis;
+    }
+
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+    /**
+     * @return upper bound of the bucket holding median, in milliseconds
+     */
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    /**
+     * @return upper bound of the bucket holding 90th percentile, in milliseconds
+     */
+    public double getP90Millis() {
+        return p90Millis;
+    }
+
+    /**
+     * @return upper bound of the bucket holding 99th percentile, in milliseconds
+     */
+    public double getP99Millis() {
+        return p99Millis;
+    }
+
+    /**
+     * @return number of measurements per bucket, keyed by bucket upper bound in milliseconds. Last bucket, <tt>+Inf</tt>, has no upper bound
+     */
+    public Map<String, Long> getBuckets() {
+        return buckets;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        LatencyJsonDto other = (LatencyJsonDto) o;
+
+        return Utils.computeEq(count, other.count, meanMillis, other.meanMillis, maxMillis, other.maxMillis, p50Millis, other.p50Millis, p90Millis, other.p90Millis,
+                p99Millis, other.p99Millis, buckets, other.buckets);
+    }
+
+    @Override
+    public int hashCode() {
+        return Utils.computeHash(count, meanMillis, maxMillis, p50Millis, p90Millis, p99Millis, buckets);
+    }
+}
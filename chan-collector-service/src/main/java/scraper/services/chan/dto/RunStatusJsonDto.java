@@ -0,0 +1,247 @@
+package scraper.services.chan.dto;
+
+import scraper.common.Utils;
+
+/**
+ * Status, progress and throughput of the collection run of one board.
+ */
+public class RunStatusJsonDto {
+
+    private String id;
+
+    private String board;
+
+    private String state;
+
+    private String error;
+
+    private long startTime;
+
+    private Long finishTime;
+
+    private int currentPage;
+
+    private long pages;
+
+    private long notModifiedPages;
+
+    private long threads;
+
+    private long posts;
+
+    private long errors;
+
+    private long bytes;
+
+    private double postsPerSecond;
+
+    private double bytesPerSecond;
+
+    private LatencyJsonDto fetch;
+
+    private LatencyJsonDto parse;
+
+    private LatencyJsonDto persist;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getBoard() {
+        return board;
+    }
+
+    public void setBoard(String board) {
+        this.board = board;
+    }
+
+    /**
+     * @return <tt>RUNNING</tt>, <tt>PAUSED</tt>, <tt>CANCELLING</tt>, <tt>FINISHED</tt>, <tt>CANCELLED</tt> or <tt>FAILED</tt>
+     */
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    /**
+     * @return message of the error that failed the run or <tt>null</tt>
+     */
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    /**
+     * @return start time of the run, in milliseconds since epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    /**
+     * @return finish time of the run, in milliseconds since epoch, or <tt>null</tt> if run is still running
+     */
+    public Long getFinishTime() {
+        return finishTime;
+    }
+
+    public void setFinishTime(Long finishTime) {
+        this.finishTime = finishTime;
+    }
+
+    /**
+     * @return index of the page being collected
+     */
+    public int getCurrentPage() {
+        return currentPage;
+    }
+
+    public void setCurrentPage(int currentPage) {
+        this.currentPage = currentPage;
+    }
+
+    /**
+     * @return number of collected pages, including not modified ones
+     */
+    public long getPages() {
+        return pages;
+    }
+
+    public void setPages(long pages) {
+        this.pages = pages;
+    }
+
+    /**
+     * @return number of pages skipped, because they have not changed since previous run
+     */
+    public long getNotModifiedPages() {
+        return notModifiedPages;
+    }
+
+    public void setNotModifiedPages(long notModifiedPages) {
+        this.notModifiedPages = notModifiedPages;
+    }
+
+    public long getThreads() {
+        return threads;
+    }
+
+    public void setThreads(long threads) {
+        this.threads = threads;
+    }
+
+    public long getPosts() {
+        return posts;
+    }
+
+    public void setPosts(long posts) {
+        this.posts = posts;
+    }
+
+    /**
+     * @return number of pages and threads that failed to be downloaded or parsed
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    public void setErrors(long errors) {
+        this.errors = errors;
+    }
+
+    /**
+     * @return number of downloaded bytes, after decompression
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    public double getPostsPerSecond() {
+        return postsPerSecond;
+    }
+
+    public void setPostsPerSecond(double postsPerSecond) {
+        this.postsPerSecond = postsPerSecond;
+    }
+
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public void setBytesPerSecond(double bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * @return latency of page and thread downloads, including waits for rate limit and retries
+     */
+    public LatencyJsonDto getFetch() {
+        return fetch;
+    }
+
+    public void setFetch(LatencyJsonDto fetch) {
+        this.fetch = fetch;
+    }
+
+    /**
+     * @return latency of building threads from downloaded pages
+     */
+    public LatencyJsonDto getParse() {
+        return parse;
+    }
+
+    public void setParse(LatencyJsonDto parse) {
+        this.parse = parse;
+    }
+
+    /**
+     * @return latency of passing threads to writer and flushing it
+     */
+    public LatencyJsonDto getPersist() {
+        return persist;
+    }
+
+    public void setPersist(LatencyJsonDto persist) {
+        this.persist = persist;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        RunStatusJsonDto other = (RunStatusJsonDto) o;
+
+        return Utils.computeEq(id, other.id, board, other.board, state, other.state, error, other.error, startTime, other.startTime, finishTime, other.finishTime, currentPage,
+                other.currentPage, pages, other.pages, notModifiedPages, other.notModifiedPages, threads, other.threads, posts, other.posts, errors, other.errors, bytes,
+                other.bytes, postsPerSecond, other.postsPerSecond, bytesPerSecond, other.bytesPerSecond, fetch, other.fetch, parse, other.parse, persist, other.persist);
+    }
+
+    @Override
+    public int hashCode() {
+        return Utils.computeHash(id, board, state, error, startTime, finishTime, currentPage, pages, notModifiedPages, threads, posts, errors, bytes, postsPerSecond,
+                bytesPerSecond, fetch, parse, persist);
+    }
+}
@@ -2,16 +2,24 @@ package scraper.services.chan.endpoint;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 import scraper.properties.ClassPropertyDescriptorFactory;
+import scraper.services.chan.dto.KnownThreadsJsonDto;
+import scraper.services.chan.dto.RunStatusJsonDto;
 import scraper.services.chan.dto.WorkerDescriptorJsonDto;
+import scraper.services.chan.processor.CollectionEngine;
+import scraper.services.chan.processor.CollectionRun;
 import scraper.services.chan.processor.Settings;
+import scraper.services.chan.repository.KnownThreadsIndex;
 import scraper.services.common.StatusMessage;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Controller for managing whole service.
@@ -22,25 +30,95 @@ public class ChanCollectorController {
     private final WorkerDescriptorJsonDto metadata =
             new WorkerDescriptorJsonDto("Chan Collector", "4Chan boards Collector", ClassPropertyDescriptorFactory.buildClassPropertyDescriptor(Settings.class, new Settings()));
 
-    private final AsyncRunner runner;
+    private final CollectionEngine engine;
+
+    private final KnownThreadsIndex knownThreads;
 
     @Autowired
-    public ChanCollectorController(AsyncRunner runner) {
-        this.runner = runner;
+    public ChanCollectorController(CollectionEngine engine, KnownThreadsIndex knownThreads) {
+        this.engine = engine;
+        this.knownThreads = knownThreads;
     }
 
     /**
-     * Runs the worker.
+     * Runs the worker. Run is dropped if the board is already being collected.
      *
      * @param settings settings for the run
-     * @return status message
+     * @return status message, with id of the run if it was started
      */
     @RequestMapping(path = "/worker/run", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE)
     public StatusMessage run(@RequestBody Settings settings) throws IOException {
         ClassPropertyDescriptorFactory.validate(settings);
-        runner.runAsync(settings);
+        CollectionRun run = engine.submit(settings);
+
+        return run == null ? new StatusMessage("Already running") : new StatusMessage("Run %s", run.getId());
+    }
+
+    /**
+     * Cancels the run. Page being collected, with all its threads, is finished and checkpoint saved before the run ends.
+     *
+     * @param runId id of the run
+     * @return status message
+     */
+    @RequestMapping(path = "/worker/run/{runId}/cancel", method = RequestMethod.POST)
+    public StatusMessage cancel(@PathVariable String runId) {
+        return new StatusMessage(engine.cancel(runId) ? "Cancelled" : "Already ended");
+    }
+
+    /**
+     * Pauses the run. Page being collected, with all its threads, is finished, no new pages are downloaded until the run is resumed.
+     *
+     * @param runId id of the run
+     * @return status message
+     */
+    @RequestMapping(path = "/worker/run/{runId}/pause", method = RequestMethod.POST)
+    public StatusMessage pause(@PathVariable String runId) {
+        return new StatusMessage(engine.pause(runId) ? "Paused" : "Not running");
+    }
+
+    /**
+     * Resumes paused run.
+     *
+     * @param runId id of the run
+     * @return status message
+     */
+    @RequestMapping(path = "/worker/run/{runId}/resume", method = RequestMethod.POST)
+    public StatusMessage resume(@PathVariable String runId) {
+        return new StatusMessage(engine.resume(runId) ? "Resumed" : "Not running");
+    }
+
+    /**
+     * Runs the worker for many boards at once. Boards that are already being collected are skipped.
+     *
+     * @param settings settings for the runs, one per board
+     * @return status message
+     */
+    @RequestMapping(path = "/worker/run-all", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public StatusMessage runAll(@RequestBody List<Settings> settings) throws IOException {
+        settings.forEach(ClassPropertyDescriptorFactory::validate);
+        Set<String> started = engine.submitAll(settings);
 
-        return new StatusMessage("Run");
+        return new StatusMessage(String.format("Run %d of %d boards", started.size(), settings.size()));
+    }
+
+    /**
+     * Gets boards which are being collected.
+     *
+     * @return names of the boards with queued or running collection
+     */
+    @RequestMapping(path = "/worker/running", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Set<String> getRunningBoards() {
+        return engine.getRunningBoards();
+    }
+
+    /**
+     * Gets status of the collection runs. Meant to be polled while boards are being collected.
+     *
+     * @return progress, throughput and latency histograms of the last run of every board
+     */
+    @RequestMapping(path = "/worker/status", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<RunStatusJsonDto> getStatus() {
+        return engine.getStatus();
     }
 
     /**
@@ -52,4 +130,14 @@ public class ChanCollectorController {
     public WorkerDescriptorJsonDto getMetadata() {
         return metadata;
     }
+
+    /**
+     * Gets statistics of known threads index.
+     *
+     * @return memory footprint and false positive rates per board
+     */
+    @RequestMapping(path = "/worker/known-threads", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<KnownThreadsJsonDto> getKnownThreads() {
+        return knownThreads.getStatistics();
+    }
 }
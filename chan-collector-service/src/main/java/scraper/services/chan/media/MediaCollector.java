@@ -0,0 +1,163 @@
+package scraper.services.chan.media;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import scraper.common.StringUtils;
+import scraper.services.chan.model.PostDs;
+import scraper.services.chan.model.ThreadDs;
+import scraper.services.chan.repository.PostMediaRepository;
+import scraper.services.chan.web.WebService;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service collecting files and thumbnails of written posts into storage service.
+ * <p>
+ * Media are collected in the background by media executor, after their posts were written, so text collection never waits for them. Executor has bounded number of
+ * workers and bounded queue - when the queue is full, media are dropped rather than blocking the writer. Dropped media are counted by <tt>scraper.media.dropped</tt>.
+ * <p>
+ * Media are streamed from the archive straight to storage service. File with md5 already linked to some post is not downloaded again - its storage id is linked to the new
+ * post. Storage ids are linked as <tt>fileId</tt> and <tt>thumbnailId</tt> of the post. Every media is measured by <tt>scraper.media.collect</tt> timer, tagged with
+ * kind and outcome.
+ */
+@Service
+public class MediaCollector {
+
+    private final Log logger = LogFactory.getLog(MediaCollector.class);
+
+    private final WebService webService;
+
+    private final StorageClient storageClient;
+
+    private final PostMediaRepository mediaRepository;
+
+    private final ExecutorService mediaExecutor;
+
+    private final MeterRegistry meterRegistry;
+
+    private final boolean enabled;
+
+    private final boolean thumbnails;
+
+    @Autowired
+    public MediaCollector(WebService webService, StorageClient storageClient, PostMediaRepository mediaRepository, @Qualifier("mediaExecutor") ExecutorService mediaExecutor,
+            MeterRegistry meterRegistry, @Value("${scraper.collector.media.enabled:false}") boolean enabled,
+            @Value("${scraper.collector.media.thumbnails:true}") boolean thumbnails) {
+        this.webService = webService;
+        this.storageClient = storageClient;
+        this.mediaRepository = mediaRepository;
+        this.mediaExecutor = mediaExecutor;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.thumbnails = thumbnails;
+    }
+
+    /**
+     * Queues collection of media of all posts of the threads. Does not block. Threads must be already written.
+     *
+     * @param threads written threads
+     */
+    public void collect(Collection<ThreadDs> threads) {
+        if (!enabled) {
+            return;
+        }
+
+        for (ThreadDs thread : threads) {
+            String board = thread.getBoard();
+            String threadId = thread.getThreadId();
+            for (PostDs post : thread.getPosts()) {
+                String postId = post.getPostId();
+                if (StringUtils.isNotBlank(post.getFileLink())) {
+                    String fileLink = post.getFileLink();
+                    String md5 = post.getMd5();
+                    submit("file", () -> collectFile(board, threadId, postId, fileLink, md5));
+                }
+                if (thumbnails && StringUtils.isNotBlank(post.getThumbnailLink())) {
+                    String thumbnailLink = post.getThumbnailLink();
+                    submit("thumbnail", () -> collectThumbnail(board, threadId, postId, thumbnailLink));
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects post file, unless file with the same md5 is already stored.
+     *
+     * @param board    board name
+     * @param threadId id of the thread containing the post
+     * @param postId   post id
+     * @param link     url of the file
+     * @param md5      md5 of the file or blank if it is not known
+     * @return <tt>stored</tt> or <tt>duplicate</tt>
+     * @throws IOException if download or upload failed
+     */
+    String collectFile(String board, String threadId, String postId, String link, String md5) throws IOException {
+        String fileId = StringUtils.isBlank(md5) ? null : mediaRepository.findFileId(md5);
+        String outcome = "duplicate";
+        if (fileId == null) {
+            fileId = store(link);
+            outcome = "stored";
+        }
+        mediaRepository.linkFile(board, threadId, postId, fileId);
+
+        return outcome;
+    }
+
+    /**
+     * @param board    board name
+     * @param threadId id of the thread containing the post
+     * @param postId   post id
+     * @param link     url of the thumbnail
+     * @return <tt>stored</tt>
+     * @throws IOException if download or upload failed
+     */
+    String collectThumbnail(String board, String threadId, String postId, String link) throws IOException {
+        mediaRepository.linkThumbnail(board, threadId, postId, store(link));
+
+        return "stored";
+    }
+
+    private String store(String link) throws IOException {
+        String path = URI.create(link).getPath();
+        String fileName = path.substring(path.lastIndexOf('/') + 1);
+        return webService.download(link, (content, contentLength) -> storageClient.upload(fileName, content, contentLength));
+    }
+
+    private void submit(String kind, MediaTask task) {
+        try {
+            mediaExecutor.execute(() -> run(kind, task));
+        } catch (RejectedExecutionException ex) {
+            meterRegistry.counter("scraper.media.dropped", "kind", kind).increment();
+            logger.debug(String.format("Media queue is full, %s dropped", kind));
+        }
+    }
+
+    private void run(String kind, MediaTask task) {
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            outcome = task.run();
+        } catch (IOException | RuntimeException ex) {
+            logger.warn(String.format("Unable to collect %s: %s", kind, ex.getMessage()));
+        } finally {
+            Timer.builder("scraper.media.collect").tags("kind", kind, "outcome", outcome).register(meterRegistry).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @FunctionalInterface
+    private interface MediaTask {
+
+        String run() throws IOException;
+    }
+}
@@ -0,0 +1,102 @@
+package scraper.services.chan.media;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Client of storage service, uploading content-addressed files.
+ * <p>
+ * Storage service instance is chosen by load balancer for every upload. Body is streamed to the chosen instance in chunks, so it is never held in memory as a whole - load
+ * balanced {@link RestTemplate} is not used for that reason, as its interceptors buffer request body. Connecting and waiting for the response are bounded by timeouts
+ * in milliseconds, so unresponsive instance does not block media collection.
+ */
+@Service
+public class StorageClient {
+
+    private final LoadBalancerClient loadBalancer;
+
+    private final String serviceId;
+
+    private final RestTemplate restTemplate;
+
+    @Autowired
+    public StorageClient(LoadBalancerClient loadBalancer, @Value("${scraper.collector.media.storage-service:storage-service}") String serviceId,
+            @Value("${scraper.collector.media.connect-timeout:5000}") int connectTimeout, @Value("${scraper.collector.media.read-timeout:60000}") int readTimeout) {
+        this.loadBalancer = loadBalancer;
+        this.serviceId = serviceId;
+
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setBufferRequestBody(false);
+        requestFactory.setConnectTimeout(connectTimeout);
+        requestFactory.setReadTimeout(readTimeout);
+        this.restTemplate = new RestTemplate(requestFactory);
+    }
+
+    /**
+     * Uploads file to storage service.
+     *
+     * @param fileName      name of the file
+     * @param content       content of the file, read until its end
+     * @param contentLength length of the content or <tt>-1</tt> if it is not known
+     * @return storage id of the file - sha-256 checksum of its content
+     * @throws IOException if no storage service instance is available or upload failed
+     */
+    public String upload(String fileName, InputStream content, long contentLength) throws IOException {
+        ServiceInstance instance = loadBalancer.choose(serviceId);
+        if (instance == null) {
+            throw new IOException(String.format("No instance of [%s] available", serviceId));
+        }
+
+        HttpHeaders partHeaders = new HttpHeaders();
+        partHeaders.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        MultiValueMap<String, Object> parts = new LinkedMultiValueMap<>();
+        parts.add("uploadedFile", new HttpEntity<>(new UploadResource(content, fileName, contentLength), partHeaders));
+
+        try {
+            return restTemplate.postForObject(instance.getUri().resolve("/"), parts, String.class);
+        } catch (RestClientException ex) {
+            throw new IOException(String.format("Upload of [%s] to [%s] failed", fileName, instance.getUri()), ex);
+        }
+    }
+
+    /**
+     * Resource of streamed content, with known name and length, so it can be sent as multipart file without being read in advance.
+     */
+    private static final class UploadResource extends InputStreamResource {
+
+        private final String fileName;
+
+        private final long contentLength;
+
+        private UploadResource(InputStream content, String fileName, long contentLength) {
+            super(content);
+            this.fileName = fileName;
+            this.contentLength = contentLength;
+        }
+
+        @Override
+        public String getFilename() {
+            return fileName;
+        }
+
+        @Override
+        public long contentLength() {
+            return contentLength;
+        }
+    }
+}
@@ -56,6 +56,12 @@ public class PostDs {
     @Property(name = "size")
     private String size;
 
+    @Property(name = "fileId")
+    private String fileId;
+
+    @Property(name = "thumbnailId")
+    private String thumbnailId;
+
     @Relationship(type = "REPLAY", direction = Relationship.INCOMING)
     private Set<PostDs> repliedBy = new HashSet<>();
 
@@ -148,6 +154,20 @@ public class PostDs {
         return size;
     }
 
+    /**
+     * @return storage id of the post file or <tt>null</tt> if it has not been collected
+     */
+    public String getFileId() {
+        return fileId;
+    }
+
+    /**
+     * @return storage id of the post thumbnail or <tt>null</tt> if it has not been collected
+     */
+    public String getThumbnailId() {
+        return thumbnailId;
+    }
+
     public void setThread(ThreadDs thread) {
         if (this.thread == thread) {
             return;
@@ -30,6 +30,9 @@ public class ThreadDs {
     @Property(name = "subject")
     private String subject;
 
+    @Property(name = "lastPostId")
+    private Long lastPostId;
+
     @Relationship(type = "CONTAINS", direction = Relationship.INCOMING)
     protected Set<PostDs> posts = new HashSet<>();
 
@@ -58,6 +61,15 @@ public class ThreadDs {
         return subject;
     }
 
+    /**
+     * Gets id of the newest post ever added to this thread. It is not lowered when posts are removed, so it can be used as watermark of already collected posts.
+     *
+     * @return id of the newest post or <tt>null</tt> if thread had no posts with numeric id
+     */
+    public Long getLastPostId() {
+        return lastPostId;
+    }
+
     public Set<PostDs> getPosts() {
         return Collections.unmodifiableSet(posts);
     }
@@ -80,6 +92,11 @@ public class ThreadDs {
         post.setThread(null);
         post.thread = this;
         this.posts.add(post);
+
+        Long postId = parsePostId(post.getPostId());
+        if (postId != null && (lastPostId == null || postId > lastPostId)) {
+            lastPostId = postId;
+        }
     }
 
     public void removePost(PostDs post) {
@@ -90,4 +107,26 @@ public class ThreadDs {
         post.thread = null;
         this.posts.remove(post);
     }
+
+    /**
+     * Removes all posts with id not greater than {@code postId}. Posts with not numeric id are kept.
+     *
+     * @param postId id of the last post to remove
+     */
+    public void removePostsUpTo(long postId) {
+        for (PostDs post : new ArrayList<>(posts)) {
+            Long id = parsePostId(post.getPostId());
+            if (id != null && id <= postId) {
+                removePost(post);
+            }
+        }
+    }
+
+    private static Long parsePostId(String postId) {
+        try {
+            return postId == null ? null : Long.valueOf(postId);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
 }
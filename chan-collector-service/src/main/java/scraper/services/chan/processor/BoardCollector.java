@@ -1,14 +1,26 @@
 package scraper.services.chan.processor;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpStatus;
 import org.jsoup.HttpStatusException;
-import org.jsoup.nodes.Document;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import scraper.services.chan.model.CollectorProcessedCheckpointDs;
 import scraper.services.chan.repository.CollectorProcessedCheckpointDsRepository;
+import scraper.services.chan.repository.ThreadBatchWriter;
+import scraper.services.chan.web.ConditionalDocument;
+import scraper.services.chan.web.ValidatorCache;
 import scraper.services.chan.web.WebService;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Service responsible for collecting / scraping data from 4chan archive.
@@ -16,44 +28,121 @@ import java.io.IOException;
 @Service
 public class BoardCollector {
 
+    private static final Log logger = LogFactory.getLog(BoardCollector.class);
+
     private final PageCollector pageParser;
 
     private final WebService webService;
 
+    private final ValidatorCache validatorCache;
+
     private final CollectorProcessedCheckpointDsRepository checkpointRepository;
 
+    private final ThreadBatchWriter threadWriter;
+
+    private final ExecutorService prefetchExecutor;
+
+    private final int prefetchDepth;
+
+    private final AtomicInteger queuedPages = new AtomicInteger();
+
     @Autowired
-    public BoardCollector(PageCollector pageParser, WebService webService, CollectorProcessedCheckpointDsRepository checkpointRepository) {
+    public BoardCollector(PageCollector pageParser, WebService webService, ValidatorCache validatorCache, CollectorProcessedCheckpointDsRepository checkpointRepository,
+            ThreadBatchWriter threadWriter, @Qualifier("pageFetchExecutor") ExecutorService prefetchExecutor, @Value("${scraper.collector.page-prefetch.depth:0}") int prefetchDepth) {
         this.pageParser = pageParser;
         this.webService = webService;
+        this.validatorCache = validatorCache;
         this.checkpointRepository = checkpointRepository;
+        this.threadWriter = threadWriter;
+        this.prefetchExecutor = prefetchExecutor;
+        this.prefetchDepth = prefetchDepth;
     }
 
     /**
      * Scraps uncollected data from board.
+     * <p>
+     * If prefetch depth is greater than <tt>0</tt>, that many following pages are downloaded in the background while current page is parsed. Checkpoint is moved only after
+     * page has been parsed and its threads were written.
+     * <p>
+     * Pages are downloaded conditionally, with validators stored after previous run. Pages which have not changed since then are not parsed at all. Validators of the page
+     * are stored only after its threads were written, so page that failed to be collected will be downloaded again. Page whose threads could have been dropped by
+     * {@link ThreadBatchWriter} after repeated write failures fails the collection too.
+     * <p>
+     * Collection ends at the first page that does not exist. Any other error status of the page fails the collection, leaving checkpoint at the last collected page.
      *
      * @param settings collection settings
      * @throws IOException if io failed
      */
     public void collectBoard(Settings settings) throws IOException {
+        collectBoard(new CollectionRun(settings.getBoardName(), settings));
+    }
+
+    /**
+     * Scraps uncollected data from board, as described in {@link #collectBoard(Settings)}, recording progress and timings of the collection to run statistics.
+     * <p>
+     * Run handle is checked only before every page, not while page is collected - all threads of the current page are still downloaded, parsed and written after run
+     * was paused or cancelled. Paused run then waits, with no download in progress. Cancelled run ends, with checkpoint at the last collected page.
+     *
+     * @param run handle of the run
+     * @throws IOException if io failed
+     */
+    public void collectBoard(CollectionRun run) throws IOException {
+        Settings settings = run.getSettings();
+        RunStatistics statistics = run.getStatistics();
         Integer maxPages = settings.getMaxPages();
         CollectorProcessedCheckpointDs checkpoint = getCheckpoint(settings);
 
         int startPageIndx = checkpoint.getLastPageIndx();
-        int currentPageIndx = startPageIndx;
-        Document page;
+        int endPageIndx = maxPages == null ? Integer.MAX_VALUE : startPageIndx + maxPages;
+        int nextFetchPageIndx = startPageIndx;
+        StageQueue<ConditionalDocument> pages = new StageQueue<>(prefetchDepth + 1, queuedPages);
+
+        try {
+            for (int currentPageIndx = startPageIndx; currentPageIndx < endPageIndx; ++currentPageIndx) {
+                if (!awaitProceed(run)) {
+                    logger.info(String.format("Collection of board [%s] cancelled before page [%d]", settings.getBoardName(), currentPageIndx));
+                    break;
+                }
+                for (; nextFetchPageIndx < endPageIndx && !pages.isFull(); ++nextFetchPageIndx) {
+                    pages.add(fetchPage(nextFetchPageIndx, settings, statistics));
+                }
+
+                statistics.onPageStarted(currentPageIndx);
+                ConditionalDocument page = pages.take();
+                if (page == null) {
+                    break;
+                }
 
-        do {
-            page = getPage(currentPageIndx, settings);
-            if (page != null) {
-                pageParser.parsePage(page, settings);
+                if (page.isModified()) {
+                    int droppedBatches = threadWriter.getDroppedBatches();
+                    pageParser.parsePage(page.getDocument(), settings, statistics);
+                    long flushStart = System.nanoTime();
+                    threadWriter.flush();
+                    statistics.recordPersist(System.nanoTime() - flushStart);
+                    if (threadWriter.getDroppedBatches() != droppedBatches) {
+                        statistics.onError();
+                        throw new IOException(String.format("Threads of page [%d] of board [%s] may have been dropped after failed writes", currentPageIndx,
+                                settings.getBoardName()));
+                    }
+                }
+                statistics.onPageCollected(page.isModified());
+                validatorCache.put(getPageUrl(currentPageIndx, settings), page.getValidators());
                 if (currentPageIndx != startPageIndx) {
                     checkpoint.setLastPageIndx(currentPageIndx);
                     checkpointRepository.save(checkpoint);
                 }
             }
-            ++currentPageIndx;
-        } while (page != null && (maxPages == null || currentPageIndx < startPageIndx + maxPages));
+        } finally {
+            pages.cancelAll();
+            saveValidators();
+        }
+    }
+
+    /**
+     * @return number of pages of all runs being downloaded or waiting to be parsed
+     */
+    public int getQueuedPages() {
+        return queuedPages.get();
     }
 
     private CollectorProcessedCheckpointDs getCheckpoint(Settings settings) {
@@ -61,13 +150,55 @@ public class BoardCollector {
         return checkpoint == null ? checkpointRepository.save(new CollectorProcessedCheckpointDs(settings.getBoardName(), 1)) : checkpoint;
     }
 
-    private Document getPage(int pageIndx, Settings settings) throws IOException {
-        String url = String.format("https://yuki.la/%s/page/%d", settings.getBoardName(), pageIndx);
+    private static boolean awaitProceed(CollectionRun run) throws InterruptedIOException {
+        try {
+            return run.awaitProceed();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while collection was paused");
+        }
+    }
+
+    private void saveValidators() {
         try {
-            return webService.getDocument(url);
+            validatorCache.save();
+        } catch (IOException ex) {
+            logger.warn("Unable to save page validators, unchanged pages will be downloaded again", ex);
+        }
+    }
+
+    private Future<ConditionalDocument> fetchPage(int pageIndx, Settings settings, RunStatistics statistics) {
+        FutureTask<ConditionalDocument> task = new FutureTask<>(() -> getPage(pageIndx, settings, statistics));
+        if (prefetchDepth > 0) {
+            prefetchExecutor.execute(task);
+        } else {
+            task.run();
+        }
+
+        return task;
+    }
+
+    private ConditionalDocument getPage(int pageIndx, Settings settings, RunStatistics statistics) throws IOException {
+        String url = getPageUrl(pageIndx, settings);
+        long start = System.nanoTime();
+        try {
+            ConditionalDocument page = webService.getDocument(url, validatorCache.get(url));
+            statistics.recordFetch(System.nanoTime() - start, page.getSize());
+            return page;
         } catch (HttpStatusException ex) {
-            // response with error status - just finish
-            return null;
+            if (ex.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+                // page does not exist - end of the board
+                return null;
+            }
+            statistics.onError();
+            throw ex;
+        } catch (IOException | RuntimeException ex) {
+            statistics.onError();
+            throw ex;
         }
     }
+
+    private static String getPageUrl(int pageIndx, Settings settings) {
+        return String.format("https://yuki.la/%s/page/%d", settings.getBoardName(), pageIndx);
+    }
 }
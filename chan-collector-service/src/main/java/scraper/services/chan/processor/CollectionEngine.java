@@ -0,0 +1,176 @@
+package scraper.services.chan.processor;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import scraper.common.FuncUtils;
+import scraper.exception.ResourceNotFoundException;
+import scraper.services.chan.dto.RunStatusJsonDto;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Engine running collection of many boards at once.
+ * <p>
+ * Every board is collected by its own run, executed by board run executor. Runs only walk through board pages - threads of all boards are downloaded and parsed by
+ * shared {@link WorkerPool}. Board can have only one run at a time, queued or running. Request to run board that already has a run is dropped.
+ * <p>
+ * Every run gets an id, which can be used to pause, resume or cancel the run, see {@link CollectionRun}. Statistics of the current run of every board are kept, and stay
+ * available after the run ends, until the next run of the board starts.
+ */
+@Service
+public class CollectionEngine {
+
+    private final Log logger = LogFactory.getLog(CollectionEngine.class);
+
+    private final AtomicLong runIds = new AtomicLong();
+
+    private final ConcurrentMap<String, CollectionRun> runs = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, CollectionRun> lastRuns = new ConcurrentHashMap<>();
+
+    private final BoardCollector collector;
+
+    private final ExecutorService runExecutor;
+
+    @Autowired
+    public CollectionEngine(BoardCollector collector, @Qualifier("boardRunExecutor") ExecutorService runExecutor) {
+        this.collector = collector;
+        this.runExecutor = runExecutor;
+    }
+
+    /**
+     * Starts collection of the board, unless board is already being collected. Will handle all exceptions of the collection.
+     *
+     * @param settings settings for the run
+     * @return handle of the started run or <tt>null</tt> if run was dropped as duplicate
+     */
+    public CollectionRun submit(Settings settings) {
+        String board = settings.getBoardName();
+        CollectionRun run = new CollectionRun(String.valueOf(runIds.incrementAndGet()), settings);
+        if (runs.putIfAbsent(board, run) != null) {
+            logger.info(String.format("Board [%s] is already being collected, run dropped", board));
+            return null;
+        }
+        lastRuns.put(board, run);
+
+        try {
+            runExecutor.execute(() -> {
+                try {
+                    collect(run);
+                } finally {
+                    runs.remove(board, run);
+                }
+            });
+        } catch (RuntimeException ex) {
+            run.getStatistics().fail(ex);
+            runs.remove(board, run);
+            throw ex;
+        }
+
+        return run;
+    }
+
+    /**
+     * Starts collection of all given boards. Boards that are already being collected are skipped.
+     *
+     * @param settings settings for the runs, one per board
+     * @return names of the boards which collection was started
+     */
+    public Set<String> submitAll(Iterable<Settings> settings) {
+        Set<String> started = new HashSet<>();
+        for (Settings boardSettings : settings) {
+            if (submit(boardSettings) != null) {
+                started.add(boardSettings.getBoardName());
+            }
+        }
+
+        return started;
+    }
+
+    /**
+     * @return names of the boards with queued or running collection
+     */
+    public Set<String> getRunningBoards() {
+        return new HashSet<>(runs.keySet());
+    }
+
+    /**
+     * Pauses the run. Paused run finishes page it is collecting, including downloads of all its threads, and then waits, without downloading anything, until it is
+     * resumed or cancelled.
+     *
+     * @param runId id of the run
+     * @return <tt>false</tt> if run has already ended or was cancelled
+     * @throws ResourceNotFoundException if there is no such run
+     */
+    public boolean pause(String runId) {
+        return getRun(runId).pause();
+    }
+
+    /**
+     * Resumes paused run.
+     *
+     * @param runId id of the run
+     * @return <tt>false</tt> if run has already ended or was cancelled
+     * @throws ResourceNotFoundException if there is no such run
+     */
+    public boolean resume(String runId) {
+        return getRun(runId).resume();
+    }
+
+    /**
+     * Cancels the run. Cancelled run finishes page it is collecting, including downloads of all its threads, saves checkpoint and ends. Queued run ends as soon as it starts.
+     *
+     * @param runId id of the run
+     * @return <tt>false</tt> if run has already ended
+     * @throws ResourceNotFoundException if there is no such run
+     */
+    public boolean cancel(String runId) {
+        return getRun(runId).cancel();
+    }
+
+    /**
+     * Gets status of the last run of every board, running or already finished.
+     *
+     * @return run statuses json DTOs, sorted by board name
+     */
+    public List<RunStatusJsonDto> getStatus() {
+        List<RunStatusJsonDto> status = FuncUtils.map(lastRuns.values(), CollectionRun::getStatus);
+        status.sort(Comparator.comparing(RunStatusJsonDto::getBoard));
+
+        return status;
+    }
+
+    private CollectionRun getRun(String runId) {
+        for (CollectionRun run : lastRuns.values()) {
+            if (run.getId().equals(runId)) {
+                return run;
+            }
+        }
+        throw new ResourceNotFoundException("Run [id=%s] not found", runId);
+    }
+
+    private void collect(CollectionRun run) {
+        RunStatistics runStatistics = run.getStatistics();
+        try {
+            collector.collectBoard(run);
+            if (run.isCancelled()) {
+                runStatistics.cancel();
+            } else {
+                runStatistics.finish();
+            }
+        } catch (Exception ex) {
+            runStatistics.fail(ex);
+            logger.error(String.format("Unexpected error during collection of board [%s]", run.getBoard()), ex);
+        }
+    }
+}
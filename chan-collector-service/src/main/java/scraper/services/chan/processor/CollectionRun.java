@@ -0,0 +1,155 @@
+package scraper.services.chan.processor;
+
+import scraper.services.chan.dto.RunStatusJsonDto;
+
+/**
+ * Handle of the collection run of one board, used to pause, resume and cancel the run while it is going.
+ * <p>
+ * Run checks its handle only between pages, so it is never stopped in the middle of a page: threads of the page being collected are drained from worker pool, written and
+ * checkpoint is saved before the run blocks or ends. So pause or cancel takes effect only after up to a whole page of threads is downloaded. No new pages are downloaded while run is paused. Pages prefetched in the background are dropped on cancel and are
+ * downloaded again by the next run.
+ */
+public class CollectionRun {
+
+    private final String id;
+
+    private final Settings settings;
+
+    private final RunStatistics statistics;
+
+    private final Object lock = new Object();
+
+    private boolean paused;
+
+    private boolean cancelled;
+
+    /**
+     * @param id       id of the run
+     * @param settings settings of the run
+     */
+    public CollectionRun(String id, Settings settings) {
+        this(id, settings, new RunStatistics(settings.getBoardName()));
+    }
+
+    /**
+     * @param id         id of the run
+     * @param settings   settings of the run
+     * @param statistics statistics to record progress of the run to
+     */
+    CollectionRun(String id, Settings settings, RunStatistics statistics) {
+        this.id = id;
+        this.settings = settings;
+        this.statistics = statistics;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getBoard() {
+        return settings.getBoardName();
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    public RunStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Pauses the run before it downloads next page.
+     *
+     * @return <tt>false</tt> if run has already ended or was cancelled
+     */
+    public boolean pause() {
+        synchronized (lock) {
+            if (cancelled || statistics.getState() != RunStatistics.State.RUNNING) {
+                return false;
+            }
+            paused = true;
+            return true;
+        }
+    }
+
+    /**
+     * Resumes paused run.
+     *
+     * @return <tt>false</tt> if run has already ended or was cancelled
+     */
+    public boolean resume() {
+        synchronized (lock) {
+            if (cancelled || statistics.getState() != RunStatistics.State.RUNNING) {
+                return false;
+            }
+            paused = false;
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * Cancels the run, paused or not. Run ends after the page being collected is finished.
+     *
+     * @return <tt>false</tt> if run has already ended
+     */
+    public boolean cancel() {
+        synchronized (lock) {
+            if (statistics.getState() != RunStatistics.State.RUNNING) {
+                return false;
+            }
+            cancelled = true;
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    public boolean isPaused() {
+        synchronized (lock) {
+            return paused;
+        }
+    }
+
+    public boolean isCancelled() {
+        synchronized (lock) {
+            return cancelled;
+        }
+    }
+
+    /**
+     * Waits while the run is paused. Called by the run before it downloads next page.
+     *
+     * @return <tt>true</tt> if run should go on, <tt>false</tt> if it was cancelled
+     * @throws InterruptedException if current thread was interrupted while waiting
+     */
+    boolean awaitProceed() throws InterruptedException {
+        synchronized (lock) {
+            while (paused && !cancelled) {
+                lock.wait();
+            }
+            return !cancelled;
+        }
+    }
+
+    /**
+     * Takes snapshot of the run status. Run which was requested to pause or cancel, but is still collecting, is reported as <tt>PAUSED</tt> or <tt>CANCELLING</tt>.
+     *
+     * @return status json DTO
+     */
+    public RunStatusJsonDto getStatus() {
+        RunStatusJsonDto status = statistics.getStatus();
+        status.setId(id);
+        if (RunStatistics.State.RUNNING.name().equals(status.getState())) {
+            synchronized (lock) {
+                if (cancelled) {
+                    status.setState("CANCELLING");
+                } else if (paused) {
+                    status.setState("PAUSED");
+                }
+            }
+        }
+
+        return status;
+    }
+}
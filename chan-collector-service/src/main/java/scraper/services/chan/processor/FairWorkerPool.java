@@ -0,0 +1,167 @@
+package scraper.services.chan.processor;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Bounded pool of workers shared by many boards.
+ * <p>
+ * Every board has its own queue of tasks. Free worker takes next task from boards in round robin order, so board with many queued tasks does not starve the others. Number
+ * of tasks of a single board running at once is capped, leaving workers for other boards even if only one of them has anything queued beyond the cap.
+ */
+public class FairWorkerPool implements WorkerPool {
+
+    private final Log logger = LogFactory.getLog(FairWorkerPool.class);
+
+    private final int maxPerBoard;
+
+    private final Map<String, BoardQueue> boards = new HashMap<>();
+
+    private final Deque<BoardQueue> ready = new ArrayDeque<>();
+
+    private final List<Thread> workers;
+
+    private boolean shutdown;
+
+    /**
+     * @param workers       number of workers
+     * @param maxPerBoard   maximal number of tasks of single board running at once
+     * @param threadFactory factory of worker threads
+     */
+    public FairWorkerPool(int workers, int maxPerBoard, ThreadFactory threadFactory) {
+        this.maxPerBoard = Math.max(1, maxPerBoard);
+        this.workers = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            Thread worker = threadFactory.newThread(this::work);
+            this.workers.add(worker);
+            worker.start();
+        }
+    }
+
+    @Override
+    public synchronized <T> Future<T> submit(String board, Callable<T> task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Worker pool is shut down");
+        }
+
+        FutureTask<T> future = new FutureTask<>(task);
+        BoardQueue queue = boards.computeIfAbsent(board, BoardQueue::new);
+        queue.tasks.add(future);
+        markReady(queue);
+
+        return future;
+    }
+
+    @Override
+    public synchronized int getQueued(String board) {
+        BoardQueue queue = boards.get(board);
+        return queue == null ? 0 : queue.tasks.size();
+    }
+
+    @Override
+    public synchronized int getRunning(String board) {
+        BoardQueue queue = boards.get(board);
+        return queue == null ? 0 : queue.running;
+    }
+
+    @Override
+    public synchronized int getQueued() {
+        return boards.values().stream().mapToInt(queue -> queue.tasks.size()).sum();
+    }
+
+    @Override
+    public synchronized int getRunning() {
+        return boards.values().stream().mapToInt(queue -> queue.running).sum();
+    }
+
+    @Override
+    public void shutdownNow() {
+        synchronized (this) {
+            shutdown = true;
+            boards.values().forEach(queue -> queue.tasks.forEach(task -> task.cancel(false)));
+            boards.clear();
+            ready.clear();
+            notifyAll();
+        }
+        workers.forEach(Thread::interrupt);
+    }
+
+    private void work() {
+        while (true) {
+            BoardQueue queue;
+            FutureTask<?> task;
+            synchronized (this) {
+                while (!shutdown && ready.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        // interrupted by shutdown or by cancelled task - check state again
+                    }
+                }
+                if (shutdown) {
+                    return;
+                }
+
+                queue = ready.poll();
+                queue.ready = false;
+                task = queue.tasks.poll();
+                queue.running++;
+                markReady(queue);
+            }
+
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                logger.error("Worker task failed", ex);
+            } finally {
+                // clear interruption of cancelled task, so it does not affect next one
+                Thread.interrupted();
+                finished(queue);
+            }
+        }
+    }
+
+    private synchronized void finished(BoardQueue queue) {
+        queue.running--;
+        if (queue.running == 0 && queue.tasks.isEmpty()) {
+            boards.remove(queue.board);
+        } else {
+            markReady(queue);
+        }
+    }
+
+    private void markReady(BoardQueue queue) {
+        if (!queue.ready && !queue.tasks.isEmpty() && queue.running < maxPerBoard) {
+            queue.ready = true;
+            ready.add(queue);
+            notify();
+        }
+    }
+
+    private static final class BoardQueue {
+
+        private final String board;
+
+        private final Deque<FutureTask<?>> tasks = new ArrayDeque<>();
+
+        private int running;
+
+        private boolean ready;
+
+        private BoardQueue(String board) {
+            this.board = board;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package scraper.services.chan.processor;
+
+import scraper.exception.UnexpectedException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Utility class for waiting on background collection tasks.
+ */
+final class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * Waits for {@code future} to complete and returns its result.
+     * <p>
+     * Failure of the task is rethrown as it was thrown by the task itself.
+     *
+     * @param future future to wait for
+     * @param <T>    type of the result
+     * @return result of the task
+     * @throws IOException            if task failed with io exception
+     * @throws InterruptedIOException if current thread was interrupted while waiting
+     * @throws UnexpectedException    if task failed with checked exception other than {@link IOException}
+     */
+    static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for collection task");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new UnexpectedException("Collection task failed", cause);
+        }
+    }
+}
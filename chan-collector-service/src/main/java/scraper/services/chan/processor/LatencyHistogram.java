@@ -0,0 +1,83 @@
+package scraper.services.chan.processor;
+
+import scraper.services.chan.dto.LatencyJsonDto;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of latencies, with fixed, roughly exponential buckets from 1 millisecond to 30 seconds.
+ * <p>
+ * Recording costs a binary search and two atomic increments, so it may be called from many threads on every request. Percentiles are approximated with upper bound of the
+ * bucket they fall into.
+ */
+final class LatencyHistogram {
+
+    private static final long[] BOUNDS_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000};
+
+    private static final long[] BOUNDS_NANOS = Arrays.stream(BOUNDS_MILLIS).map(TimeUnit.MILLISECONDS::toNanos).toArray();
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS_MILLIS.length + 1);
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * @param nanos measured latency, in nanoseconds
+     */
+    void record(long nanos) {
+        int bucket = Arrays.binarySearch(BOUNDS_NANOS, nanos);
+        counts.incrementAndGet(bucket >= 0 ? bucket : -bucket - 1);
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Takes snapshot of the histogram. Measurements recorded concurrently may be only partially included.
+     *
+     * @return histogram json DTO
+     */
+    LatencyJsonDto snapshot() {
+        long[] snapshot = new long[counts.length()];
+        long count = 0;
+        Map<String, Long> buckets = new LinkedHashMap<>();
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+            buckets.put(i < BOUNDS_MILLIS.length ? String.valueOf(BOUNDS_MILLIS[i]) : "+Inf", snapshot[i]);
+        }
+
+        double max = toMillis(maxNanos.get());
+        double mean = count == 0 ? 0 : toMillis(totalNanos.sum()) / count;
+
+        return new LatencyJsonDto(count, mean, max, percentile(snapshot, count, 0.5, max), percentile(snapshot, count, 0.9, max),
+                percentile(snapshot, count, 0.99, max), buckets);
+    }
+
+    private static double percentile(long[] snapshot, long count, double quantile, double max) {
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(BOUNDS_MILLIS[i], max);
+            }
+        }
+
+        return max;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
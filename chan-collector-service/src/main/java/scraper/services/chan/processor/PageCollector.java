@@ -3,18 +3,31 @@ package scraper.services.chan.processor;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import scraper.common.FuncUtils;
+import scraper.common.StringUtils;
 import scraper.services.chan.model.ThreadDs;
-import scraper.services.chan.repository.ThreadDsRepository;
+import scraper.services.chan.repository.KnownThreadsIndex;
+import scraper.services.chan.repository.ThreadBatchWriter;
+import scraper.services.chan.web.ConditionalDocument;
+import scraper.services.chan.web.PageValidators;
+import scraper.services.chan.web.WebPage;
 import scraper.services.chan.web.WebService;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 /**
  * Service responsible for parsing DOM document of one 4chan archive page to list and save {@link ThreadDs}.
@@ -22,59 +35,208 @@ import java.util.Set;
 @Service
 public class PageCollector {
 
+    private static final Pattern POST_ID_PATTERN = Pattern.compile("^p(\\d+)$");
+
     private final Log logger = LogFactory.getLog(PageCollector.class);
 
     private final WebService webService;
 
     private final ThreadParser threadParser;
 
-    private final ThreadDsRepository threadRepository;
+    private final KnownThreadsIndex knownThreads;
+
+    private final ThreadBatchWriter threadWriter;
+
+    private final WorkerPool fetchPool;
+
+    private final WorkerPool parsePool;
+
+    private final int fetchQueueSize;
+
+    private final int parseQueueSize;
+
+    private final boolean streamingParser;
+
+    private final AtomicInteger queuedFetches = new AtomicInteger();
+
+    private final AtomicInteger queuedParses = new AtomicInteger();
 
     @Autowired
-    public PageCollector(WebService webService, ThreadParser threadParser, ThreadDsRepository threadRepository) {
+    public PageCollector(WebService webService, ThreadParser threadParser, KnownThreadsIndex knownThreads, ThreadBatchWriter threadWriter,
+            @Qualifier("threadFetchPool") WorkerPool fetchPool, @Qualifier("threadParsePool") WorkerPool parsePool,
+            @Value("${scraper.collector.pipeline.fetch-queue:4}") int fetchQueueSize, @Value("${scraper.collector.pipeline.parse-queue:2}") int parseQueueSize,
+            @Value("${scraper.collector.parser.streaming:false}") boolean streamingParser) {
         this.webService = webService;
         this.threadParser = threadParser;
-        this.threadRepository = threadRepository;
+        this.knownThreads = knownThreads;
+        this.threadWriter = threadWriter;
+        this.fetchPool = fetchPool;
+        this.parsePool = parsePool;
+        this.fetchQueueSize = fetchQueueSize;
+        this.parseQueueSize = parseQueueSize;
+        this.streamingParser = streamingParser;
     }
 
     /**
      * Parses archive page DOM {@code document} to list of {@link ThreadDs} instances.
+     * <p>
+     * Uncollected threads go through pipeline of stages: they are downloaded by fetch pool, parsed by parse pool, both shared with other boards, and passed to
+     * {@link ThreadBatchWriter} in the order they appear on the page. Stages are linked by bounded queues: thread is downloaded only if there is room for it in the fetch
+     * queue, and downloaded thread is handed to parser only if there is room in the parse queue. Slow writer therefore stops parsing and downloading, and number of threads
+     * held in memory does not depend on the size of the board. Written threads are not guaranteed to be persisted until {@link ThreadBatchWriter#flush()} is called. If
+     * streaming parser is enabled, thread pages are parsed without building DOM of the whole thread.
+     * <p>
+     * In incremental mode, already collected threads are downloaded again if page shows posts newer than their last collected post. Only the new posts are passed to the
+     * writer, which merges them into the stored thread.
      *
      * @param pageDom  page document
      * @param settings collection settings
      * @throws IOException if io failed
      */
     public void parsePage(Document pageDom, Settings settings) throws IOException {
+        parsePage(pageDom, settings, new RunStatistics(settings.getBoardName()));
+    }
+
+    /**
+     * Parses archive page DOM {@code document}, as described in {@link #parsePage(Document, Settings)}, recording collected threads and timings of the collection.
+     *
+     * @param pageDom    page document
+     * @param settings   collection settings
+     * @param statistics statistics of the run
+     * @throws IOException if io failed
+     */
+    public void parsePage(Document pageDom, Settings settings, RunStatistics statistics) throws IOException {
         logger.info(String.format("Parsing page [%s] started", pageDom.baseUri()));
 
         Set<String> threadIds = extractThreadIds(pageDom);
-        List<ThreadDs> threads = new ArrayList<>(threadIds.size());
-        for (String threadId : threadIds) {
-            ThreadDs thread = getThread(threadId, settings);
-            if (thread != null) {
-                threadRepository.save(thread);
+        Set<String> collectedThreadIds = knownThreads.findStored(settings.getBoardName(), threadIds);
+        Map<String, Long> bumpedThreads = settings.isIncremental() ? findBumpedThreads(pageDom, settings, collectedThreadIds) : Collections.emptyMap();
+        Iterator<String> threadsToFetch = threadIds.stream().filter(threadId -> !collectedThreadIds.contains(threadId) || bumpedThreads.containsKey(threadId)).iterator();
+
+        StageQueue<Callable<ThreadDs>> fetching = new StageQueue<>(fetchQueueSize, queuedFetches);
+        StageQueue<ThreadDs> parsing = new StageQueue<>(parseQueueSize, queuedParses);
+        try {
+            while (threadsToFetch.hasNext() || !fetching.isEmpty() || !parsing.isEmpty()) {
+                while (threadsToFetch.hasNext() && !fetching.isFull()) {
+                    String threadId = threadsToFetch.next();
+                    Long lastPostId = bumpedThreads.get(threadId);
+                    fetching.add(fetchPool.submit(settings.getBoardName(), () -> fetchThread(threadId, lastPostId, settings, statistics)));
+                }
+
+                if (!fetching.isEmpty() && !parsing.isFull()) {
+                    parsing.add(parsePool.submit(settings.getBoardName(), fetching.take()));
+                } else {
+                    ThreadDs thread = parsing.take();
+                    long writeStart = System.nanoTime();
+                    threadWriter.write(thread);
+                    statistics.recordPersist(System.nanoTime() - writeStart);
+                    statistics.onThreadCollected(thread.getPosts().size());
+                }
             }
+        } finally {
+            fetching.cancelAll();
+            parsing.cancelAll();
         }
 
         logger.info(String.format("Parsing page [%s] finished", pageDom.baseUri()));
     }
 
-    private Set<String> extractThreadIds(Document pageDom) {
+    /**
+     * @return number of threads of all runs being downloaded or waiting to be parsed
+     */
+    public int getQueuedFetches() {
+        return queuedFetches.get();
+    }
+
+    /**
+     * @return number of threads of all runs being parsed or waiting to be written
+     */
+    public int getQueuedParses() {
+        return queuedParses.get();
+    }
+
+    static Set<String> extractThreadIds(Document pageDom) {
         Elements postElements = pageDom.select("div.op div.postInfo .postNum");
         return FuncUtils.mapSet(postElements, el -> el.select("a").last().text());
     }
 
-    private ThreadDs getThread(String threadId, Settings settings) throws IOException {
-        if (threadRepository.findIdByThreadId(threadId) != null) {
-            return null;
+    /**
+     * Finds id of the newest post of every thread, among posts visible on the page. Page lists every thread as its opening post followed by its latest replies.
+     *
+     * @param pageDom page document
+     * @return id of the newest visible post per thread id
+     */
+    static Map<String, Long> extractLastPostIds(Document pageDom) {
+        Map<String, Long> lastPostIds = new HashMap<>();
+        String threadId = null;
+        for (Element post : pageDom.select("div.post")) {
+            String postId = StringUtils.getSingleMatch(post.id(), POST_ID_PATTERN, 1);
+            if (postId == null) {
+                continue;
+            }
+            if (post.hasClass("op")) {
+                threadId = postId;
+            }
+            if (threadId != null) {
+                lastPostIds.merge(threadId, Long.valueOf(postId), Math::max);
+            }
+        }
+
+        return lastPostIds;
+    }
+
+    private Map<String, Long> findBumpedThreads(Document pageDom, Settings settings, Set<String> collectedThreadIds) {
+        if (collectedThreadIds.isEmpty()) {
+            return Collections.emptyMap();
         }
-        Document threadWebPage = getThreadWebPage(threadId, settings);
 
-        return threadParser.parseThread(threadWebPage, settings);
+        Map<String, Long> pageLastPostIds = extractLastPostIds(pageDom);
+        Map<String, Long> bumpedThreads = new HashMap<>();
+        knownThreads.findLastPostIds(settings.getBoardName(), collectedThreadIds).forEach((threadId, lastPostId) -> {
+            Long pageLastPostId = pageLastPostIds.get(threadId);
+            if (pageLastPostId != null && (lastPostId == null || pageLastPostId > lastPostId)) {
+                bumpedThreads.put(threadId, lastPostId == null ? 0L : lastPostId);
+            }
+        });
+
+        return bumpedThreads;
+    }
+
+    private Callable<ThreadDs> fetchThread(String threadId, Long lastPostId, Settings settings, RunStatistics statistics) throws IOException {
+        String url = getThreadUrl(threadId, settings);
+        long fetchStart = System.nanoTime();
+        try {
+            if (streamingParser) {
+                WebPage threadWebPage = webService.getPage(url);
+                statistics.recordFetch(System.nanoTime() - fetchStart, threadWebPage.getSize());
+                return () -> parseThread(() -> threadParser.parseThread(threadWebPage.getBody(), threadWebPage.getUrl(), settings), lastPostId, statistics);
+            }
+
+            ConditionalDocument threadWebPage = webService.getDocument(url, PageValidators.NONE);
+            statistics.recordFetch(System.nanoTime() - fetchStart, threadWebPage.getSize());
+            return () -> parseThread(() -> threadParser.parseThread(threadWebPage.getDocument(), settings), lastPostId, statistics);
+        } catch (IOException | RuntimeException ex) {
+            statistics.onError();
+            throw ex;
+        }
+    }
+
+    private ThreadDs parseThread(Callable<ThreadDs> parser, Long lastPostId, RunStatistics statistics) throws Exception {
+        long parseStart = System.nanoTime();
+        try {
+            ThreadDs thread = parser.call();
+            statistics.recordParse(System.nanoTime() - parseStart);
+            if (lastPostId != null) {
+                thread.removePostsUpTo(lastPostId);
+            }
+            return thread;
+        } catch (Exception ex) {
+            statistics.onError();
+            throw ex;
+        }
     }
 
-    private Document getThreadWebPage(String threadId, Settings settings) throws IOException {
-        String url = String.format("https://yuki.la/%s/%s", settings.getBoardName(), threadId);
-        return webService.getDocument(url);
+    private String getThreadUrl(String threadId, Settings settings) {
+        return String.format("https://yuki.la/%s/%s", settings.getBoardName(), threadId);
     }
 }
@@ -0,0 +1,72 @@
+package scraper.services.chan.processor;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reader splitting raw 4chan thread html into post containers.
+ * <p>
+ * Html is scanned for <tt>div.postContainer</tt> start tags. Each container is parsed on its own, when requested, so only one small DOM fragment is alive at a time instead of
+ * DOM of the whole thread. Everything before the first container is available as head document.
+ */
+final class PostContainerReader {
+
+    private static final Pattern POST_CONTAINER_START = Pattern.compile("<div\\s[^>]*class\\s*=\\s*[\"']?[^\"'>]*\\bpostContainer\\b", Pattern.CASE_INSENSITIVE);
+
+    private final String html;
+
+    private final Matcher matcher;
+
+    private final int headEnd;
+
+    private int nextStart;
+
+    private String baseUri;
+
+    /**
+     * @param html    raw thread html
+     * @param baseUri base uri of the thread page
+     */
+    PostContainerReader(String html, String baseUri) {
+        this.html = html;
+        this.baseUri = baseUri;
+        this.matcher = POST_CONTAINER_START.matcher(html);
+        this.headEnd = matcher.find() ? matcher.start() : html.length();
+        this.nextStart = headEnd;
+    }
+
+    /**
+     * Parses part of the html before the first post container. Should be called before reading containers, as base uri declared in the head is used for containers too.
+     *
+     * @return head document
+     */
+    Document readHead() {
+        Document head = Jsoup.parse(html.substring(0, headEnd), baseUri);
+        baseUri = head.baseUri();
+
+        return head;
+    }
+
+    /**
+     * @return <tt>true</tt> if there are more post containers to read
+     */
+    boolean hasNext() {
+        return nextStart < html.length();
+    }
+
+    /**
+     * Parses next post container.
+     *
+     * @return body element of the fragment containing next post container
+     */
+    Element next() {
+        int start = nextStart;
+        nextStart = matcher.find() ? matcher.start() : html.length();
+
+        return Jsoup.parseBodyFragment(html.substring(start, nextStart), baseUri).body();
+    }
+}
@@ -0,0 +1,242 @@
+package scraper.services.chan.processor;
+
+import org.jsoup.nodes.Element;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Elements of single 4chan post DOM, needed to build {@link scraper.services.chan.model.PostDs}.
+ * <p>
+ * All elements are found in a single walk through the post subtree. Result is the same as first match of the corresponding CSS selector run on the post element, but without
+ * walking the subtree once per selector.
+ */
+final class PostElements {
+
+    private static final int POST_INFO = 1;
+
+    private static final int NAME_BLOCK = 1 << 1;
+
+    private static final int FILE = 1 << 2;
+
+    private static final int FILE_TEXT = 1 << 3;
+
+    private static final int FILE_THUMB = 1 << 4;
+
+    private static final int POST_MESSAGE = 1 << 5;
+
+    private int postInfoDepth;
+
+    private int nameBlockDepth;
+
+    private int fileDepth;
+
+    private int fileTextDepth;
+
+    private int fileThumbDepth;
+
+    private int postMessageDepth;
+
+    private Element name;
+
+    private Element dateTime;
+
+    private Element postIdInput;
+
+    private Element postMessage;
+
+    private Element fileText;
+
+    private Element fileLink;
+
+    private Element thumbnail;
+
+    private Element mobileFileInfo;
+
+    private final List<Element> quoteLinks = new ArrayList<>();
+
+    private PostElements() {
+    }
+
+    /**
+     * Finds elements of given post.
+     *
+     * @param postElement post element
+     * @return post elements
+     */
+    static PostElements extract(Element postElement) {
+        PostElements elements = new PostElements();
+
+        List<Element> ancestors = new ArrayList<>(postElement.parents());
+        Collections.reverse(ancestors);
+        for (Element ancestor : ancestors) {
+            elements.enter(ancestor);
+        }
+        elements.visit(postElement);
+
+        return elements;
+    }
+
+    /**
+     * @return first <tt>div.postInfo span.nameBlock span.name</tt> element or <tt>null</tt>
+     */
+    Element getName() {
+        return name;
+    }
+
+    /**
+     * @return first <tt>div.postInfo span.dateTime</tt> element or <tt>null</tt>
+     */
+    Element getDateTime() {
+        return dateTime;
+    }
+
+    /**
+     * @return first <tt>div.postInfo input</tt> element or <tt>null</tt>
+     */
+    Element getPostIdInput() {
+        return postIdInput;
+    }
+
+    /**
+     * @return first <tt>blockquote.postMessage</tt> element or <tt>null</tt>
+     */
+    Element getPostMessage() {
+        return postMessage;
+    }
+
+    /**
+     * @return first <tt>div.file div.fileText</tt> element or <tt>null</tt>
+     */
+    Element getFileText() {
+        return fileText;
+    }
+
+    /**
+     * @return first <tt>div.file div.fileText a</tt> element or <tt>null</tt>
+     */
+    Element getFileLink() {
+        return fileLink;
+    }
+
+    /**
+     * @return first <tt>div.file a.fileThumb img</tt> element or <tt>null</tt>
+     */
+    Element getThumbnail() {
+        return thumbnail;
+    }
+
+    /**
+     * @return first <tt>div.file div.mFileInfo</tt> element or <tt>null</tt>
+     */
+    Element getMobileFileInfo() {
+        return mobileFileInfo;
+    }
+
+    /**
+     * @return all <tt>blockquote.postMessage a.quotelink</tt> elements, in document order
+     */
+    List<Element> getQuoteLinks() {
+        return quoteLinks;
+    }
+
+    private void visit(Element element) {
+        match(element);
+        int entered = enter(element);
+        for (Element child : element.children()) {
+            visit(child);
+        }
+        leave(entered);
+    }
+
+    private void match(Element element) {
+        String tag = element.tagName();
+        if (postInfoDepth > 0) {
+            if (nameBlockDepth > 0 && name == null && is(element, tag, "span", "name")) {
+                name = element;
+            }
+            if (dateTime == null && is(element, tag, "span", "dateTime")) {
+                dateTime = element;
+            }
+            if (postIdInput == null && "input".equals(tag)) {
+                postIdInput = element;
+            }
+        }
+        if (postMessage == null && is(element, tag, "blockquote", "postMessage")) {
+            postMessage = element;
+        }
+        if (postMessageDepth > 0 && is(element, tag, "a", "quotelink")) {
+            quoteLinks.add(element);
+        }
+        if (fileDepth > 0) {
+            if (fileText == null && is(element, tag, "div", "fileText")) {
+                fileText = element;
+            }
+            if (fileTextDepth > 0 && fileLink == null && "a".equals(tag)) {
+                fileLink = element;
+            }
+            if (fileThumbDepth > 0 && thumbnail == null && "img".equals(tag)) {
+                thumbnail = element;
+            }
+            if (mobileFileInfo == null && is(element, tag, "div", "mFileInfo")) {
+                mobileFileInfo = element;
+            }
+        }
+    }
+
+    private int enter(Element element) {
+        String tag = element.tagName();
+        int entered = 0;
+        if (is(element, tag, "div", "postInfo")) {
+            entered |= POST_INFO;
+        }
+        if (postInfoDepth > 0 && is(element, tag, "span", "nameBlock")) {
+            entered |= NAME_BLOCK;
+        }
+        if (is(element, tag, "div", "file")) {
+            entered |= FILE;
+        }
+        if (fileDepth > 0 && is(element, tag, "div", "fileText")) {
+            entered |= FILE_TEXT;
+        }
+        if (fileDepth > 0 && is(element, tag, "a", "fileThumb")) {
+            entered |= FILE_THUMB;
+        }
+        if (is(element, tag, "blockquote", "postMessage")) {
+            entered |= POST_MESSAGE;
+        }
+        update(entered, 1);
+
+        return entered;
+    }
+
+    private void leave(int entered) {
+        update(entered, -1);
+    }
+
+    private void update(int flags, int delta) {
+        if ((flags & POST_INFO) != 0) {
+            postInfoDepth += delta;
+        }
+        if ((flags & NAME_BLOCK) != 0) {
+            nameBlockDepth += delta;
+        }
+        if ((flags & FILE) != 0) {
+            fileDepth += delta;
+        }
+        if ((flags & FILE_TEXT) != 0) {
+            fileTextDepth += delta;
+        }
+        if ((flags & FILE_THUMB) != 0) {
+            fileThumbDepth += delta;
+        }
+        if ((flags & POST_MESSAGE) != 0) {
+            postMessageDepth += delta;
+        }
+    }
+
+    private static boolean is(Element element, String tag, String expectedTag, String expectedClass) {
+        return expectedTag.equals(tag) && element.hasClass(expectedClass);
+    }
+}
@@ -0,0 +1,192 @@
+package scraper.services.chan.processor;
+
+import scraper.services.chan.dto.RunStatusJsonDto;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Live counters and latency histograms of the collection run of one board.
+ * <p>
+ * Statistics are updated by the run itself, by page prefetch and by worker pool threads, and may be read at any time, while the run is still going.
+ */
+public class RunStatistics {
+
+    /**
+     * State of the run.
+     */
+    public enum State {
+        RUNNING, FINISHED, CANCELLED, FAILED
+    }
+
+    private final String board;
+
+    private final LongSupplier clock;
+
+    private final long startTime;
+
+    private volatile long finishTime;
+
+    private volatile State state = State.RUNNING;
+
+    private volatile String error;
+
+    private volatile int currentPage;
+
+    private final AtomicLong pages = new AtomicLong();
+
+    private final AtomicLong notModifiedPages = new AtomicLong();
+
+    private final AtomicLong threads = new AtomicLong();
+
+    private final AtomicLong posts = new AtomicLong();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final LatencyHistogram fetchLatency = new LatencyHistogram();
+
+    private final LatencyHistogram parseLatency = new LatencyHistogram();
+
+    private final LatencyHistogram persistLatency = new LatencyHistogram();
+
+    /**
+     * @param board board name
+     */
+    public RunStatistics(String board) {
+        this(board, System::currentTimeMillis);
+    }
+
+    /**
+     * @param board board name
+     * @param clock source of current time, in milliseconds
+     */
+    RunStatistics(String board, LongSupplier clock) {
+        this.board = board;
+        this.clock = clock;
+        this.startTime = clock.getAsLong();
+    }
+
+    public String getBoard() {
+        return board;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @param pageIndx index of the page that is being collected
+     */
+    public void onPageStarted(int pageIndx) {
+        currentPage = pageIndx;
+    }
+
+    /**
+     * @param modified <tt>false</tt> if page was skipped, because it has not changed
+     */
+    public void onPageCollected(boolean modified) {
+        pages.incrementAndGet();
+        if (!modified) {
+            notModifiedPages.incrementAndGet();
+        }
+    }
+
+    /**
+     * @param postCount number of posts of the thread passed to writer
+     */
+    public void onThreadCollected(int postCount) {
+        threads.incrementAndGet();
+        posts.addAndGet(postCount);
+    }
+
+    /**
+     * Records page or thread that failed to be downloaded or parsed.
+     */
+    public void onError() {
+        errors.incrementAndGet();
+    }
+
+    /**
+     * @param nanos duration of the download, in nanoseconds
+     * @param size  size of the downloaded body, in bytes
+     */
+    public void recordFetch(long nanos, long size) {
+        fetchLatency.record(nanos);
+        bytes.addAndGet(size);
+    }
+
+    /**
+     * @param nanos duration of the parsing, in nanoseconds
+     */
+    public void recordParse(long nanos) {
+        parseLatency.record(nanos);
+    }
+
+    /**
+     * @param nanos duration of the write or flush, in nanoseconds
+     */
+    public void recordPersist(long nanos) {
+        persistLatency.record(nanos);
+    }
+
+    /**
+     * Marks run as finished successfully.
+     */
+    public void finish() {
+        finishTime = clock.getAsLong();
+        state = State.FINISHED;
+    }
+
+    /**
+     * Marks run as cancelled, after it stopped at the page boundary.
+     */
+    public void cancel() {
+        finishTime = clock.getAsLong();
+        state = State.CANCELLED;
+    }
+
+    /**
+     * Marks run as failed.
+     *
+     * @param cause error that failed the run
+     */
+    public void fail(Throwable cause) {
+        finishTime = clock.getAsLong();
+        error = cause.getMessage() == null ? cause.getClass().getName() : cause.getMessage();
+        state = State.FAILED;
+    }
+
+    /**
+     * Takes snapshot of the statistics. Counters updated concurrently may be included only partially.
+     *
+     * @return status json DTO
+     */
+    public RunStatusJsonDto getStatus() {
+        State currentState = state;
+        long endTime = currentState == State.RUNNING ? clock.getAsLong() : finishTime;
+        double elapsedSeconds = Math.max(endTime - startTime, 1) / 1000.0;
+
+        RunStatusJsonDto status = new RunStatusJsonDto();
+        status.setBoard(board);
+        status.setState(currentState.name());
+        status.setError(error);
+        status.setStartTime(startTime);
+        status.setFinishTime(currentState == State.RUNNING ? null : finishTime);
+        status.setCurrentPage(currentPage);
+        status.setPages(pages.get());
+        status.setNotModifiedPages(notModifiedPages.get());
+        status.setThreads(threads.get());
+        status.setPosts(posts.get());
+        status.setErrors(errors.get());
+        status.setBytes(bytes.get());
+        status.setPostsPerSecond(status.getPosts() / elapsedSeconds);
+        status.setBytesPerSecond(status.getBytes() / elapsedSeconds);
+        status.setFetch(fetchLatency.snapshot());
+        status.setParse(parseLatency.snapshot());
+        status.setPersist(persistLatency.snapshot());
+
+        return status;
+    }
+}
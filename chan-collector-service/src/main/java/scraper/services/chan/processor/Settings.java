@@ -1,6 +1,7 @@
 package scraper.services.chan.processor;
 
 import scraper.common.Utils;
+import scraper.properties.bool.BoolProperty;
 import scraper.properties.number.NumberProperty;
 import scraper.properties.string.StringProperty;
 
@@ -17,12 +18,20 @@ public class Settings {
     @NumberProperty(viewName = "Max Pages", description = "Maximum number of pages to scrap at once", min = 1, required = false)
     private Integer maxPages = 20;
 
+    @BoolProperty(viewName = "Incremental", description = "Collect new posts of already collected threads that were bumped")
+    private boolean incremental;
+
     public Settings() {
     }
 
     public Settings(String boardName, Integer maxPages) {
+        this(boardName, maxPages, false);
+    }
+
+    public Settings(String boardName, Integer maxPages, boolean incremental) {
         this.boardName = boardName;
         this.maxPages = maxPages;
+        this.incremental = incremental;
     }
 
     /**
@@ -61,6 +70,24 @@ public class Settings {
         this.maxPages = maxPages;
     }
 
+    /**
+     * Checks if already collected threads should be updated with their new posts.
+     *
+     * @return <tt>true</tt> if threads are collected incrementally
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Sets if already collected threads should be updated with their new posts.
+     *
+     * @param incremental <tt>true</tt> if threads should be collected incrementally
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
@@ -72,11 +99,11 @@ public class Settings {
 
         Settings other = (Settings) obj;
 
-        return Utils.computeEq(boardName, other.boardName, maxPages, other.maxPages);
+        return Utils.computeEq(boardName, other.boardName, maxPages, other.maxPages, incremental, other.incremental);
     }
 
     @Override
     public int hashCode() {
-        return Utils.computeHash(boardName, maxPages);
+        return Utils.computeHash(boardName, maxPages, incremental);
     }
 }
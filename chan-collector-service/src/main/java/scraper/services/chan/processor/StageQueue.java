@@ -0,0 +1,76 @@
+package scraper.services.chan.processor;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded queue of tasks submitted to one stage of the collection pipeline, taken in submission order.
+ * <p>
+ * Producer must not submit new task while the queue is full - it takes the oldest result first, which blocks until that task completes. So slow stage stops stages before
+ * it, instead of letting their results pile up in memory. Size of the queue is added to the depth shared by all queues of the stage, which is exposed as metric.
+ *
+ * @param <T> type of the task result
+ */
+final class StageQueue<T> {
+
+    private final Deque<Future<T>> futures;
+
+    private final int capacity;
+
+    private final AtomicInteger stageDepth;
+
+    /**
+     * @param capacity   maximal number of queued tasks
+     * @param stageDepth depth of the stage, updated as tasks are added and taken
+     */
+    StageQueue(int capacity, AtomicInteger stageDepth) {
+        this.capacity = Math.max(1, capacity);
+        this.futures = new ArrayDeque<>(this.capacity);
+        this.stageDepth = stageDepth;
+    }
+
+    boolean isFull() {
+        return futures.size() >= capacity;
+    }
+
+    boolean isEmpty() {
+        return futures.isEmpty();
+    }
+
+    /**
+     * @param future future of submitted task
+     * @throws IllegalStateException if queue is full
+     */
+    void add(Future<T> future) {
+        if (isFull()) {
+            throw new IllegalStateException("Stage queue is full");
+        }
+        futures.add(future);
+        stageDepth.incrementAndGet();
+    }
+
+    /**
+     * Takes the oldest task and waits for its result, as described in {@link Futures#await(Future)}.
+     *
+     * @return result of the task
+     * @throws IOException if task failed with io exception or waiting was interrupted
+     */
+    T take() throws IOException {
+        Future<T> future = futures.remove();
+        stageDepth.decrementAndGet();
+
+        return Futures.await(future);
+    }
+
+    /**
+     * Cancels all queued tasks, interrupting running ones, and empties the queue.
+     */
+    void cancelAll() {
+        futures.forEach(future -> future.cancel(true));
+        stageDepth.addAndGet(-futures.size());
+        futures.clear();
+    }
+}
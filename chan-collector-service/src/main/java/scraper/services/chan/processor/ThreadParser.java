@@ -1,10 +1,14 @@
 package scraper.services.chan.processor;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import scraper.common.FuncUtils;
 import scraper.common.StringUtils;
@@ -13,32 +17,60 @@ import scraper.services.chan.model.PostDs;
 import scraper.services.chan.model.ThreadDs;
 
 import java.io.IOException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 import static scraper.common.FuncUtils.mapFilter;
 
 /**
  * Service responsible for parsing DOM document of 4chan thread to {@link ThreadDs}.
+ * <p>
+ * Parsing is measured by <tt>scraper.parser.thread</tt> timer, tagged with parsing mode, and parsed posts are counted by <tt>scraper.parser.posts</tt>.
  */
 @Service
 public class ThreadParser {
 
     private final Log logger = LogFactory.getLog(ThreadParser.class);
 
-    private static final String THREAD_ID_REGEX = ".*thread\\/([0-9]+)\\/.*";
+    private static final Pattern THREAD_ID_PATTERN = Pattern.compile(".*thread\\/([0-9]+)\\/.*");
 
-    private static final String DATE_FORMAT = "MM/dd/yy(EEE)HH:mm:ss";
+    // two digit year is in the same century window as in SimpleDateFormat - from 80 years before to 20 years after now
+    private static final DateTimeFormatter DATE_FORMATTER = new DateTimeFormatterBuilder()
+            .appendPattern("MM/dd/")
+            .appendValueReduced(ChronoField.YEAR_OF_ERA, 2, 2, LocalDate.now().minusYears(80))
+            .appendPattern("(EEE)HH:mm:ss")
+            .toFormatter(Locale.ENGLISH);
 
-    private static final String SIZE_REGEX = ".* (\\d+)x(\\d+).*";
+    private static final Pattern SIZE_PATTERN = Pattern.compile(".* (\\d+)x(\\d+).*");
+
+    private final Timer domParseTimer;
+
+    private final Timer streamingParseTimer;
+
+    private final Counter parsedPosts;
+
+    @Autowired
+    public ThreadParser(MeterRegistry meterRegistry) {
+        this.domParseTimer = Timer.builder("scraper.parser.thread").tags("mode", "dom").publishPercentileHistogram().register(meterRegistry);
+        this.streamingParseTimer = Timer.builder("scraper.parser.thread").tags("mode", "streaming").publishPercentileHistogram().register(meterRegistry);
+        this.parsedPosts = meterRegistry.counter("scraper.parser.posts");
+    }
 
     /**
      * Parses thread DOM {@code document} to new {@link ThreadDs} instance.
@@ -50,14 +82,57 @@ public class ThreadParser {
     public ThreadDs parseThread(Document threadDom, Settings settings) throws IOException {
         logger.info(String.format("Parsing thread [%s] started", threadDom.baseUri()));
 
+        long start = System.nanoTime();
         ThreadDs thread = buildThread(threadDom, settings);
         thread.addPosts(buildPosts(threadDom));
-
+        domParseTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        parsedPosts.increment(thread.getPosts().size());
 
         logger.info(String.format("Parsing thread [%s] finished", threadDom.baseUri()));
         return thread;
     }
 
+    /**
+     * Parses raw thread {@code threadHtml} to new {@link ThreadDs} instance, without building DOM of the whole thread.
+     * <p>
+     * Posts are parsed one post container at a time, so DOM of only one post is kept in memory. Result is the same as of {@link #parseThread(Document, Settings)}.
+     *
+     * @param threadHtml thread webpage html
+     * @param baseUri    thread webpage url
+     * @param settings   collection settings
+     * @return created thread
+     */
+    public ThreadDs parseThread(String threadHtml, String baseUri, Settings settings) throws IOException {
+        logger.info(String.format("Streaming parsing thread [%s] started", baseUri));
+
+        long start = System.nanoTime();
+        PostContainerReader reader = new PostContainerReader(threadHtml, baseUri);
+        Document head = reader.readHead();
+        String threadId = extractThreadId(head);
+        Element subject = head.select("span.subject").first();
+
+        List<PostDs> posts = new ArrayList<>();
+        Map<String, List<String>> replies = new HashMap<>();
+        while (reader.hasNext()) {
+            Element container = reader.next();
+            if (subject == null) {
+                subject = container.select("span.subject").first();
+            }
+            for (Element el : container.select("div.post")) {
+                addPost(el, posts, replies);
+            }
+        }
+        applyReplies(replies, posts);
+
+        ThreadDs thread = new ThreadDs(threadId, settings.getBoardName(), subject == null ? "" : subject.text());
+        thread.addPosts(posts);
+        streamingParseTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        parsedPosts.increment(thread.getPosts().size());
+
+        logger.info(String.format("Streaming parsing thread [%s] finished", baseUri));
+        return thread;
+    }
+
     private ThreadDs buildThread(Document threadDom, Settings settings) {
         String threadId = extractThreadId(threadDom);
         String board = settings.getBoardName();
@@ -68,7 +143,7 @@ public class ThreadParser {
 
     private String extractThreadId(Element threadDom) {
         Element elem = threadDom.select("link[rel=canonical]").first();
-        return elem == null ? "" : StringUtils.getSingleMatch(elem.absUrl("href"), THREAD_ID_REGEX, 1, "");
+        return elem == null ? "" : StringUtils.getSingleMatch(elem.absUrl("href"), THREAD_ID_PATTERN, 1, "");
     }
 
     private String extractSubject(Element threadDom) {
@@ -80,27 +155,25 @@ public class ThreadParser {
         Elements postElements = threadDom.select("div.post");
 
         List<PostDs> posts = new ArrayList<>(postElements.size());
+        Map<String, List<String>> replies = new HashMap<>();
         for (Element el : postElements) {
-            posts.add(buildPostBase(el));
+            addPost(el, posts, replies);
         }
 
-        Map<String, List<String>> replies = extractReplies(postElements);
         applyReplies(replies, posts);
 
         return posts;
     }
 
-    private Map<String, List<String>> extractReplies(Collection<Element> postElements) {
-        Map<String, List<String>> replies = new HashMap<>();
-        for (Element element : postElements) {
-            List<String> replyIds = extractReplies(element);
-            if (!replyIds.isEmpty()) {
-                String postId = extractPostId(element);
-                replies.put(postId, replyIds);
-            }
-        }
+    private void addPost(Element postElement, List<PostDs> posts, Map<String, List<String>> replies) {
+        PostElements elements = PostElements.extract(postElement);
+        PostDs post = buildPostBase(elements);
+        posts.add(post);
 
-        return replies;
+        List<String> replyIds = extractReplies(elements);
+        if (!replyIds.isEmpty()) {
+            replies.put(post.getPostId(), replyIds);
+        }
     }
 
     private void applyReplies(Map<String, List<String>> repliesMap, List<PostDs> posts) {
@@ -114,91 +187,106 @@ public class ThreadParser {
         }
     }
 
-    private PostDs buildPostBase(Element postElement) {
-        String author = extractAuthor(postElement);
-        Date date = extractDate(postElement);
-        String postId = extractPostId(postElement);
-        String comment = extractComment(postElement);
-        String fileName = extractFileName(postElement);
-        String md5 = extractMd5(postElement);
-        String fileLink = extractFileLink(postElement);
-        String thumbnailLink = extractThumbnailLink(postElement);
-        String extension = extractExtension(postElement);
-        Integer length = extractLength(postElement);
-        Integer width = extractWidth(postElement);
-        String size = extractSize(postElement);
+    private PostDs buildPostBase(PostElements elements) {
+        String author = extractAuthor(elements);
+        Date date = extractDate(elements);
+        String postId = extractPostId(elements);
+        String comment = extractComment(elements);
+        String fileName = extractFileName(elements);
+        String md5 = extractMd5(elements);
+        String fileLink = extractFileLink(elements);
+        String thumbnailLink = extractThumbnailLink(elements);
+        String extension = extractExtension(elements);
+        Integer length = extractLength(elements);
+        Integer width = extractWidth(elements);
+        String size = extractSize(elements);
 
         return new PostDs(author, date, postId, comment, fileName, md5, fileLink, thumbnailLink, extension, length, width, size);
     }
 
-    private String extractAuthor(Element postElement) {
-        Element elem = postElement.select("div.postInfo span.nameBlock span.name").first();
+    private String extractAuthor(PostElements elements) {
+        Element elem = elements.getName();
         return elem == null ? "" : elem.text();
     }
 
-    private Date extractDate(Element postElement) {
-        Element elem = postElement.select("div.postInfo span.dateTime").first();
+    private Date extractDate(PostElements elements) {
+        Element elem = elements.getDateTime();
         String dateStr = elem == null ? "" : elem.text();
 
+        return parseDate(dateStr);
+    }
+
+    /**
+     * Parses post date in the default time zone. Day of week is not checked against the date and text after the date is ignored, the same as
+     * {@link java.text.SimpleDateFormat} did. Unlike lenient {@link java.text.SimpleDateFormat}, date out of range, such as month <tt>13</tt>, is not rolled over to
+     * another date - it is invalid and parsed as <tt>0</tt> epoch time, like any unparseable date.
+     */
+    static Date parseDate(String dateStr) {
+        TemporalAccessor fields = DATE_FORMATTER.parseUnresolved(dateStr, new ParsePosition(0));
+        if (fields == null) {
+            return new Date(0L);
+        }
+
         try {
-            return new SimpleDateFormat(DATE_FORMAT, Locale.ENGLISH).parse(dateStr);
-        } catch (ParseException e) {
+            LocalDateTime dateTime = LocalDateTime.of(fields.get(ChronoField.YEAR_OF_ERA), fields.get(ChronoField.MONTH_OF_YEAR), fields.get(ChronoField.DAY_OF_MONTH),
+                    fields.get(ChronoField.HOUR_OF_DAY), fields.get(ChronoField.MINUTE_OF_HOUR), fields.get(ChronoField.SECOND_OF_MINUTE));
+            return Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+        } catch (DateTimeException e) {
             return new Date(0L);
         }
     }
 
-    private String extractPostId(Element postElement) {
-        Element elem = postElement.select("div.postInfo input").first();
+    private String extractPostId(PostElements elements) {
+        Element elem = elements.getPostIdInput();
         return elem == null ? "" : elem.attr("name");
     }
 
-    private String extractComment(Element postElement) {
-        Element elem = postElement.select("blockquote.postMessage").first();
+    private String extractComment(PostElements elements) {
+        Element elem = elements.getPostMessage();
         return elem == null ? "" : elem.text();
     }
 
-    private String extractFileName(Element postElement) {
-        Element elem = postElement.select("div.file div.fileText a").first();
+    private String extractFileName(PostElements elements) {
+        Element elem = elements.getFileLink();
         return elem == null ? "" : elem.text();
     }
 
-    private String extractMd5(Element postElement) {
-        Element elem = postElement.select("div.file a.fileThumb img").first();
+    private String extractMd5(PostElements elements) {
+        Element elem = elements.getThumbnail();
         return elem == null ? "" : elem.attr("data-md5");
     }
 
-    private String extractFileLink(Element postElement) {
-        Element elem = postElement.select("div.file div.fileText a").first();
+    private String extractFileLink(PostElements elements) {
+        Element elem = elements.getFileLink();
         return elem == null ? "" : elem.absUrl("href");
     }
 
-    private String extractThumbnailLink(Element postElement) {
-        Element elem = postElement.select("div.file a.fileThumb img").first();
+    private String extractThumbnailLink(PostElements elements) {
+        Element elem = elements.getThumbnail();
         return elem == null ? "" : elem.absUrl("src");
     }
 
-    private String extractExtension(Element postElement) {
-        Element elem = postElement.select("div.file div.mFileInfo").first();
+    private String extractExtension(PostElements elements) {
+        Element elem = elements.getMobileFileInfo();
         return elem == null ? "" : StringUtils.splitAndJoin(elem.text(), " ", "", 2);
     }
 
-    private String extractSize(Element postElement) {
-        Element elem = postElement.select("div.file div.mFileInfo").first();
+    private String extractSize(PostElements elements) {
+        Element elem = elements.getMobileFileInfo();
         return elem == null ? "" : StringUtils.splitAndJoin(elem.text(), " ", "", 0, 1);
     }
 
-    private Integer extractWidth(Element postElement) {
-        Element elem = postElement.select("div.file div.fileText").first();
-        return elem == null ? null : StringUtils.toInteger(StringUtils.getSingleMatch(elem.text(), SIZE_REGEX, 1));
+    private Integer extractWidth(PostElements elements) {
+        Element elem = elements.getFileText();
+        return elem == null ? null : StringUtils.toInteger(StringUtils.getSingleMatch(elem.text(), SIZE_PATTERN, 1));
     }
 
-    private Integer extractLength(Element postElement) {
-        Element elem = postElement.select("div.file div.fileText").first();
-        return elem == null ? null : StringUtils.toInteger(StringUtils.getSingleMatch(elem.text(), SIZE_REGEX, 2));
+    private Integer extractLength(PostElements elements) {
+        Element elem = elements.getFileText();
+        return elem == null ? null : StringUtils.toInteger(StringUtils.getSingleMatch(elem.text(), SIZE_PATTERN, 2));
     }
 
-    private List<String> extractReplies(Element postElement) {
-        Elements elems = postElement.select("blockquote.postMessage a.quotelink");
-        return FuncUtils.map(elems, el -> el.text().substring(2));
+    private List<String> extractReplies(PostElements elements) {
+        return FuncUtils.map(elements.getQuoteLinks(), el -> el.text().substring(2));
     }
 }
@@ -0,0 +1,53 @@
+package scraper.services.chan.processor;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Pool of workers shared by many boards, running tasks of one collection pipeline stage.
+ */
+public interface WorkerPool {
+
+    /**
+     * Queues task of the board.
+     *
+     * @param board board name
+     * @param task  task to run
+     * @param <T>   type of the task result
+     * @return future of the task result
+     * @throws RejectedExecutionException if pool is shut down
+     */
+    <T> Future<T> submit(String board, Callable<T> task);
+
+    /**
+     * Gets number of tasks of the board that wait to be run.
+     *
+     * @param board board name
+     * @return number of queued tasks
+     */
+    int getQueued(String board);
+
+    /**
+     * Gets number of tasks of the board that are running.
+     *
+     * @param board board name
+     * @return number of running tasks
+     */
+    int getRunning(String board);
+
+    /**
+     * @return number of tasks of all boards that wait to be run
+     */
+    int getQueued();
+
+    /**
+     * @return number of tasks of all boards that are running
+     */
+    int getRunning();
+
+    /**
+     * Stops the pool. Queued tasks are cancelled and running tasks are interrupted.
+     */
+    void shutdownNow();
+}
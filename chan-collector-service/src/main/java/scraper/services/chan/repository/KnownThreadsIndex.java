@@ -0,0 +1,179 @@
+package scraper.services.chan.repository;
+
+import fr.zebasto.spring.post.initialize.PostInitialize;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.neo4j.ogm.session.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import scraper.common.structure.BloomFilter;
+import scraper.services.chan.dto.KnownThreadsJsonDto;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory index of stored thread ids, kept as one {@link BloomFilter} per board.
+ * <p>
+ * Index is warmed from neo4j at startup and updated by {@link ThreadBatchWriter} after each written batch. Thread id that is not in the filter is certainly not stored, so it
+ * does not need database round trip. Positive answer is confirmed with a real lookup, as it may be a false positive.
+ */
+@Service
+public class KnownThreadsIndex {
+
+    private static final String ALL_THREADS_QUERY = "MATCH (t:ThreadDs) RETURN t.board AS board, t.threadId AS threadId";
+
+    private static final String LAST_POST_IDS_QUERY = "MATCH (t:ThreadDs) WHERE t.board = {board} AND t.threadId IN {threadIds} "
+            + "OPTIONAL MATCH (p:PostDs)-[:CONTAINS]->(t) WHERE t.lastPostId IS NULL "
+            + "WITH t, max(toInt(p.postId)) AS maxPostId "
+            + "RETURN t.threadId AS threadId, coalesce(t.lastPostId, maxPostId) AS lastPostId";
+
+    private final Log logger = LogFactory.getLog(KnownThreadsIndex.class);
+
+    private final ConcurrentMap<String, BoardIndex> boards = new ConcurrentHashMap<>();
+
+    private final Session session;
+
+    private final ThreadDsRepository threadRepository;
+
+    private final long expectedThreads;
+
+    private final double falsePositiveRate;
+
+    @Autowired
+    public KnownThreadsIndex(Session session, ThreadDsRepository threadRepository, @Value("${scraper.collector.known-threads.expected:1000000}") long expectedThreads,
+            @Value("${scraper.collector.known-threads.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.session = session;
+        this.threadRepository = threadRepository;
+        this.expectedThreads = expectedThreads;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * Loads ids of all stored threads.
+     */
+    @PostInitialize
+    public void warmUp() {
+        long loaded = 0;
+        for (Map<String, Object> row : session.query(ALL_THREADS_QUERY, Collections.emptyMap(), true).queryResults()) {
+            add((String) row.get("board"), (String) row.get("threadId"));
+            loaded++;
+        }
+
+        logger.info(String.format("Known threads index warmed with %d threads", loaded));
+    }
+
+    /**
+     * Marks thread as stored.
+     *
+     * @param board    board name
+     * @param threadId thread id
+     */
+    public void add(String board, String threadId) {
+        if (board == null || threadId == null) {
+            return;
+        }
+
+        getBoardIndex(board).filter.put(threadId);
+    }
+
+    /**
+     * Finds which of given thread ids are already stored.
+     * <p>
+     * Only ids that are possibly known by the index are checked in the database. If there are no such ids, no query is made.
+     *
+     * @param board     board name
+     * @param threadIds thread ids to check
+     * @return subset of {@code threadIds} that are already stored
+     */
+    public Set<String> findStored(String board, Set<String> threadIds) {
+        BoardIndex boardIndex = getBoardIndex(board);
+        List<String> candidates = new ArrayList<>();
+        for (String threadId : threadIds) {
+            if (boardIndex.filter.mightContain(threadId)) {
+                candidates.add(threadId);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        Set<String> stored = new HashSet<>(threadRepository.findStoredThreadIds(board, candidates));
+        boardIndex.positiveHits.addAndGet(candidates.size());
+        boardIndex.falsePositiveHits.addAndGet(candidates.size() - stored.size());
+
+        return stored;
+    }
+
+    /**
+     * Finds ids of the newest collected posts of given stored threads.
+     * <p>
+     * Threads stored before last post ids were tracked have it computed from their posts.
+     *
+     * @param board     board name
+     * @param threadIds ids of stored threads
+     * @return last post id per thread id. Threads without posts are mapped to <tt>null</tt>, threads that are not stored are missing
+     */
+    public Map<String, Long> findLastPostIds(String board, Collection<String> threadIds) {
+        if (threadIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("board", board);
+        parameters.put("threadIds", threadIds);
+        Map<String, Long> lastPostIds = new HashMap<>();
+        for (Map<String, Object> row : session.query(LAST_POST_IDS_QUERY, parameters, true).queryResults()) {
+            Number lastPostId = (Number) row.get("lastPostId");
+            lastPostIds.put((String) row.get("threadId"), lastPostId == null ? null : lastPostId.longValue());
+        }
+
+        return lastPostIds;
+    }
+
+    /**
+     * Gets statistics of the index for every known board.
+     *
+     * @return statistics per board
+     */
+    public List<KnownThreadsJsonDto> getStatistics() {
+        List<KnownThreadsJsonDto> statistics = new ArrayList<>(boards.size());
+        boards.forEach((board, boardIndex) -> statistics.add(
+                new KnownThreadsJsonDto(board, boardIndex.filter.getInsertions(), boardIndex.filter.getMemoryFootprint(), boardIndex.filter.getFalsePositiveRate(),
+                        boardIndex.getObservedFalsePositiveRate())));
+
+        return statistics;
+    }
+
+    private BoardIndex getBoardIndex(String board) {
+        return boards.computeIfAbsent(board, b -> new BoardIndex(new BloomFilter(expectedThreads, falsePositiveRate)));
+    }
+
+    private static final class BoardIndex {
+
+        private final BloomFilter filter;
+
+        private final AtomicLong positiveHits = new AtomicLong();
+
+        private final AtomicLong falsePositiveHits = new AtomicLong();
+
+        private BoardIndex(BloomFilter filter) {
+            this.filter = filter;
+        }
+
+        private double getObservedFalsePositiveRate() {
+            long positives = positiveHits.get();
+            return positives == 0 ? 0 : (double) falsePositiveHits.get() / positives;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package scraper.services.chan.repository;
+
+import org.neo4j.ogm.session.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Repository linking stored media to {@link scraper.services.chan.model.PostDs} nodes.
+ * <p>
+ * Media are linked by storage ids of the post file and its thumbnail, kept as <tt>fileId</tt> and <tt>thumbnailId</tt> properties of the post. Post ids are unique only
+ * within board, so posts are looked up through their thread, by board, thread id and post id. Posts have to be written before their media are linked.
+ */
+@Service
+public class PostMediaRepository {
+
+    private static final String FIND_FILE_ID_QUERY = "MATCH (p:PostDs {md5: {md5}}) WHERE exists(p.fileId) RETURN p.fileId AS fileId LIMIT 1";
+
+    private static final String LINK_FILE_QUERY = "MATCH (:ThreadDs {board: {board}, threadId: {threadId}})<-[:CONTAINS]-(p:PostDs {postId: {postId}}) "
+            + "SET p.fileId = {mediaId}";
+
+    private static final String LINK_THUMBNAIL_QUERY = "MATCH (:ThreadDs {board: {board}, threadId: {threadId}})<-[:CONTAINS]-(p:PostDs {postId: {postId}}) "
+            + "SET p.thumbnailId = {mediaId}";
+
+    private final Session session;
+
+    @Autowired
+    public PostMediaRepository(Session session) {
+        this.session = session;
+    }
+
+    /**
+     * Finds storage id of the file with given md5, already linked to some post.
+     *
+     * @param md5 md5 of the file, as published by the archive
+     * @return storage id of the file or <tt>null</tt> if no post with such file has it stored
+     */
+    public String findFileId(String md5) {
+        Iterator<Map<String, Object>> rows = session.query(FIND_FILE_ID_QUERY, Collections.singletonMap("md5", md5), true).queryResults().iterator();
+        return rows.hasNext() ? (String) rows.next().get("fileId") : null;
+    }
+
+    /**
+     * @param board    board name
+     * @param threadId id of the thread containing the post
+     * @param postId   post id
+     * @param fileId   storage id of the post file
+     */
+    public void linkFile(String board, String threadId, String postId, String fileId) {
+        session.query(LINK_FILE_QUERY, parameters(board, threadId, postId, fileId));
+    }
+
+    /**
+     * @param board       board name
+     * @param threadId    id of the thread containing the post
+     * @param postId      post id
+     * @param thumbnailId storage id of the post thumbnail
+     */
+    public void linkThumbnail(String board, String threadId, String postId, String thumbnailId) {
+        session.query(LINK_THUMBNAIL_QUERY, parameters(board, threadId, postId, thumbnailId));
+    }
+
+    private static Map<String, Object> parameters(String board, String threadId, String postId, String mediaId) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("board", board);
+        parameters.put("threadId", threadId);
+        parameters.put("postId", postId);
+        parameters.put("mediaId", mediaId);
+
+        return parameters;
+    }
+}
@@ -0,0 +1,54 @@
+package scraper.services.chan.repository;
+
+import fr.zebasto.spring.post.initialize.PostInitialize;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.neo4j.ogm.session.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+
+/**
+ * Component responsible for creating neo4j constraints and indexes used by collector queries.
+ */
+@Component
+public class SchemaInitializer {
+
+    private static final String THREAD_ID_CONSTRAINT = "DROP CONSTRAINT ON (t:ThreadDs) ASSERT t.threadId IS UNIQUE";
+
+    private static final String THREAD_ID_INDEX = "CREATE INDEX ON :ThreadDs(threadId)";
+
+    private static final String POST_ID_INDEX = "CREATE INDEX ON :PostDs(postId)";
+
+    private static final String POST_MD5_INDEX = "CREATE INDEX ON :PostDs(md5)";
+
+    private final Log logger = LogFactory.getLog(SchemaInitializer.class);
+
+    private final Session session;
+
+    @Autowired
+    public SchemaInitializer(Session session) {
+        this.session = session;
+    }
+
+    /**
+     * Creates index on {@code ThreadDs.threadId}, so lookups of thread by board and id do not scan all threads. Thread ids are unique only within board, so unique
+     * constraint on thread id created by previous versions is dropped. Creates indexes on {@code PostDs.postId} and {@code PostDs.md5}, used to link media to posts and to
+     * find already stored files. Creating already existing index is no-op.
+     */
+    @PostInitialize
+    public void createConstraints() {
+        try {
+            session.query(THREAD_ID_CONSTRAINT, Collections.emptyMap());
+            logger.info("Dropped ThreadDs.threadId unique constraint");
+        } catch (RuntimeException ex) {
+            logger.debug("There is no ThreadDs.threadId unique constraint to drop", ex);
+        }
+        session.query(THREAD_ID_INDEX, Collections.emptyMap());
+        logger.info("Created ThreadDs.threadId index");
+        session.query(POST_ID_INDEX, Collections.emptyMap());
+        session.query(POST_MD5_INDEX, Collections.emptyMap());
+        logger.info("Created PostDs.postId and PostDs.md5 indexes");
+    }
+}
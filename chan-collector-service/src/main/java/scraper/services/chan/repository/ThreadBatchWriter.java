@@ -0,0 +1,216 @@
+package scraper.services.chan.repository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.neo4j.ogm.annotation.typeconversion.DateString;
+import org.neo4j.ogm.session.Session;
+import org.neo4j.ogm.typeconversion.DateStringConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import scraper.services.chan.media.MediaCollector;
+import scraper.services.chan.model.PostDs;
+import scraper.services.chan.model.ThreadDs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service persisting {@link ThreadDs} graphs in batches.
+ * <p>
+ * Threads, their posts and <tt>CONTAINS</tt> / <tt>REPLAY</tt> relationships are written with one parameterized <tt>UNWIND</tt> statement per batch, instead of several
+ * round trips per thread made by {@link ThreadDsRepository#save(Object)}. Batch is written when it reaches configured size, when {@link #flush()} is called or periodically,
+ * after configured flush interval. Written threads are added to {@link KnownThreadsIndex} and passed to {@link MediaCollector}, which collects their media in the
+ * background.
+ * <p>
+ * Thread is identified by its board and id, as thread ids are unique only within board. Posts are merged into already stored thread, so thread can be written again with only its new posts. <tt>REPLAY</tt> relationships of new posts are linked to stored
+ * posts of the thread, and thread's last post id is never lowered.
+ * <p>
+ * Failed batch is kept and written again with next flush, until it fails configured number of times - then it is logged and dropped, so unavailable database does
+ * not make pending threads grow without limit. Every drop is counted by {@link #getDroppedBatches()}, so collector that wrote threads can tell that some of them may
+ * have been lost and must not treat its page as collected. Dropped threads are not added to {@link KnownThreadsIndex}.
+ * <p>
+ * Batch writes are measured by <tt>scraper.repository.save</tt> timer and their sizes by <tt>scraper.repository.batch.size</tt>, both tagged with <tt>entity=thread</tt>.
+ */
+@Service
+public class ThreadBatchWriter {
+
+    private static final String WRITE_THREADS_QUERY = "UNWIND {threads} AS thread "
+            + "MERGE (t:ThreadDs {board: thread.board, threadId: thread.threadId}) "
+            + "SET t.subject = thread.subject, "
+            + "t.lastPostId = CASE WHEN t.lastPostId IS NULL OR t.lastPostId < thread.lastPostId THEN thread.lastPostId ELSE t.lastPostId END "
+            + "WITH t, thread "
+            + "UNWIND thread.posts AS post "
+            + "MERGE (p:PostDs {postId: post.postId})-[:CONTAINS]->(t) "
+            + "SET p += post.properties "
+            + "WITH DISTINCT t, thread "
+            + "UNWIND thread.replies AS reply "
+            + "MATCH (from:PostDs {postId: reply.from})-[:CONTAINS]->(t), (to:PostDs {postId: reply.to})-[:CONTAINS]->(t) "
+            + "MERGE (from)-[:REPLAY]->(to)";
+
+    private final Log logger = LogFactory.getLog(ThreadBatchWriter.class);
+
+    private final DateStringConverter dateConverter = new DateStringConverter(DateString.ISO_8601);
+
+    private final List<ThreadDs> pending = new ArrayList<>();
+
+    private final Session session;
+
+    private final KnownThreadsIndex knownThreads;
+
+    private final MediaCollector mediaCollector;
+
+    private final int batchSize;
+
+    private final int maxAttempts;
+
+    private final Timer saveTimer;
+
+    private final DistributionSummary batchSizes;
+
+    private int failedAttempts;
+
+    private int droppedBatches;
+
+    @Autowired
+    public ThreadBatchWriter(Session session, KnownThreadsIndex knownThreads, MediaCollector mediaCollector, @Value("${scraper.collector.batch.size:50}") int batchSize,
+            @Value("${scraper.collector.batch.max-attempts:5}") int maxAttempts, MeterRegistry meterRegistry) {
+        this.session = session;
+        this.knownThreads = knownThreads;
+        this.mediaCollector = mediaCollector;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.saveTimer = Timer.builder("scraper.repository.save").tags("entity", "thread").publishPercentileHistogram().register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("scraper.repository.batch.size").tags("entity", "thread").register(meterRegistry);
+    }
+
+    /**
+     * Adds {@code thread} to the current batch. If batch is full, it is written immediately.
+     *
+     * @param thread thread to write
+     */
+    public synchronized void write(ThreadDs thread) {
+        pending.add(thread);
+        if (pending.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes all pending threads.
+     * <p>
+     * When this method returns, all threads passed to {@link #write(ThreadDs)} before are persisted. If write fails, threads are kept and will be written with next flush,
+     * unless the write failed the configured number of times in a row - then pending threads are dropped.
+     */
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<Map<String, Object>> threads = new ArrayList<>(pending.size());
+        for (ThreadDs thread : pending) {
+            threads.add(toParameters(thread));
+        }
+
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("threads", threads);
+        long start = System.nanoTime();
+        try {
+            session.query(WRITE_THREADS_QUERY, parameters);
+        } catch (RuntimeException ex) {
+            if (++failedAttempts >= maxAttempts) {
+                logger.error(String.format("Dropping batch of %d threads, its write failed %d times", pending.size(), failedAttempts));
+                pending.clear();
+                failedAttempts = 0;
+                droppedBatches++;
+            }
+            throw ex;
+        }
+        failedAttempts = 0;
+        saveTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        batchSizes.record(pending.size());
+        pending.forEach(thread -> knownThreads.add(thread.getBoard(), thread.getThreadId()));
+        mediaCollector.collect(pending);
+
+        logger.info(String.format("Written batch of %d threads", pending.size()));
+        pending.clear();
+    }
+
+    /**
+     * Gets number of batches dropped since start. Threads written between two calls were all persisted only if both calls returned the same number and {@link #flush()}
+     * succeeded after the writes.
+     *
+     * @return number of dropped batches
+     */
+    public synchronized int getDroppedBatches() {
+        return droppedBatches;
+    }
+
+    /**
+     * @return number of threads waiting to be written
+     */
+    public synchronized int getPending() {
+        return pending.size();
+    }
+
+    @Scheduled(fixedDelayString = "${scraper.collector.batch.flush-interval:5000}")
+    protected void flushPeriodically() {
+        try {
+            flush();
+        } catch (Exception ex) {
+            logger.error("Unable to write pending threads", ex);
+        }
+    }
+
+    private Map<String, Object> toParameters(ThreadDs thread) {
+        List<Map<String, Object>> posts = new ArrayList<>(thread.getPosts().size());
+        List<Map<String, Object>> replies = new ArrayList<>();
+        for (PostDs post : thread.getPosts()) {
+            posts.add(toParameters(post));
+            for (PostDs replyTo : post.getReplyTo()) {
+                Map<String, Object> reply = new HashMap<>();
+                reply.put("from", post.getPostId());
+                reply.put("to", replyTo.getPostId());
+                replies.add(reply);
+            }
+        }
+
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("threadId", thread.getThreadId());
+        parameters.put("board", thread.getBoard());
+        parameters.put("subject", thread.getSubject());
+        parameters.put("lastPostId", thread.getLastPostId());
+        parameters.put("posts", posts);
+        parameters.put("replies", replies);
+
+        return parameters;
+    }
+
+    private Map<String, Object> toParameters(PostDs post) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("author", post.getAuthor());
+        properties.put("date", post.getDate() == null ? null : dateConverter.toGraphProperty(post.getDate()));
+        properties.put("comment", post.getComment());
+        properties.put("fileName", post.getFileName());
+        properties.put("md5", post.getMd5());
+        properties.put("fileLink", post.getFileLink());
+        properties.put("thumbnailLink", post.getThumbnailLink());
+        properties.put("extension", post.getExtension());
+        properties.put("length", post.getLength());
+        properties.put("width", post.getWidth());
+        properties.put("size", post.getSize());
+
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("postId", post.getPostId());
+        parameters.put("properties", properties);
+
+        return parameters;
+    }
+}
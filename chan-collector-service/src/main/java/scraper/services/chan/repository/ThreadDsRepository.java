@@ -4,13 +4,23 @@ import org.springframework.data.neo4j.annotation.Query;
 import org.springframework.data.repository.CrudRepository;
 import scraper.services.chan.model.ThreadDs;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Neo4j repository for {@link ThreadDs}.
  */
 public interface ThreadDsRepository extends CrudRepository<ThreadDs, Long> {
 
-    ThreadDs findByThreadId(String threadId);
+    ThreadDs findByBoardAndThreadId(String board, String threadId);
 
-    @Query("MATCH (n:ThreadDs {threadId:{0}}) RETURN n.id")
-    Long findIdByThreadId(String threadId);
+    /**
+     * Finds which of given thread ids are already stored. Thread ids are unique only within board.
+     *
+     * @param board     board name
+     * @param threadIds thread ids to check
+     * @return subset of {@code threadIds} that are already stored
+     */
+    @Query("MATCH (n:ThreadDs) WHERE n.board = {0} AND n.threadId IN {1} RETURN n.threadId")
+    List<String> findStoredThreadIds(String board, Collection<String> threadIds);
 }
@@ -0,0 +1,67 @@
+package scraper.services.chan.web;
+
+import org.jsoup.nodes.Document;
+
+/**
+ * Result of the conditional download of the web page.
+ */
+public final class ConditionalDocument {
+
+    private final Document document;
+
+    private final PageValidators validators;
+
+    private final long size;
+
+    private ConditionalDocument(Document document, PageValidators validators, long size) {
+        this.document = document;
+        this.validators = validators;
+        this.size = size;
+    }
+
+    /**
+     * @param document   downloaded document
+     * @param validators validators of the downloaded document
+     * @param size       size of the downloaded body, in bytes
+     * @return result for the page that has changed
+     */
+    public static ConditionalDocument modified(Document document, PageValidators validators, long size) {
+        return new ConditionalDocument(document, validators, size);
+    }
+
+    /**
+     * @param validators validators of the page, still valid
+     * @return result for the page that has not changed
+     */
+    public static ConditionalDocument notModified(PageValidators validators) {
+        return new ConditionalDocument(null, validators, 0);
+    }
+
+    /**
+     * @return <tt>true</tt> if page has changed since validators were issued
+     */
+    public boolean isModified() {
+        return document != null;
+    }
+
+    /**
+     * @return downloaded document or <tt>null</tt> if page has not changed
+     */
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     * @return validators to send with the next request for the page
+     */
+    public PageValidators getValidators() {
+        return validators;
+    }
+
+    /**
+     * @return size of the downloaded body, in bytes. <tt>0</tt> if page has not changed
+     */
+    public long getSize() {
+        return size;
+    }
+}
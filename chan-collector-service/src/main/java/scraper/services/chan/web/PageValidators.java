@@ -0,0 +1,58 @@
+package scraper.services.chan.web;
+
+import scraper.common.Utils;
+
+/**
+ * Validators of the downloaded page, sent back to the server to check if page has changed.
+ */
+public final class PageValidators {
+
+    public static final PageValidators NONE = new PageValidators(null, null);
+
+    private final String etag;
+
+    private final String lastModified;
+
+    /**
+     * @param etag         value of <tt>ETag</tt> response header or <tt>null</tt>
+     * @param lastModified value of <tt>Last-Modified</tt> response header or <tt>null</tt>
+     */
+    public PageValidators(String etag, String lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return <tt>true</tt> if there is no validator
+     */
+    public boolean isEmpty() {
+        return etag == null && lastModified == null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        PageValidators other = (PageValidators) o;
+
+        return Utils.computeEq(etag, other.etag, lastModified, other.lastModified);
+    }
+
+    @Override
+    public int hashCode() {
+        return Utils.computeHash(etag, lastModified);
+    }
+}
@@ -0,0 +1,210 @@
+package scraper.services.chan.web;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.utils.DateUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.InterruptedIOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits rate of outbound requests and decides how failed requests are retried.
+ * <p>
+ * Every host has its own {@link TokenBucket}. Rate of the host is configured as comma separated <tt>host=requests-per-second</tt> list, other hosts use default rate.
+ * Rate <tt>0</tt> disables limiting. Failed requests are retried after exponential backoff with full jitter, but never sooner than server asked to in
+ * <tt>Retry-After</tt> header.
+ */
+@Component
+public class RequestThrottle {
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private final double defaultRate;
+
+    private final Map<String, Double> hostRates;
+
+    private final double minRate;
+
+    private final int burst;
+
+    private final int maxAttempts;
+
+    private final long initialBackoff;
+
+    private final long maxBackoff;
+
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * @param defaultRate    requests per second to hosts not listed in <tt>hostRates</tt>
+     * @param hostRates      comma separated list of <tt>host=requests-per-second</tt> entries. May be empty
+     * @param minRate        minimal requests per second rate can be lowered to when server is overloaded
+     * @param burst          maximal number of requests to single host that can be made at once
+     * @param maxAttempts    maximal number of attempts of single request
+     * @param initialBackoff backoff before the first retry, in milliseconds
+     * @param maxBackoff     maximal backoff, in milliseconds. Requests are not retried if server asks to wait longer
+     */
+    @Autowired
+    public RequestThrottle(@Value("${scraper.web.rate-limit.requests-per-second:5}") double defaultRate, @Value("${scraper.web.rate-limit.hosts:}") String hostRates,
+            @Value("${scraper.web.rate-limit.min-requests-per-second:0.2}") double minRate, @Value("${scraper.web.rate-limit.burst:5}") int burst,
+            @Value("${scraper.web.retry.max-attempts:5}") int maxAttempts, @Value("${scraper.web.retry.initial-backoff:500}") long initialBackoff,
+            @Value("${scraper.web.retry.max-backoff:30000}") long maxBackoff) {
+        this.defaultRate = defaultRate;
+        this.hostRates = parseHostRates(hostRates);
+        this.minRate = minRate;
+        this.burst = burst;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * Waits until request to the host can be made.
+     *
+     * @param host host
+     * @throws InterruptedIOException if thread was interrupted while waiting
+     */
+    public void acquire(String host) throws InterruptedIOException {
+        TokenBucket bucket = getBucket(host);
+        if (bucket != null) {
+            sleep(bucket.reserve(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Notifies that request to the host succeeded.
+     *
+     * @param host host
+     */
+    public void onSuccess(String host) {
+        TokenBucket bucket = getBucket(host);
+        if (bucket != null) {
+            bucket.onSuccess();
+        }
+    }
+
+    /**
+     * Notifies that request to the host failed with given status. If status means that server is overloaded, rate of requests to the host is lowered.
+     *
+     * @param host       host
+     * @param status     response status
+     * @param retryAfter time, in milliseconds, server asked to wait, or <tt>0</tt>
+     */
+    public void onFailure(String host, int status, long retryAfter) {
+        TokenBucket bucket = getBucket(host);
+        if (bucket != null && isOverloaded(status)) {
+            bucket.onThrottled(TimeUnit.MILLISECONDS.toNanos(Math.min(retryAfter, maxBackoff)));
+        }
+    }
+
+    /**
+     * Checks if request should be retried.
+     *
+     * @param attempt    number of the failed attempt, starting from <tt>1</tt>
+     * @param status     response status, or <tt>0</tt> if request failed without response
+     * @param retryAfter time, in milliseconds, server asked to wait, or <tt>0</tt>
+     * @return <tt>true</tt> if request should be retried
+     */
+    public boolean shouldRetry(int attempt, int status, long retryAfter) {
+        return attempt < maxAttempts && retryAfter <= maxBackoff && (status == 0 || isOverloaded(status) || isServerError(status))
+                && !Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Waits before the next attempt of the failed request.
+     *
+     * @param attempt    number of the failed attempt, starting from <tt>1</tt>
+     * @param retryAfter time, in milliseconds, server asked to wait, or <tt>0</tt>
+     * @throws InterruptedIOException if thread was interrupted while waiting
+     */
+    public void backOff(int attempt, long retryAfter) throws InterruptedIOException {
+        sleep(computeBackoff(attempt, retryAfter), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Parses value of <tt>Retry-After</tt> header. It may be either number of seconds or http date.
+     *
+     * @param value header value or <tt>null</tt>
+     * @param now   current time, in milliseconds
+     * @return time to wait, in milliseconds, or <tt>0</tt> if value is missing or invalid
+     */
+    public static long parseRetryAfter(String value, long now) {
+        if (value == null) {
+            return 0;
+        }
+
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException ex) {
+            Date date = DateUtils.parseDate(value.trim());
+            return date == null ? 0 : Math.max(0, date.getTime() - now);
+        }
+    }
+
+    long computeBackoff(int attempt, long retryAfter) {
+        long ceiling = Math.min(maxBackoff, initialBackoff << Math.min(attempt - 1, 30));
+        long backoff = ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+
+        return Math.max(backoff, retryAfter);
+    }
+
+    double getRate(String host) {
+        TokenBucket bucket = getBucket(host);
+        return bucket == null ? 0 : bucket.getRate();
+    }
+
+    private TokenBucket getBucket(String host) {
+        double rate = hostRates.getOrDefault(host, defaultRate);
+        if (rate <= 0) {
+            return null;
+        }
+
+        return buckets.computeIfAbsent(host, key -> new TokenBucket(rate, minRate, burst, System::nanoTime));
+    }
+
+    private static boolean isOverloaded(int status) {
+        return status == SC_TOO_MANY_REQUESTS || status == HttpStatus.SC_SERVICE_UNAVAILABLE;
+    }
+
+    private static boolean isServerError(int status) {
+        return status == HttpStatus.SC_INTERNAL_SERVER_ERROR || status == HttpStatus.SC_BAD_GATEWAY || status == HttpStatus.SC_GATEWAY_TIMEOUT;
+    }
+
+    private static Map<String, Double> parseHostRates(String hostRates) {
+        Map<String, Double> rates = new HashMap<>();
+        for (String entry : hostRates.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+
+            String[] parts = entry.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid host rate limit " + entry + ", expected host=requests-per-second");
+            }
+            rates.put(parts[0].trim(), Double.parseDouble(parts[1].trim()));
+        }
+
+        return rates;
+    }
+
+    private static void sleep(long time, TimeUnit unit) throws InterruptedIOException {
+        if (time <= 0) {
+            return;
+        }
+
+        try {
+            unit.sleep(time);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for request");
+        }
+    }
+}
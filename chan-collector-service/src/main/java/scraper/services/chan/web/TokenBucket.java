@@ -0,0 +1,92 @@
+package scraper.services.chan.web;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket limiting rate of requests to single host.
+ * <p>
+ * Bucket is refilled with current rate, up to burst size. Rate adapts to the server: it is halved, down to minimal rate, each time server reports it is overloaded, and
+ * slowly grows back to the configured rate with each successful request. Token may be reserved even if bucket is empty - caller has to wait until bucket is refilled,
+ * so concurrent callers are spread evenly in time.
+ */
+final class TokenBucket {
+
+    private static final double RECOVERY_STEPS = 20;
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double maxRate;
+
+    private final double minRate;
+
+    private final double burst;
+
+    private final LongSupplier nanoClock;
+
+    private double rate;
+
+    private double tokens;
+
+    private long lastRefill;
+
+    /**
+     * @param maxRate   configured rate, in requests per second
+     * @param minRate   minimal rate the bucket can slow down to, in requests per second
+     * @param burst     maximal number of requests that can be made at once
+     * @param nanoClock source of the current time, in nanoseconds
+     */
+    TokenBucket(double maxRate, double minRate, int burst, LongSupplier nanoClock) {
+        this.maxRate = maxRate;
+        this.minRate = Math.min(minRate, maxRate);
+        this.burst = burst;
+        this.nanoClock = nanoClock;
+        this.rate = maxRate;
+        this.tokens = burst;
+        this.lastRefill = nanoClock.getAsLong();
+    }
+
+    /**
+     * Reserves single token.
+     *
+     * @return time, in nanoseconds, caller has to wait before using reserved token
+     */
+    synchronized long reserve() {
+        refill();
+        tokens -= 1;
+
+        return tokens >= 0 ? 0 : (long) (-tokens / rate * NANOS_PER_SECOND);
+    }
+
+    /**
+     * Notifies bucket that request succeeded. Rate grows back towards configured rate.
+     */
+    synchronized void onSuccess() {
+        refill();
+        rate = Math.min(maxRate, rate + maxRate / RECOVERY_STEPS);
+    }
+
+    /**
+     * Notifies bucket that server is overloaded. Rate is halved and no tokens are available for the given time.
+     *
+     * @param pauseNanos time, in nanoseconds, for which server asked not to send requests
+     */
+    synchronized void onThrottled(long pauseNanos) {
+        refill();
+        rate = Math.max(minRate, rate / 2);
+        tokens = Math.min(tokens, 0) - pauseNanos * rate / NANOS_PER_SECOND;
+    }
+
+    /**
+     * @return current rate, in requests per second
+     */
+    synchronized double getRate() {
+        return rate;
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * rate / NANOS_PER_SECOND);
+        lastRefill = now;
+    }
+}
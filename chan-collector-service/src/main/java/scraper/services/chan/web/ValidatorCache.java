@@ -0,0 +1,167 @@
+package scraper.services.chan.web;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Small on-disk cache of page validators, keyed by url.
+ * <p>
+ * Cache keeps at most configured number of entries, evicting least recently used ones. Entries are kept in memory and written to the cache file by {@link #save()}, each
+ * entry as tab separated line <tt>url etag last-modified</tt>. File is replaced atomically, so it is never left half written.
+ */
+@Service
+public class ValidatorCache {
+
+    private static final Log logger = LogFactory.getLog(ValidatorCache.class);
+
+    private static final String SEPARATOR = "\t";
+
+    private final Path cacheFile;
+
+    private final Map<String, PageValidators> entries;
+
+    private boolean dirty;
+
+    @Autowired
+    public ValidatorCache(@Value("${scraper.web.cache.file:cache/page-validators.tsv}") String cacheFile, @Value("${scraper.web.cache.max-entries:10000}") int maxEntries,
+            FileSystem fs) {
+        this.cacheFile = fs.getPath(cacheFile).toAbsolutePath();
+        this.entries = new LruMap(maxEntries);
+
+        load();
+    }
+
+    /**
+     * Gets validators of the page.
+     *
+     * @param url page url
+     * @return validators or {@link PageValidators#NONE} if there are none for given url
+     */
+    public synchronized PageValidators get(String url) {
+        PageValidators validators = entries.get(url);
+        return validators == null ? PageValidators.NONE : validators;
+    }
+
+    /**
+     * Puts validators of the page. Empty validators remove the page from cache.
+     *
+     * @param url        page url
+     * @param validators validators
+     */
+    public synchronized void put(String url, PageValidators validators) {
+        if (!isStorable(url) || validators.isEmpty() || !isStorable(validators.getEtag()) || !isStorable(validators.getLastModified())) {
+            dirty |= entries.remove(url) != null;
+        } else if (!validators.equals(entries.put(url, validators))) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Writes cache to the file, if it has changed since last save.
+     *
+     * @throws IOException if io failed
+     */
+    public synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+
+        Files.createDirectories(cacheFile.getParent());
+        Path tempFile = Files.createTempFile(cacheFile.getParent(), "page-validators", "tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, PageValidators> entry : entries.entrySet()) {
+                    writer.write(entry.getKey() + SEPARATOR + encode(entry.getValue().getEtag()) + SEPARATOR + encode(entry.getValue().getLastModified()));
+                    writer.newLine();
+                }
+            }
+            move(tempFile, cacheFile);
+            dirty = false;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(cacheFile)) {
+            return;
+        }
+
+        int invalidLines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(SEPARATOR, -1);
+                if (fields.length == 3) {
+                    entries.put(fields[0], new PageValidators(decode(fields[1]), decode(fields[2])));
+                } else {
+                    ++invalidLines;
+                }
+            }
+        } catch (IOException ex) {
+            logger.warn("Unable to read page validators cache " + cacheFile + ", starting with empty cache", ex);
+            entries.clear();
+            return;
+        }
+
+        if (invalidLines > 0) {
+            logger.warn("Skipped " + invalidLines + " invalid lines of page validators cache " + cacheFile);
+            dirty = true;
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static boolean isStorable(String value) {
+        return value == null || (value.indexOf('\t') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0);
+    }
+
+    private static String encode(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String decode(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Map in access order, evicting least recently used entry when it exceeds maximum size.
+     */
+    private static final class LruMap extends LinkedHashMap<String, PageValidators> {
+
+        private static final long serialVersionUID = 4375089566551360807L;
+
+        private final int maxEntries;
+
+        private LruMap(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PageValidators> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package scraper.services.chan.web;
+
+/**
+ * Raw, not parsed web page.
+ */
+public class WebPage {
+
+    private final String url;
+
+    private final String body;
+
+    private final long size;
+
+    public WebPage(String url, String body, long size) {
+        this.url = url;
+        this.body = body;
+        this.size = size;
+    }
+
+    /**
+     * @return final url of the page, after redirects
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * @return size of the downloaded body, in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+}
@@ -1,44 +1,413 @@
 package scraper.services.chan.web;
 
-import org.jsoup.Connection;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
+import org.jsoup.HttpStatusException;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.context.config.annotation.RefreshScope;
 import org.springframework.stereotype.Service;
+import scraper.exception.UnexpectedException;
 
+import javax.annotation.PreDestroy;
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Service responsible for downloading web pages.
+ * <p>
+ * Pages are downloaded with pooled http client. Connections are kept alive and reused between requests to the same host, and responses are requested compressed with
+ * gzip or deflate. Pages may be downloaded conditionally, with validators of the previous download, so unchanged pages are not transferred again. Files are downloaded
+ * as streams, without being buffered in memory.
+ * <p>
+ * Requests are limited and retried by {@link RequestThrottle}, automatic retries of http client are disabled, so every attempt is throttled. Connect and socket
+ * timeouts, server errors and responses of overloaded server (<tt>429</tt>, <tt>503</tt>) are retried; other failures and error statuses fail immediately. Response
+ * <tt>304</tt> to unconditional request is an error too.
+ * <p>
+ * Configured timeout bounds connecting and waiting for data. Waiting for pooled connection is bounded by separate connection request timeout, so request never blocks
+ * forever when the pool is exhausted. Waiting for a free connection is normal when more requests run at once than there are connections per host, so this timeout should
+ * be long enough to cover several downloads. Timed out wait for pooled connection is not retried.
+ * <p>
+ * Every download is measured by <tt>scraper.web.fetch</tt> timer, tagged with host and outcome, including waits for rate limit and retries. Retries are counted by
+ * <tt>scraper.web.retries</tt> and sizes of downloaded bodies are recorded by <tt>scraper.web.response.size</tt>.
+ */
 @Service
 @RefreshScope
 public class WebService {
 
-    private final String userAgent;
+    private static final Log logger = LogFactory.getLog(WebService.class);
 
-    private final String referrer;
+    private final CloseableHttpClient httpClient;
 
-    private final int timeout;
+    private final RequestThrottle requestThrottle;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Timer> fetchTimers = new ConcurrentHashMap<>();
+
+    private final Map<String, DistributionSummary> responseSizes = new ConcurrentHashMap<>();
 
     @Autowired
-    public WebService(@Value("${scraper.web.user-agent}") String userAgent, @Value("${scraper.web.referrer}") String referrer, @Value("${scraper.web.timeout}") int timeout) {
-        this.userAgent = userAgent;
-        this.referrer = referrer;
-        this.timeout = timeout;
+    public WebService(@Value("${scraper.web.user-agent}") String userAgent, @Value("${scraper.web.referrer}") String referrer, @Value("${scraper.web.timeout}") int timeout,
+            @Value("${scraper.web.connection-request-timeout:60000}") int connectionRequestTimeout, @Value("${scraper.web.max-connections-per-host:2}") int maxConnectionsPerHost, @Value("${scraper.web.max-connections:20}") int maxConnections,
+            RequestThrottle requestThrottle, MeterRegistry meterRegistry) {
+        this.requestThrottle = requestThrottle;
+        this.meterRegistry = meterRegistry;
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(getSocketFactoryRegistry());
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+        connectionManager.setMaxTotal(maxConnections);
+
+        RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(timeout).setSocketTimeout(timeout).setConnectionRequestTimeout(connectionRequestTimeout).build();
+
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setUserAgent(userAgent)
+                .setDefaultHeaders(Collections.singletonList(new BasicHeader(HttpHeaders.REFERER, referrer)))
+                .disableAutomaticRetries()
+                .build();
     }
 
     /**
      * Get DOM document from given url.
+     * <p>
+     * Number of concurrent requests to the same host is limited. If limit is reached, this method will block until one of the running requests finishes. Rate of the
+     * requests is limited too, and failed requests are retried, as described in {@link RequestThrottle}.
      *
      * @param url url
      * @return dom document
-     * @throws IOException if connection failed. See {@link Connection#execute()} for details
+     * @throws HttpStatusException if response status is not successful, after all retries
+     * @throws IOException         if connection failed, after all retries
      */
     public Document getDocument(String url) throws IOException {
-        return getStandardResponse(url);
+        return toDocument(fetch(url, PageValidators.NONE, WebService::readBytes));
     }
 
-    private Document getStandardResponse(String url) throws IOException {
-        return Jsoup.connect(url).userAgent(userAgent).referrer(referrer).timeout(timeout).validateTLSCertificates(false).get();
+    /**
+     * Get DOM document from given url, only if it has changed.
+     * <p>
+     * Given validators are sent as <tt>If-None-Match</tt> and <tt>If-Modified-Since</tt> headers. If server responds that page has not changed, body is not downloaded
+     * nor parsed. Number of concurrent requests is limited the same way as in {@link #getDocument(String)}.
+     *
+     * @param url        url
+     * @param validators validators returned with previous download of the page. May be {@link PageValidators#NONE}
+     * @return modified document with its new validators or not modified result
+     * @throws HttpStatusException if response status is not successful, after all retries
+     * @throws IOException         if connection failed, after all retries
+     */
+    public ConditionalDocument getDocument(String url, PageValidators validators) throws IOException {
+        Response<byte[]> response = fetch(url, validators, WebService::readBytes);
+        if (response.isNotModified()) {
+            return ConditionalDocument.notModified(response.getValidators().isEmpty() ? validators : response.getValidators());
+        }
+
+        return ConditionalDocument.modified(toDocument(response), response.getValidators(), response.getSize());
+    }
+
+    /**
+     * Get raw page from given url, without building DOM document.
+     * <p>
+     * Number of concurrent requests to the same host is limited the same way as in {@link #getDocument(String)}.
+     *
+     * @param url url
+     * @return web page
+     * @throws HttpStatusException if response status is not successful, after all retries
+     * @throws IOException         if connection failed, after all retries
+     */
+    public WebPage getPage(String url) throws IOException {
+        Response<byte[]> response = fetch(url, PageValidators.NONE, WebService::readBytes);
+        Charset charset = response.getCharset();
+
+        return new WebPage(response.getUrl(), new String(response.getBody(), charset == null ? StandardCharsets.UTF_8 : charset), response.getSize());
+    }
+
+    /**
+     * Downloads file from given url, passing its body to {@code handler} as it is received, without buffering it in memory.
+     * <p>
+     * Number of concurrent requests is limited the same way as in {@link #getDocument(String)}. Download is retried the same way too, including failures thrown by the
+     * handler, so handler must be ready to be called again with the body downloaded from the start.
+     *
+     * @param url     url
+     * @param handler handler consuming the body
+     * @param <T>     type of the handler result
+     * @return result of the handler
+     * @throws HttpStatusException if response status is not successful, after all retries
+     * @throws IOException         if connection or handler failed, after all retries
+     */
+    public <T> T download(String url, BodyHandler<T> handler) throws IOException {
+        return fetch(url, PageValidators.NONE, entity -> handler.handle(entity.getContent(), entity.getContentLength())).getBody();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    private static Document toDocument(Response<byte[]> response) throws IOException {
+        Charset charset = response.getCharset();
+        return Jsoup.parse(new ByteArrayInputStream(response.getBody()), charset == null ? null : charset.name(), response.getUrl());
+    }
+
+    private <T> Response<T> fetch(String url, PageValidators validators, EntityReader<T> reader) throws IOException {
+        String host = URI.create(url).getHost();
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            Response<T> response = fetchWithRetries(url, host, validators, reader);
+            outcome = response.isNotModified() ? "not_modified" : "success";
+            if (response.getSize() >= 0) {
+                responseSizes.computeIfAbsent(host, key -> DistributionSummary.builder("scraper.web.response.size").baseUnit("bytes").tags("host", key).register(meterRegistry))
+                        .record(response.getSize());
+            }
+
+            return response;
+        } finally {
+            getFetchTimer(host, outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer getFetchTimer(String host, String outcome) {
+        return fetchTimers.computeIfAbsent(host + ':' + outcome,
+                key -> Timer.builder("scraper.web.fetch").tags("host", host, "outcome", outcome).publishPercentileHistogram().register(meterRegistry));
+    }
+
+    private <T> Response<T> fetchWithRetries(String url, String host, PageValidators validators, EntityReader<T> reader) throws IOException {
+        for (int attempt = 1; ; ++attempt) {
+            if (attempt > 1) {
+                meterRegistry.counter("scraper.web.retries", "host", host).increment();
+            }
+            requestThrottle.acquire(host);
+
+            Response<T> response;
+            try {
+                response = execute(url, validators, reader);
+            } catch (IOException ex) {
+                if (!isTransient(ex) || !requestThrottle.shouldRetry(attempt, 0, 0)) {
+                    throw ex;
+                }
+                logger.warn(String.format("Fetching [%s] failed, attempt %d: %s", url, attempt, ex.getMessage()));
+                requestThrottle.backOff(attempt, 0);
+                continue;
+            }
+
+            int status = response.getStatus();
+            // 304 is expected only when validators were sent, otherwise it carries no body to return
+            if (response.isSuccessful() || response.isNotModified() && !validators.isEmpty()) {
+                requestThrottle.onSuccess(host);
+                return response;
+            }
+
+            requestThrottle.onFailure(host, status, response.getRetryAfter());
+            if (!requestThrottle.shouldRetry(attempt, status, response.getRetryAfter())) {
+                throw new HttpStatusException("HTTP error fetching URL", status, url);
+            }
+            logger.warn(String.format("Fetching [%s] failed with status %d, attempt %d", url, status, attempt));
+            requestThrottle.backOff(attempt, response.getRetryAfter());
+        }
+    }
+
+    private static boolean isTransient(IOException ex) {
+        // pool wait already had its own, long timeout - retry would only wait for it again
+        return ex instanceof ConnectTimeoutException && !(ex instanceof ConnectionPoolTimeoutException) || ex instanceof SocketTimeoutException;
+    }
+
+    private <T> Response<T> execute(String url, PageValidators validators, EntityReader<T> reader) throws IOException {
+        HttpGet request = new HttpGet(url);
+        if (validators.getEtag() != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, validators.getEtag());
+        }
+        if (validators.getLastModified() != null) {
+            request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, validators.getLastModified());
+        }
+
+        HttpClientContext context = HttpClientContext.create();
+        try (CloseableHttpResponse response = httpClient.execute(request, context)) {
+            HttpEntity entity = response.getEntity();
+            int status = response.getStatusLine().getStatusCode();
+            String finalUrl = getFinalUrl(url, context);
+            PageValidators responseValidators = new PageValidators(getHeader(response, HttpHeaders.ETAG), getHeader(response, HttpHeaders.LAST_MODIFIED));
+            if (status == HttpStatus.SC_NOT_MODIFIED && !validators.isEmpty()) {
+                EntityUtils.consumeQuietly(entity);
+                return Response.notModified(finalUrl, responseValidators);
+            }
+            if (status < 200 || status >= 300) {
+                EntityUtils.consumeQuietly(entity);
+                long retryAfter = RequestThrottle.parseRetryAfter(getHeader(response, HttpHeaders.RETRY_AFTER), System.currentTimeMillis());
+                return Response.failed(finalUrl, status, retryAfter);
+            }
+
+            HttpEntity body = entity == null ? new ByteArrayEntity(new byte[0]) : entity;
+            Charset charset = ContentType.getOrDefault(body).getCharset();
+            T content = reader.read(body);
+            long size = content instanceof byte[] ? ((byte[]) content).length : body.getContentLength();
+
+            return new Response<>(finalUrl, status, content, size, charset, responseValidators, 0);
+        }
+    }
+
+    private static byte[] readBytes(HttpEntity entity) throws IOException {
+        return EntityUtils.toByteArray(entity);
+    }
+
+    private static String getHeader(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
+    private static String getFinalUrl(String url, HttpClientContext context) {
+        List<URI> redirects = context.getRedirectLocations();
+        return redirects == null || redirects.isEmpty() ? url : redirects.get(redirects.size() - 1).toString();
+    }
+
+    private static Registry<ConnectionSocketFactory> getSocketFactoryRegistry() {
+        try {
+            SSLContext sslContext = SSLContexts.custom().loadTrustMaterial(null, (chain, authType) -> true).build();
+            return RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                    .register("https", new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE))
+                    .build();
+        } catch (GeneralSecurityException ex) {
+            throw new UnexpectedException("Unable to create SSL context", ex);
+        }
+    }
+
+    /**
+     * Handler of the downloaded body.
+     *
+     * @param <T> type of the result
+     */
+    @FunctionalInterface
+    public interface BodyHandler<T> {
+
+        /**
+         * @param body          stream of the body. Closed by the caller
+         * @param contentLength length of the body or <tt>-1</tt> if it is not known
+         * @return result
+         * @throws IOException if io failed
+         */
+        T handle(InputStream body, long contentLength) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface EntityReader<T> {
+
+        T read(HttpEntity entity) throws IOException;
+    }
+
+    private static final class Response<T> {
+
+        private final String url;
+
+        private final int status;
+
+        private final T body;
+
+        private final long size;
+
+        private final Charset charset;
+
+        private final PageValidators validators;
+
+        private final long retryAfter;
+
+        private Response(String url, int status, T body, long size, Charset charset, PageValidators validators, long retryAfter) {
+            this.url = url;
+            this.status = status;
+            this.body = body;
+            this.size = size;
+            this.charset = charset;
+            this.validators = validators;
+            this.retryAfter = retryAfter;
+        }
+
+        private static <T> Response<T> notModified(String url, PageValidators validators) {
+            return new Response<>(url, HttpStatus.SC_NOT_MODIFIED, null, -1, null, validators, 0);
+        }
+
+        private static <T> Response<T> failed(String url, int status, long retryAfter) {
+            return new Response<>(url, status, null, -1, null, PageValidators.NONE, retryAfter);
+        }
+
+        private String getUrl() {
+            return url;
+        }
+
+        private int getStatus() {
+            return status;
+        }
+
+        private T getBody() {
+            return body;
+        }
+
+        /**
+         * @return size of the body in bytes or <tt>-1</tt> if it is not known
+         */
+        private long getSize() {
+            return size;
+        }
+
+        private Charset getCharset() {
+            return charset;
+        }
+
+        private PageValidators getValidators() {
+            return validators;
+        }
+
+        private long getRetryAfter() {
+            return retryAfter;
+        }
+
+        private boolean isSuccessful() {
+            return status >= 200 && status < 300;
+        }
+
+        private boolean isNotModified() {
+            return status == HttpStatus.SC_NOT_MODIFIED;
+        }
     }
 }
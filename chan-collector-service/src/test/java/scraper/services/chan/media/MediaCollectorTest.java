@@ -0,0 +1,171 @@
+package scraper.services.chan.media;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import scraper.services.chan.model.PostDs;
+import scraper.services.chan.model.ThreadDs;
+import scraper.services.chan.repository.PostMediaRepository;
+import scraper.services.chan.web.WebService;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.stub;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MediaCollectorTest {
+
+    private static final String FILE_LINK = "https://i.yuki.la/wg/1476000000001.jpg";
+
+    private static final String THUMBNAIL_LINK = "https://i.yuki.la/wg/1476000000001s.jpg";
+
+    @Mock
+    private WebService webService;
+
+    @Mock
+    private StorageClient storageClient;
+
+    @Mock
+    private PostMediaRepository mediaRepository;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ExecutorService mediaExecutor;
+
+    @Before
+    public void setUp() {
+        mediaExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+    }
+
+    @After
+    public void tearDown() {
+        mediaExecutor.shutdownNow();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testCollect() throws Exception {
+        // given
+        MediaCollector mediaCollector = new MediaCollector(webService, storageClient, mediaRepository, mediaExecutor, meterRegistry, true, true);
+        stub(webService.download(eq(FILE_LINK), any(WebService.BodyHandler.class))).toReturn("file-sha");
+        stub(webService.download(eq(THUMBNAIL_LINK), any(WebService.BodyHandler.class))).toReturn("thumbnail-sha");
+
+        // when
+        mediaCollector.collect(Collections.singletonList(thread(post("1", "md5=="))));
+        awaitCollected();
+
+        // then
+        verify(mediaRepository).findFileId("md5==");
+        verify(mediaRepository).linkFile("wg", "1", "1", "file-sha");
+        verify(mediaRepository).linkThumbnail("wg", "1", "1", "thumbnail-sha");
+        assertEquals(1, meterRegistry.get("scraper.media.collect").tags("kind", "file", "outcome", "stored").timer().count());
+        assertEquals(1, meterRegistry.get("scraper.media.collect").tags("kind", "thumbnail", "outcome", "stored").timer().count());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testCollect_duplicateFile() throws Exception {
+        // given
+        MediaCollector mediaCollector = new MediaCollector(webService, storageClient, mediaRepository, mediaExecutor, meterRegistry, true, false);
+        stub(mediaRepository.findFileId("md5==")).toReturn("file-sha");
+
+        // when
+        mediaCollector.collect(Collections.singletonList(thread(post("2", "md5=="))));
+        awaitCollected();
+
+        // then
+        verify(mediaRepository).linkFile("wg", "1", "2", "file-sha");
+        verify(webService, never()).download(anyString(), any(WebService.BodyHandler.class));
+        verify(mediaRepository, never()).linkThumbnail(anyString(), anyString(), anyString(), anyString());
+        assertEquals(1, meterRegistry.get("scraper.media.collect").tags("kind", "file", "outcome", "duplicate").timer().count());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testCollect_failed() throws Exception {
+        // given
+        MediaCollector mediaCollector = new MediaCollector(webService, storageClient, mediaRepository, mediaExecutor, meterRegistry, true, false);
+        stub(webService.download(eq(FILE_LINK), any(WebService.BodyHandler.class))).toThrow(new IOException("test"));
+
+        // when
+        mediaCollector.collect(Collections.singletonList(thread(post("3", null))));
+        awaitCollected();
+
+        // then
+        verify(mediaRepository, never()).findFileId(anyString());
+        verify(mediaRepository, never()).linkFile(anyString(), anyString(), anyString(), anyString());
+        assertEquals(1, meterRegistry.get("scraper.media.collect").tags("kind", "file", "outcome", "error").timer().count());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testCollect_queueFull() throws Exception {
+        // given
+        MediaCollector mediaCollector = new MediaCollector(webService, storageClient, mediaRepository, mediaExecutor, meterRegistry, true, true);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return "sha";
+        }).when(webService).download(anyString(), any(WebService.BodyHandler.class));
+
+        // when
+        mediaCollector.collect(Collections.singletonList(thread(post("4", null), post("5", null))));
+        release.countDown();
+        awaitCollected();
+
+        // then
+        assertEquals(2, meterRegistry.get("scraper.media.dropped").counters().stream().mapToDouble(counter -> counter.count()).sum(), 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testCollect_disabled() throws Exception {
+        // given
+        MediaCollector mediaCollector = new MediaCollector(webService, storageClient, mediaRepository, mediaExecutor, meterRegistry, false, true);
+
+        // when
+        mediaCollector.collect(Collections.singletonList(thread(post("6", "md5=="))));
+        awaitCollected();
+
+        // then
+        verify(webService, never()).download(anyString(), any(WebService.BodyHandler.class));
+        verify(mediaRepository, never()).findFileId(anyString());
+    }
+
+    private void awaitCollected() throws InterruptedException {
+        mediaExecutor.shutdown();
+        assertTrue(mediaExecutor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private static ThreadDs thread(PostDs... posts) {
+        ThreadDs thread = new ThreadDs("1", "wg", "subject");
+        for (PostDs post : posts) {
+            thread.addPost(post);
+        }
+
+        return thread;
+    }
+
+    private static PostDs post(String postId, String md5) {
+        return new PostDs("author", new Date(0), postId, "comment", "file.jpg", md5, FILE_LINK, THUMBNAIL_LINK, "jpg", 100, 200, "1 MB");
+    }
+}
@@ -2,24 +2,44 @@ package scraper.services.chan.processor;
 
 import org.jsoup.HttpStatusException;
 import org.jsoup.nodes.Document;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import scraper.services.chan.dto.RunStatusJsonDto;
 import scraper.services.chan.model.CollectorProcessedCheckpointDs;
 import scraper.services.chan.repository.CollectorProcessedCheckpointDsRepository;
+import scraper.services.chan.repository.ThreadBatchWriter;
+import scraper.services.chan.web.ConditionalDocument;
+import scraper.services.chan.web.PageValidators;
+import scraper.services.chan.web.ValidatorCache;
 import scraper.services.chan.web.WebService;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.stub;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -33,14 +53,29 @@ public class BoardCollectorTest {
     @Mock
     private WebService webService;
 
+    @Mock
+    private ValidatorCache validatorCache;
+
     @Mock
     private CollectorProcessedCheckpointDsRepository checkpointRepository;
 
+    @Mock
+    private ThreadBatchWriter threadWriter;
+
+    private ExecutorService prefetchExecutor;
+
     private BoardCollector boardCollector;
 
     @Before
     public void setUp() {
-        boardCollector = new BoardCollector(pageParser, webService, checkpointRepository);
+        prefetchExecutor = Executors.newFixedThreadPool(3);
+        stub(validatorCache.get(any(String.class))).toReturn(PageValidators.NONE);
+        boardCollector = new BoardCollector(pageParser, webService, validatorCache, checkpointRepository, threadWriter, prefetchExecutor, 0);
+    }
+
+    @After
+    public void tearDown() {
+        prefetchExecutor.shutdownNow();
     }
 
     @Test
@@ -88,6 +123,25 @@ public class BoardCollectorTest {
         assertCheckpoints(1, 5, checkpointId, settings);
     }
 
+    @Test
+    public void testCollectBoard_flushBeforeCheckpoint() throws IOException {
+        // given
+        Settings settings = new Settings("wg", null);
+        List<Document> pageDoms = mockPages(5, 6, settings);
+        mockCheckpoint(settings, new CollectorProcessedCheckpointDs(15L, settings.getBoardName(), 5));
+
+        // when
+        boardCollector.collectBoard(settings);
+
+        // then
+        InOrder inOrder = inOrder(pageParser, threadWriter, checkpointRepository);
+        inOrder.verify(pageParser).parsePage(eq(pageDoms.get(0)), eq(settings), any(RunStatistics.class));
+        inOrder.verify(threadWriter).flush();
+        inOrder.verify(pageParser).parsePage(eq(pageDoms.get(1)), eq(settings), any(RunStatistics.class));
+        inOrder.verify(threadWriter).flush();
+        inOrder.verify(checkpointRepository).save(any(CollectorProcessedCheckpointDs.class));
+    }
+
     @Test
     public void testCollectBoard_ioFailed() throws IOException {
         // given
@@ -95,7 +149,91 @@ public class BoardCollectorTest {
         List<Document> pageDoms = mockPages(1, 5, settings);
         String url = String.format("https://yuki.la/%s/page/%d", settings.getBoardName(), 4);
         IOException testException = new IOException("test");
-        stub(webService.getDocument(url)).toThrow(testException);
+        stub(webService.getDocument(url, PageValidators.NONE)).toThrow(testException);
+
+        long checkpointId = mockCheckpoint(settings, null);
+
+        // when
+        try {
+            boardCollector.collectBoard(settings);
+            fail();
+        } catch (IOException ex) {
+            // then
+            assertSame(testException, ex);
+        }
+
+        // then
+        assertCollected(pageDoms.subList(0, 3), settings);
+        assertCheckpoints(1, 3, checkpointId, settings);
+    }
+
+    @Test
+    public void testCollectBoard_errorStatus() throws IOException {
+        // given
+        Settings settings = new Settings("wg", null);
+        List<Document> pageDoms = mockPages(1, 5, settings);
+        String url = String.format("https://yuki.la/%s/page/%d", settings.getBoardName(), 4);
+        HttpStatusException testException = new HttpStatusException("Too many requests", 429, url);
+        stub(webService.getDocument(url, PageValidators.NONE)).toThrow(testException);
+
+        long checkpointId = mockCheckpoint(settings, null);
+
+        // when
+        try {
+            boardCollector.collectBoard(settings);
+            fail();
+        } catch (IOException ex) {
+            // then
+            assertSame(testException, ex);
+        }
+
+        // then
+        assertCollected(pageDoms.subList(0, 3), settings);
+        assertCheckpoints(1, 3, checkpointId, settings);
+    }
+
+    @Test
+    public void testCollectBoard_prefetch() throws IOException {
+        // given
+        boardCollector = new BoardCollector(pageParser, webService, validatorCache, checkpointRepository, threadWriter, prefetchExecutor, 3);
+        Settings settings = new Settings("wg", null);
+        List<Document> pageDoms = mockPages(5, 12, settings);
+        long checkpointId = mockCheckpoint(settings, new CollectorProcessedCheckpointDs(15L, settings.getBoardName(), 5));
+
+        // when
+        boardCollector.collectBoard(settings);
+
+        // then
+        assertCollected(pageDoms, settings);
+        assertCheckpoints(5, 12, checkpointId, settings);
+    }
+
+    @Test
+    public void testCollectBoard_prefetchLimit() throws IOException {
+        // given
+        boardCollector = new BoardCollector(pageParser, webService, validatorCache, checkpointRepository, threadWriter, prefetchExecutor, 3);
+        Settings settings = new Settings("wg", 5);
+        List<Document> pageDoms = mockPages(1, 10, settings);
+        long checkpointId = mockCheckpoint(settings, null);
+
+        // when
+        boardCollector.collectBoard(settings);
+
+        // then
+        assertCollected(pageDoms.subList(0, 5), settings);
+        assertCheckpoints(1, 5, checkpointId, settings);
+        verify(webService, times(5)).getDocument(any(String.class), any(PageValidators.class));
+    }
+
+    @Test
+    public void testCollectBoard_prefetchIoFailed() throws IOException {
+        // given
+        boardCollector = new BoardCollector(pageParser, webService, validatorCache, checkpointRepository, threadWriter, prefetchExecutor, 3);
+        Settings settings = new Settings("wg", null);
+        List<Document> pageDoms = mockPages(1, 5, settings);
+        String url = String.format("https://yuki.la/%s/page/%d", settings.getBoardName(), 4);
+        IOException testException = new IOException("test");
+        stub(webService.getDocument(url, PageValidators.NONE)).toThrow(testException);
 
         long checkpointId = mockCheckpoint(settings, null);
 
@@ -113,18 +251,233 @@ public class BoardCollectorTest {
         assertCheckpoints(1, 3, checkpointId, settings);
     }
 
+    @Test
+    public void testCollectBoard_notModified() throws IOException {
+        // given
+        Settings settings = new Settings("wg", null);
+        List<Document> pageDoms = mockPages(1, 5, settings);
+        String url = String.format("https://yuki.la/%s/page/%d", settings.getBoardName(), 3);
+        stub(validatorCache.get(url)).toReturn(validators(3));
+        stub(webService.getDocument(url, validators(3))).toReturn(ConditionalDocument.notModified(validators(3)));
+        long checkpointId = mockCheckpoint(settings, null);
+
+        // when
+        boardCollector.collectBoard(settings);
+
+        // then
+        List<Document> collected = new ArrayList<>(pageDoms);
+        collected.remove(2);
+        assertCollected(collected, settings);
+        verify(threadWriter, times(4)).flush();
+        assertCheckpoints(1, 5, checkpointId, settings);
+        verify(validatorCache).put(url, validators(3));
+    }
+
+    @Test
+    public void testCollectBoard_validatorsStoredAfterFlush() throws IOException {
+        // given
+        Settings settings = new Settings("wg", null);
+        List<Document> pageDoms = mockPages(5, 5, settings);
+        mockCheckpoint(settings, new CollectorProcessedCheckpointDs(15L, settings.getBoardName(), 5));
+        String url = String.format("https://yuki.la/%s/page/%d", settings.getBoardName(), 5);
+
+        // when
+        boardCollector.collectBoard(settings);
+
+        // then
+        InOrder inOrder = inOrder(pageParser, threadWriter, validatorCache);
+        inOrder.verify(pageParser).parsePage(eq(pageDoms.get(0)), eq(settings), any(RunStatistics.class));
+        inOrder.verify(threadWriter).flush();
+        inOrder.verify(validatorCache).put(url, validators(5));
+        inOrder.verify(validatorCache).save();
+    }
+
+    @Test
+    public void testCollectBoard_validatorsNotStoredOnFailure() throws IOException {
+        // given
+        Settings settings = new Settings("wg", null);
+        List<Document> pageDoms = mockPages(1, 5, settings);
+        IOException testException = new IOException("test");
+        doThrow(testException).when(pageParser).parsePage(eq(pageDoms.get(2)), eq(settings), any(RunStatistics.class));
+        mockCheckpoint(settings, null);
+
+        // when
+        try {
+            boardCollector.collectBoard(settings);
+            fail();
+        } catch (IOException ex) {
+            // then
+            assertSame(testException, ex);
+        }
+
+        // then
+        verify(validatorCache, times(2)).put(any(String.class), any(PageValidators.class));
+        verify(validatorCache, never()).put(String.format("https://yuki.la/%s/page/%d", settings.getBoardName(), 3), validators(3));
+        verify(validatorCache).save();
+    }
+
+    @Test
+    public void testCollectBoard_threadsDropped() throws IOException {
+        // given
+        Settings settings = new Settings("wg", null);
+        List<Document> pageDoms = mockPages(1, 5, settings);
+        long checkpointId = mockCheckpoint(settings, null);
+        AtomicInteger droppedBatches = new AtomicInteger();
+        doAnswer(invocation -> droppedBatches.get()).when(threadWriter).getDroppedBatches();
+        doAnswer(invocation -> droppedBatches.incrementAndGet()).when(pageParser).parsePage(eq(pageDoms.get(2)), eq(settings), any(RunStatistics.class));
+
+        // when
+        try {
+            boardCollector.collectBoard(settings);
+            fail();
+        } catch (IOException ex) {
+            // then
+            assertTrue(ex.getMessage().contains("[3]"));
+        }
+
+        // then
+        assertCheckpoints(1, 2, checkpointId, settings);
+        verify(validatorCache, times(2)).put(any(String.class), any(PageValidators.class));
+        verify(validatorCache, never()).put(String.format("https://yuki.la/%s/page/%d", settings.getBoardName(), 3), validators(3));
+    }
+
+    @Test
+    public void testCollectBoard_statistics() throws IOException {
+        // given
+        Settings settings = new Settings("wg", null);
+        mockPages(1, 5, settings);
+        String url = String.format("https://yuki.la/%s/page/%d", settings.getBoardName(), 3);
+        stub(validatorCache.get(url)).toReturn(validators(3));
+        stub(webService.getDocument(url, validators(3))).toReturn(ConditionalDocument.notModified(validators(3)));
+        mockCheckpoint(settings, null);
+        CollectionRun run = new CollectionRun("1", settings);
+
+        // when
+        boardCollector.collectBoard(run);
+
+        // then
+        RunStatusJsonDto status = run.getStatistics().getStatus();
+        assertEquals(5, status.getPages());
+        assertEquals(1, status.getNotModifiedPages());
+        assertEquals(400, status.getBytes());
+        assertEquals(5, status.getFetch().getCount());
+        assertEquals(4, status.getPersist().getCount());
+        assertEquals(0, status.getErrors());
+        verify(pageParser, times(4)).parsePage(any(Document.class), eq(settings), eq(run.getStatistics()));
+    }
+
+    @Test
+    public void testCollectBoard_statisticsError() throws IOException {
+        // given
+        Settings settings = new Settings("wg", null);
+        mockPages(1, 5, settings);
+        String url = String.format("https://yuki.la/%s/page/%d", settings.getBoardName(), 3);
+        stub(webService.getDocument(url, PageValidators.NONE)).toThrow(new HttpStatusException("Server error", 500, url));
+        mockCheckpoint(settings, null);
+        CollectionRun run = new CollectionRun("1", settings);
+
+        // when
+        try {
+            boardCollector.collectBoard(run);
+            fail();
+        } catch (HttpStatusException ex) {
+            // then
+            assertEquals(500, ex.getStatusCode());
+        }
+
+        // then
+        RunStatusJsonDto status = run.getStatistics().getStatus();
+        assertEquals(2, status.getPages());
+        assertEquals(3, status.getCurrentPage());
+        assertEquals(1, status.getErrors());
+    }
+
+    @Test
+    public void testCollectBoard_cancelled() throws IOException {
+        // given
+        Settings settings = new Settings("wg", null);
+        List<Document> pageDoms = mockPages(1, 5, settings);
+        long checkpointId = mockCheckpoint(settings, null);
+        CollectionRun run = new CollectionRun("1", settings);
+        doAnswer(invocation -> run.cancel()).when(pageParser).parsePage(eq(pageDoms.get(1)), eq(settings), any(RunStatistics.class));
+
+        // when
+        boardCollector.collectBoard(run);
+
+        // then
+        assertCollected(pageDoms.subList(0, 2), settings);
+        assertCheckpoints(1, 2, checkpointId, settings);
+        verify(webService, never()).getDocument(String.format("https://yuki.la/%s/page/%d", settings.getBoardName(), 3), PageValidators.NONE);
+        verify(threadWriter, times(2)).flush();
+        verify(validatorCache).save();
+    }
+
+    @Test
+    public void testCollectBoard_cancelledBeforeStart() throws IOException {
+        // given
+        Settings settings = new Settings("wg", null);
+        mockPages(1, 5, settings);
+        mockCheckpoint(settings, null);
+        CollectionRun run = new CollectionRun("1", settings);
+        run.cancel();
+
+        // when
+        boardCollector.collectBoard(run);
+
+        // then
+        verify(webService, never()).getDocument(any(String.class), any(PageValidators.class));
+        verify(pageParser, never()).parsePage(any(Document.class), eq(settings), any(RunStatistics.class));
+    }
+
+    @Test
+    public void testCollectBoard_paused() throws Exception {
+        // given
+        Settings settings = new Settings("wg", null);
+        List<Document> pageDoms = mockPages(1, 5, settings);
+        mockCheckpoint(settings, null);
+        CollectionRun run = spy(new CollectionRun("1", settings));
+        doAnswer(invocation -> {
+            run.pause();
+            return null;
+        }).when(pageParser).parsePage(eq(pageDoms.get(1)), eq(settings), any(RunStatistics.class));
+        CountDownLatch waiting = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            if (run.isPaused()) {
+                waiting.countDown();
+            }
+            return invocation.callRealMethod();
+        }).when(run).awaitProceed();
+        Future<?> collection = prefetchExecutor.submit(() -> {
+            boardCollector.collectBoard(run);
+            return null;
+        });
+
+        // when
+        assertTrue(waiting.await(5, TimeUnit.SECONDS));
+        verify(webService, never()).getDocument(String.format("https://yuki.la/%s/page/%d", settings.getBoardName(), 3), PageValidators.NONE);
+        run.resume();
+        collection.get(5, TimeUnit.SECONDS);
+
+        // then
+        assertCollected(pageDoms, settings);
+    }
+
+    private static PageValidators validators(int page) {
+        return new PageValidators("\"etag-" + page + "\"", null);
+    }
+
     private List<Document> mockPages(int firstPage, int lastPage, Settings settings) throws IOException {
         List<Document> pageDoms = new ArrayList<>(lastPage - firstPage + 1);
         for (int i = firstPage; i <= lastPage; i++) {
             Document pageDom = mock(Document.class);
             String url = String.format("https://yuki.la/%s/page/%d", settings.getBoardName(), i);
 
-            stub(webService.getDocument(url)).toReturn(pageDom);
+            stub(webService.getDocument(url, PageValidators.NONE)).toReturn(ConditionalDocument.modified(pageDom, validators(i), 100));
             pageDoms.add(pageDom);
         }
 
         String lastUrl = String.format("https://yuki.la/%s/page/%d", settings.getBoardName(), lastPage + 1);
-        stub(webService.getDocument(lastUrl)).toThrow(new HttpStatusException("Not found", 404, lastUrl));
+        stub(webService.getDocument(lastUrl, PageValidators.NONE)).toThrow(new HttpStatusException("Not found", 404, lastUrl));
 
         return pageDoms;
     }
@@ -142,9 +495,9 @@ public class BoardCollectorTest {
     }
 
     private void assertCollected(List<Document> pageDoms, Settings settings) throws IOException {
-        verify(pageParser, times(pageDoms.size())).parsePage(any(Document.class), eq(settings));
+        verify(pageParser, times(pageDoms.size())).parsePage(any(Document.class), eq(settings), any(RunStatistics.class));
         for (Document pageDom : pageDoms) {
-            verify(pageParser).parsePage(pageDom, settings);
+            verify(pageParser).parsePage(eq(pageDom), eq(settings), any(RunStatistics.class));
         }
     }
 
@@ -0,0 +1,217 @@
+package scraper.services.chan.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import scraper.common.FuncUtils;
+import scraper.common.Utils;
+import scraper.exception.ResourceNotFoundException;
+import scraper.services.chan.dto.RunStatusJsonDto;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CollectionEngineTest {
+
+    @Mock
+    private BoardCollector collector;
+
+    private ExecutorService runExecutor;
+
+    private CollectionEngine engine;
+
+    @Before
+    public void setUp() {
+        runExecutor = Executors.newFixedThreadPool(2);
+        engine = new CollectionEngine(collector, runExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        runExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testSubmit() throws IOException {
+        // given
+        Settings settings = new Settings("wg", 5);
+
+        // when
+        CollectionRun run = engine.submit(settings);
+
+        // then
+        assertNotNull(run);
+        assertSame(settings, run.getSettings());
+        verify(collector, timeout(5000)).collectBoard(run);
+        awaitNotRunning();
+    }
+
+    @Test
+    public void testSubmit_duplicateDropped() throws Exception {
+        // given
+        CountDownLatch release = blockCollection();
+        Settings settings = new Settings("wg", 5);
+        engine.submit(settings);
+
+        // when
+        CollectionRun run = engine.submit(new Settings("wg", 10));
+
+        // then
+        assertNull(run);
+        assertEquals(Collections.singleton("wg"), engine.getRunningBoards());
+
+        release.countDown();
+        awaitNotRunning();
+        verify(collector, times(1)).collectBoard(any(CollectionRun.class));
+        assertNotNull(engine.submit(settings));
+    }
+
+    @Test
+    public void testSubmit_failureHandled() throws Exception {
+        // given
+        Settings settings = new Settings("wg", 5);
+        doThrow(new IOException("test")).when(collector).collectBoard(any(CollectionRun.class));
+
+        // when
+        engine.submit(settings);
+
+        // then
+        verify(collector, timeout(5000)).collectBoard(any(CollectionRun.class));
+        awaitNotRunning();
+        RunStatusJsonDto status = engine.getStatus().get(0);
+        assertEquals("FAILED", status.getState());
+        assertEquals("test", status.getError());
+        assertNotNull(engine.submit(settings));
+    }
+
+    @Test
+    public void testGetStatus() throws Exception {
+        // given
+        CountDownLatch release = blockCollection();
+        engine.submit(new Settings("wg", 5));
+        engine.submit(new Settings("b", 5));
+
+        // when
+        List<RunStatusJsonDto> running = engine.getStatus();
+        release.countDown();
+        awaitNotRunning();
+        List<RunStatusJsonDto> finished = engine.getStatus();
+
+        // then
+        assertEquals(Arrays.asList("b", "wg"), FuncUtils.map(running, RunStatusJsonDto::getBoard));
+        assertEquals(Arrays.asList("RUNNING", "RUNNING"), FuncUtils.map(running, RunStatusJsonDto::getState));
+        assertEquals(Arrays.asList("FINISHED", "FINISHED"), FuncUtils.map(finished, RunStatusJsonDto::getState));
+        assertNull(running.get(0).getFinishTime());
+        assertNotNull(finished.get(0).getFinishTime());
+    }
+
+    @Test
+    public void testSubmitAll() throws Exception {
+        // given
+        CountDownLatch release = blockCollection();
+        engine.submit(new Settings("wg", 5));
+
+        // when
+        Set<String> started = engine.submitAll(Arrays.asList(new Settings("wg", 5), new Settings("g", 5), new Settings("b", 5)));
+
+        // then
+        assertEquals(Utils.set("g", "b"), started);
+        assertEquals(Utils.set("wg", "g", "b"), engine.getRunningBoards());
+        release.countDown();
+        awaitNotRunning();
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        // given
+        CountDownLatch release = blockCollection();
+        CollectionRun run = engine.submit(new Settings("wg", 5));
+
+        // when
+        boolean cancelled = engine.cancel(run.getId());
+        String cancellingState = engine.getStatus().get(0).getState();
+        release.countDown();
+        awaitNotRunning();
+
+        // then
+        assertTrue(cancelled);
+        assertTrue(run.isCancelled());
+        assertEquals("CANCELLING", cancellingState);
+        RunStatusJsonDto status = engine.getStatus().get(0);
+        assertEquals(run.getId(), status.getId());
+        assertEquals("CANCELLED", status.getState());
+        assertNotNull(status.getFinishTime());
+        assertFalse(engine.cancel(run.getId()));
+    }
+
+    @Test
+    public void testPauseResume() throws Exception {
+        // given
+        CountDownLatch release = blockCollection();
+        CollectionRun run = engine.submit(new Settings("wg", 5));
+
+        // when
+        boolean paused = engine.pause(run.getId());
+        String pausedState = engine.getStatus().get(0).getState();
+        boolean resumed = engine.resume(run.getId());
+        String resumedState = engine.getStatus().get(0).getState();
+        release.countDown();
+        awaitNotRunning();
+
+        // then
+        assertTrue(paused);
+        assertTrue(resumed);
+        assertEquals("PAUSED", pausedState);
+        assertEquals("RUNNING", resumedState);
+        assertEquals("FINISHED", engine.getStatus().get(0).getState());
+        assertFalse(engine.pause(run.getId()));
+    }
+
+    @Test(expected = ResourceNotFoundException.class)
+    public void testCancel_notFound() {
+        // when
+        engine.cancel("42");
+    }
+
+    private CountDownLatch blockCollection() throws IOException {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(collector).collectBoard(any(CollectionRun.class));
+
+        return release;
+    }
+
+    private void awaitNotRunning() {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!engine.getRunningBoards().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        assertTrue(engine.getRunningBoards().isEmpty());
+    }
+}
@@ -0,0 +1,74 @@
+package scraper.services.chan.processor;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CollectionRunTest {
+
+    @Test
+    public void testAwaitProceed_notPaused() throws InterruptedException {
+        // given
+        CollectionRun run = new CollectionRun("1", new Settings("wg", 5));
+
+        // when
+        boolean proceed = run.awaitProceed();
+
+        // then
+        assertTrue(proceed);
+        assertEquals("RUNNING", run.getStatus().getState());
+    }
+
+    @Test
+    public void testAwaitProceed_cancelWhilePaused() throws InterruptedException {
+        // given
+        CollectionRun run = new CollectionRun("1", new Settings("wg", 5));
+        run.pause();
+        AtomicBoolean proceed = new AtomicBoolean(true);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                proceed.set(run.awaitProceed());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        });
+        waiter.start();
+
+        // when
+        boolean waited = !done.await(100, TimeUnit.MILLISECONDS);
+        run.cancel();
+
+        // then
+        assertTrue(waited);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(proceed.get());
+        assertEquals("CANCELLING", run.getStatus().getState());
+        assertFalse(run.pause());
+        assertFalse(run.resume());
+    }
+
+    @Test
+    public void testControl_afterEnd() {
+        // given
+        CollectionRun run = new CollectionRun("1", new Settings("wg", 5));
+        run.getStatistics().finish();
+
+        // when
+        boolean paused = run.pause();
+        boolean cancelled = run.cancel();
+
+        // then
+        assertFalse(paused);
+        assertFalse(cancelled);
+        assertEquals("FINISHED", run.getStatus().getState());
+        assertEquals("1", run.getStatus().getId());
+    }
+}
@@ -0,0 +1,196 @@
+package scraper.services.chan.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FairWorkerPoolTest {
+
+    private FairWorkerPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new FairWorkerPool(1, 1, Executors.defaultThreadFactory());
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void testSubmit() throws Exception {
+        // when
+        Future<String> result = pool.submit("wg", () -> "result");
+
+        // then
+        assertEquals("result", result.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSubmit_failure() throws Exception {
+        // given
+        IllegalStateException testException = new IllegalStateException("test");
+
+        // when
+        Future<String> result = pool.submit("wg", () -> {
+            throw testException;
+        });
+
+        // then
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException ex) {
+            assertEquals(testException, ex.getCause());
+        }
+        assertEquals("next", pool.submit("wg", () -> "next").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSubmit_roundRobin() throws Exception {
+        // given
+        CountDownLatch blocker = block("blocker");
+        List<String> order = new CopyOnWriteArrayList<>();
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            String task = "wg-" + i;
+            tasks.add(pool.submit("wg", () -> order.add(task)));
+        }
+        for (int i = 0; i < 3; i++) {
+            String task = "g-" + i;
+            tasks.add(pool.submit("g", () -> order.add(task)));
+        }
+
+        // when
+        blocker.countDown();
+        for (Future<?> task : tasks) {
+            task.get(5, TimeUnit.SECONDS);
+        }
+
+        // then
+        assertEquals(6, order.size());
+        for (int i = 0; i < 6; i += 2) {
+            assertTrue(order.get(i).charAt(0) != order.get(i + 1).charAt(0));
+        }
+    }
+
+    @Test
+    public void testSubmit_maxPerBoard() throws Exception {
+        // given
+        pool.shutdownNow();
+        pool = new FairWorkerPool(4, 2, Executors.defaultThreadFactory());
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<?>> tasks = new ArrayList<>();
+
+        // when
+        for (int i = 0; i < 6; i++) {
+            tasks.add(pool.submit("wg", () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                release.await();
+                return running.decrementAndGet();
+            }));
+        }
+        Future<String> otherBoard = pool.submit("g", () -> "other");
+
+        // then
+        assertEquals("other", otherBoard.get(5, TimeUnit.SECONDS));
+        awaitRunning("wg", 2);
+        assertEquals(4, pool.getQueued("wg"));
+        assertEquals(4, pool.getQueued());
+
+        release.countDown();
+        for (Future<?> task : tasks) {
+            task.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    public void testCancel_queued() throws Exception {
+        // given
+        CountDownLatch blocker = block("wg");
+        AtomicInteger runs = new AtomicInteger();
+        Future<Integer> cancelled = pool.submit("wg", runs::incrementAndGet);
+
+        // when
+        cancelled.cancel(true);
+        blocker.countDown();
+
+        // then
+        assertEquals("next", pool.submit("wg", () -> "next").get(5, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+        try {
+            cancelled.get();
+            fail();
+        } catch (CancellationException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCancel_running() throws Exception {
+        // given
+        CountDownLatch started = new CountDownLatch(1);
+        Future<?> running = pool.submit("wg", () -> {
+            started.countDown();
+            Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            return null;
+        });
+        started.await(5, TimeUnit.SECONDS);
+
+        // when
+        running.cancel(true);
+
+        // then
+        assertEquals("next", pool.submit("wg", () -> "next").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testSubmit_shutdown() {
+        // given
+        pool.shutdownNow();
+
+        // when
+        pool.submit("wg", () -> "result");
+    }
+
+    private void awaitRunning(String board, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getRunning(board) != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, pool.getRunning(board));
+    }
+
+    private CountDownLatch block(String board) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        pool.submit(board, () -> {
+            started.countDown();
+            blocker.await();
+            return null;
+        });
+        started.await(5, TimeUnit.SECONDS);
+
+        return blocker;
+    }
+}
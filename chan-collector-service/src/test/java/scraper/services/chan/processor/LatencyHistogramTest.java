@@ -0,0 +1,63 @@
+package scraper.services.chan.processor;
+
+import org.junit.Test;
+import scraper.services.chan.dto.LatencyJsonDto;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyHistogramTest {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Test
+    public void testSnapshot_empty() {
+        // when
+        LatencyJsonDto snapshot = histogram.snapshot();
+
+        // then
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMeanMillis(), 0);
+        assertEquals(0, snapshot.getMaxMillis(), 0);
+        assertEquals(0, snapshot.getP99Millis(), 0);
+        assertEquals(15, snapshot.getBuckets().size());
+    }
+
+    @Test
+    public void testSnapshot() {
+        // given
+        for (int i = 0; i < 98; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(1500));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(20));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(150));
+
+        // when
+        LatencyJsonDto snapshot = histogram.snapshot();
+
+        // then
+        assertEquals(100, snapshot.getCount());
+        assertEquals(3.17, snapshot.getMeanMillis(), 0.001);
+        assertEquals(150, snapshot.getMaxMillis(), 0);
+        assertEquals(2, snapshot.getP50Millis(), 0);
+        assertEquals(2, snapshot.getP90Millis(), 0);
+        assertEquals(20, snapshot.getP99Millis(), 0);
+        assertEquals(Long.valueOf(98), snapshot.getBuckets().get("2"));
+        assertEquals(Long.valueOf(1), snapshot.getBuckets().get("20"));
+        assertEquals(Long.valueOf(1), snapshot.getBuckets().get("200"));
+    }
+
+    @Test
+    public void testSnapshot_overflow() {
+        // given
+        histogram.record(TimeUnit.SECONDS.toNanos(45));
+
+        // when
+        LatencyJsonDto snapshot = histogram.snapshot();
+
+        // then
+        assertEquals(Long.valueOf(1), snapshot.getBuckets().get("+Inf"));
+        assertEquals(45000, snapshot.getP50Millis(), 0);
+    }
+}
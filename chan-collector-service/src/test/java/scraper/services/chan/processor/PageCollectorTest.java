@@ -2,25 +2,52 @@ package scraper.services.chan.processor;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import scraper.common.FuncUtils;
 import scraper.common.Utils;
+import scraper.services.chan.model.PostDs;
 import scraper.services.chan.model.ThreadDs;
-import scraper.services.chan.repository.ThreadDsRepository;
+import scraper.services.chan.repository.KnownThreadsIndex;
+import scraper.services.chan.repository.ThreadBatchWriter;
+import scraper.services.chan.web.ConditionalDocument;
+import scraper.services.chan.web.PageValidators;
+import scraper.services.chan.web.WebPage;
 import scraper.services.chan.web.WebService;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.stub;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -35,13 +62,32 @@ public class PageCollectorTest {
     private ThreadParser threadParser;
 
     @Mock
-    private ThreadDsRepository threadRepository;
+    private KnownThreadsIndex knownThreads;
+
+    @Mock
+    private ThreadBatchWriter threadWriter;
+
+    private FairWorkerPool workerPool;
+
+    private FairWorkerPool parsePool;
 
     private PageCollector pageCollector;
 
+    private ExecutorService collectionExecutor;
+
     @Before
     public void setUp() {
-        pageCollector = new PageCollector(webService, threadParser, threadRepository);
+        workerPool = new FairWorkerPool(4, 4, Executors.defaultThreadFactory());
+        parsePool = new FairWorkerPool(2, 2, Executors.defaultThreadFactory());
+        collectionExecutor = Executors.newSingleThreadExecutor();
+        pageCollector = new PageCollector(webService, threadParser, knownThreads, threadWriter, workerPool, parsePool, 4, 2, false);
+    }
+
+    @After
+    public void tearDown() {
+        workerPool.shutdownNow();
+        parsePool.shutdownNow();
+        collectionExecutor.shutdownNow();
     }
 
     @Test
@@ -73,39 +119,224 @@ public class PageCollectorTest {
         Set<String> collectedThreads = Utils.set("6354123", "6353329", "6353422");
 
         List<ThreadDs> threads = mockDocuments(settings, threadIds);
-        mockAlreadyCollected(collectedThreads);
+        mockAlreadyCollected(settings, collectedThreads);
+
+        // when
+        pageCollector.parsePage(pageDom, settings);
+
+        // then
+        assertSaved(threads);
+        verify(knownThreads).findStored(eq(settings.getBoardName()), anySetOf(String.class));
+        verify(knownThreads, never()).findLastPostIds(anyString(), anyCollectionOf(String.class));
+    }
+
+    @Test
+    public void testCollectPage_incremental() throws IOException {
+        // given
+        Document pageDom = getDocument("/scraper/services/chan/processor/page1.html");
+        Settings settings = new Settings("wg", null, true);
+        Set<String> threadIds =
+                Utils.set("6353173", "6353329", "6353331", "6353368", "6353396", "6353422", "6353597", "6353667", "6353679", "6353698", "6353748", "6353772", "6353877",
+                        "6354028", "6354123", "6354152", "6354241", "6354383", "6354388", "6354420", "6354553", "6354571", "6354575");
+        Set<String> collectedThreads = Utils.set("6353085", "6353115");
+
+        List<ThreadDs> threads = mockDocuments(settings, threadIds);
+        mockAlreadyCollected(settings, collectedThreads);
+        stub(knownThreads.findLastPostIds(settings.getBoardName(), collectedThreads)).toReturn(Utils.map("6353085", 6371672L, "6353115", 6357120L));
+
+        ThreadDs bumpedThread = new ThreadDs("6353115", "wg", "subject");
+        bumpedThread.addPosts(Arrays.asList(post("6353115"), post("6357118"), post("6357120"), post("6357121"), post("6357124")));
+        Document bumpedThreadDom = mock(Document.class);
+        stub(webService.getDocument("https://yuki.la/wg/6353115", PageValidators.NONE)).toReturn(ConditionalDocument.modified(bumpedThreadDom, PageValidators.NONE, 100));
+        stub(threadParser.parseThread(bumpedThreadDom, settings)).toReturn(bumpedThread);
+
+        // when
+        pageCollector.parsePage(pageDom, settings);
+
+        // then
+        threads.add(bumpedThread);
+        assertSaved(threads);
+        assertEquals(Utils.set("6357121", "6357124"), FuncUtils.mapSet(bumpedThread.getPosts(), PostDs::getPostId));
+        assertEquals(Long.valueOf(6357124L), bumpedThread.getLastPostId());
+        verify(webService, never()).getDocument("https://yuki.la/wg/6353085", PageValidators.NONE);
+    }
+
+    @Test
+    public void testCollectPage_incrementalNoWatermark() throws IOException {
+        // given
+        Document pageDom = getDocument("/scraper/services/chan/processor/page1.html");
+        Settings settings = new Settings("wg", null, true);
+        Set<String> collectedThreads =
+                Utils.set("6353085", "6353115", "6353173", "6353329", "6353331", "6353368", "6353396", "6353422", "6353597", "6353667", "6353679", "6353698", "6353748",
+                        "6353772", "6353877", "6354028", "6354123", "6354152", "6354241", "6354383", "6354388", "6354420", "6354553", "6354571", "6354575");
+        Map<String, Long> lastPostIds = new HashMap<>();
+        collectedThreads.forEach(threadId -> lastPostIds.put(threadId, 9000000L));
+        lastPostIds.put("6353115", null);
+
+        List<ThreadDs> threads = mockDocuments(settings, Utils.set("6353115"));
+        mockAlreadyCollected(settings, collectedThreads);
+        stub(knownThreads.findLastPostIds(settings.getBoardName(), collectedThreads)).toReturn(lastPostIds);
+
+        // when
+        pageCollector.parsePage(pageDom, settings);
+
+        // then
+        assertSaved(threads);
+        verify(threads.get(0)).removePostsUpTo(0L);
+    }
+
+    @Test
+    public void testExtractLastPostIds() throws IOException {
+        // given
+        Document pageDom = getDocument("/scraper/services/chan/processor/page1.html");
+
+        // when
+        Map<String, Long> lastPostIds = PageCollector.extractLastPostIds(pageDom);
+
+        // then
+        assertEquals(25, lastPostIds.size());
+        assertEquals(Long.valueOf(6371672L), lastPostIds.get("6353085"));
+        assertEquals(Long.valueOf(6357124L), lastPostIds.get("6353115"));
+        assertEquals(Long.valueOf(6356542L), lastPostIds.get("6353173"));
+    }
+
+    @Test
+    public void testCollectPage_streamingParser() throws IOException {
+        // given
+        pageCollector = new PageCollector(webService, threadParser, knownThreads, threadWriter, workerPool, parsePool, 4, 2, true);
+        Document pageDom = getDocument("/scraper/services/chan/processor/page1.html");
+        Settings settings = new Settings("wg", null);
+        Set<String> threadIds = Utils.set("6353085", "6353115", "6353173");
+        Set<String> collectedThreads =
+                Utils.set("6353329", "6353331", "6353368", "6353396", "6353422", "6353597", "6353667", "6353679", "6353698", "6353748", "6353772", "6353877", "6354028",
+                        "6354123", "6354152", "6354241", "6354383", "6354388", "6354420", "6354553", "6354571", "6354575");
+
+        List<ThreadDs> threads = mockPages(settings, threadIds);
+        mockAlreadyCollected(settings, collectedThreads);
 
         // when
         pageCollector.parsePage(pageDom, settings);
 
         // then
         assertSaved(threads);
+        verify(webService, never()).getDocument(any(String.class), any(PageValidators.class));
+    }
+
+    @Test
+    public void testCollectPage_fetchFailed() throws IOException {
+        // given
+        Document pageDom = getDocument("/scraper/services/chan/processor/page1.html");
+        Settings settings = new Settings("wg", null);
+        Set<String> threadIds = Utils.set("6353085", "6353115", "6353173");
+
+        stub(webService.getDocument(any(String.class), eq(PageValidators.NONE))).toReturn(ConditionalDocument.modified(mock(Document.class), PageValidators.NONE, 0));
+        stub(threadParser.parseThread(any(Document.class), eq(settings))).toReturn(mock(ThreadDs.class));
+        mockDocuments(settings, threadIds);
+        IOException testException = new IOException("test");
+        stub(webService.getDocument("https://yuki.la/wg/6353329", PageValidators.NONE)).toThrow(testException);
+
+        // when
+        try {
+            pageCollector.parsePage(pageDom, settings);
+            fail();
+        } catch (IOException ex) {
+            // then
+            assertSame(testException, ex);
+        }
+    }
+
+    @Test
+    public void testCollectPage_backpressure() throws Exception {
+        // given
+        pageCollector = new PageCollector(webService, threadParser, knownThreads, threadWriter, workerPool, parsePool, 2, 2, false);
+        Document pageDom = getDocument("/scraper/services/chan/processor/page1.html");
+        Settings settings = new Settings("wg", null);
+        Set<String> threadIds =
+                Utils.set("6353085", "6353115", "6353173", "6353329", "6353331", "6353368", "6353396", "6353422", "6353597", "6353667", "6353679", "6353698", "6353748", "6353772",
+                        "6353877", "6354028", "6354123", "6354152", "6354241", "6354383", "6354388", "6354420", "6354553", "6354571", "6354575");
+        // fetches already submitted when writing blocks finish asynchronously, all 4 of them are awaited
+        CountDownLatch fetched = new CountDownLatch(4);
+        List<ThreadDs> threads = mockDocuments(settings, threadIds, fetched);
+
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(threadWriter).write(any(ThreadDs.class));
+        Future<?> collection = collectionExecutor.submit(() -> {
+            pageCollector.parsePage(pageDom, settings);
+            return null;
+        });
+
+        // when
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        assertTrue(fetched.await(5, TimeUnit.SECONDS));
+        int fetchedWhileBlocked = mockingDetails(webService).getInvocations().size();
+        int queuedFetches = pageCollector.getQueuedFetches();
+        int queuedParses = pageCollector.getQueuedParses();
+        release.countDown();
+        collection.get(5, TimeUnit.SECONDS);
+
+        // then
+        assertEquals(4, fetchedWhileBlocked);
+        assertEquals(2, queuedFetches);
+        assertEquals(1, queuedParses);
+        assertSaved(threads);
+        assertEquals(0, pageCollector.getQueuedFetches());
+        assertEquals(0, pageCollector.getQueuedParses());
+    }
+
+    private static PostDs post(String postId) {
+        return new PostDs("author", new Date(0), postId, "comment", null, null, null, null, null, null, null, null);
     }
 
     private void assertSaved(List<ThreadDs> threads) {
-        verify(threadRepository, times(threads.size())).save(any(ThreadDs.class));
+        verify(threadWriter, times(threads.size())).write(any(ThreadDs.class));
         for (ThreadDs thread : threads) {
-            verify(threadRepository).save(thread);
+            verify(threadWriter).write(thread);
         }
     }
 
     private List<ThreadDs> mockDocuments(Settings settings, Set<String> threadIds) throws IOException {
+        return mockDocuments(settings, threadIds, new CountDownLatch(0));
+    }
+
+    private List<ThreadDs> mockDocuments(Settings settings, Set<String> threadIds, CountDownLatch fetched) throws IOException {
         List<ThreadDs> threads = new ArrayList<>(threadIds.size());
         for (String threadId : threadIds) {
             Document threadDom = mock(Document.class);
             ThreadDs threadDs = mock(ThreadDs.class);
 
-            stub(webService.getDocument(String.format("https://yuki.la/%s/%s", settings.getBoardName(), threadId))).toReturn(threadDom);
+            doAnswer(invocation -> {
+                fetched.countDown();
+                return ConditionalDocument.modified(threadDom, PageValidators.NONE, 100);
+            }).when(webService).getDocument(String.format("https://yuki.la/%s/%s", settings.getBoardName(), threadId), PageValidators.NONE);
             stub(threadParser.parseThread(threadDom, settings)).toReturn(threadDs);
+            threads.add(threadDs);
         }
 
         return threads;
     }
 
-    private void mockAlreadyCollected(Set<String> threadIds) {
+    private List<ThreadDs> mockPages(Settings settings, Set<String> threadIds) throws IOException {
+        List<ThreadDs> threads = new ArrayList<>(threadIds.size());
         for (String threadId : threadIds) {
-            stub(threadRepository.findIdByThreadId(threadId)).toReturn(12L);
+            String url = String.format("https://yuki.la/%s/%s", settings.getBoardName(), threadId);
+            String html = "<html>" + threadId + "</html>";
+            ThreadDs threadDs = mock(ThreadDs.class);
+
+            stub(webService.getPage(url)).toReturn(new WebPage(url, html, html.length()));
+            stub(threadParser.parseThread(html, url, settings)).toReturn(threadDs);
+            threads.add(threadDs);
         }
+
+        return threads;
+    }
+
+    private void mockAlreadyCollected(Settings settings, Set<String> threadIds) {
+        stub(knownThreads.findStored(eq(settings.getBoardName()), anySetOf(String.class))).toReturn(threadIds);
     }
 
     private Document getDocument(String path) throws IOException {
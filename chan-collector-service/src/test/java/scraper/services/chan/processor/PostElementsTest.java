@@ -0,0 +1,85 @@
+package scraper.services.chan.processor;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+public class PostElementsTest {
+
+    @Test
+    public void testExtract_simpleThread() throws IOException {
+        assertSameAsSelectors("/scraper/services/chan/processor/thread1.html");
+    }
+
+    @Test
+    public void testExtract_complexThread() throws IOException {
+        assertSameAsSelectors("/scraper/services/chan/processor/thread2.html");
+    }
+
+    @Test
+    public void testExtract_page() throws IOException {
+        assertSameAsSelectors("/scraper/services/chan/processor/page1.html");
+    }
+
+    @Test
+    public void testExtract_emptyPost() {
+        // given
+        Element postElement = Jsoup.parse("<div class=\"post\"><div class=\"postInfo\"></div></div>").select("div.post").first();
+
+        // when
+        PostElements elements = PostElements.extract(postElement);
+
+        // then
+        assertSameAsSelectors(postElement, elements);
+    }
+
+    @Test
+    public void testExtract_nestingOrder() {
+        // given
+        Element postElement = Jsoup.parse("<div class=\"post\"><span class=\"nameBlock\"><div class=\"postInfo\"><span class=\"name\">A</span></div></span>"
+                + "<div class=\"fileText\"><div class=\"file\"><a href=\"x\">B</a></div></div><div class=\"file fileText\"><a>C</a></div></div>").select("div.post").first();
+
+        // when
+        PostElements elements = PostElements.extract(postElement);
+
+        // then
+        assertSameAsSelectors(postElement, elements);
+    }
+
+    private void assertSameAsSelectors(String path) throws IOException {
+        Document document = getDocument(path);
+        Elements postElements = document.select("div.post");
+        assertFalse(postElements.isEmpty());
+
+        for (Element postElement : postElements) {
+            assertSameAsSelectors(postElement, PostElements.extract(postElement));
+        }
+    }
+
+    private void assertSameAsSelectors(Element postElement, PostElements elements) {
+        assertSame(postElement.select("div.postInfo span.nameBlock span.name").first(), elements.getName());
+        assertSame(postElement.select("div.postInfo span.dateTime").first(), elements.getDateTime());
+        assertSame(postElement.select("div.postInfo input").first(), elements.getPostIdInput());
+        assertSame(postElement.select("blockquote.postMessage").first(), elements.getPostMessage());
+        assertSame(postElement.select("div.file div.fileText").first(), elements.getFileText());
+        assertSame(postElement.select("div.file div.fileText a").first(), elements.getFileLink());
+        assertSame(postElement.select("div.file a.fileThumb img").first(), elements.getThumbnail());
+        assertSame(postElement.select("div.file div.mFileInfo").first(), elements.getMobileFileInfo());
+        assertEquals(postElement.select("blockquote.postMessage a.quotelink"), elements.getQuoteLinks());
+    }
+
+    private Document getDocument(String path) throws IOException {
+        InputStream in = getClass().getResourceAsStream(path);
+        return Jsoup.parse(in, StandardCharsets.UTF_8.name(), "http://boards.4chan.org/");
+    }
+}
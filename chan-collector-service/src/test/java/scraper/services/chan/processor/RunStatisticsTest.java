@@ -0,0 +1,84 @@
+package scraper.services.chan.processor;
+
+import org.junit.Test;
+import scraper.services.chan.dto.RunStatusJsonDto;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RunStatisticsTest {
+
+    private final AtomicLong clock = new AtomicLong(1000);
+
+    private final RunStatistics statistics = new RunStatistics("wg", clock::get);
+
+    @Test
+    public void testGetStatus_running() {
+        // given
+        statistics.onPageStarted(3);
+        statistics.onPageCollected(true);
+        statistics.onPageCollected(false);
+        statistics.onThreadCollected(10);
+        statistics.onThreadCollected(30);
+        statistics.onError();
+        statistics.recordFetch(TimeUnit.MILLISECONDS.toNanos(40), 4096);
+        statistics.recordParse(TimeUnit.MILLISECONDS.toNanos(3));
+        statistics.recordPersist(TimeUnit.MILLISECONDS.toNanos(7));
+        clock.addAndGet(2000);
+
+        // when
+        RunStatusJsonDto status = statistics.getStatus();
+
+        // then
+        assertEquals("wg", status.getBoard());
+        assertEquals("RUNNING", status.getState());
+        assertEquals(1000, status.getStartTime());
+        assertNull(status.getFinishTime());
+        assertEquals(3, status.getCurrentPage());
+        assertEquals(2, status.getPages());
+        assertEquals(1, status.getNotModifiedPages());
+        assertEquals(2, status.getThreads());
+        assertEquals(40, status.getPosts());
+        assertEquals(1, status.getErrors());
+        assertEquals(4096, status.getBytes());
+        assertEquals(20, status.getPostsPerSecond(), 0);
+        assertEquals(2048, status.getBytesPerSecond(), 0);
+        assertEquals(1, status.getFetch().getCount());
+        assertEquals(1, status.getParse().getCount());
+        assertEquals(1, status.getPersist().getCount());
+    }
+
+    @Test
+    public void testGetStatus_finished() {
+        // given
+        statistics.onThreadCollected(100);
+        clock.addAndGet(4000);
+        statistics.finish();
+        clock.addAndGet(6000);
+
+        // when
+        RunStatusJsonDto status = statistics.getStatus();
+
+        // then
+        assertEquals("FINISHED", status.getState());
+        assertEquals(Long.valueOf(5000), status.getFinishTime());
+        assertEquals(25, status.getPostsPerSecond(), 0);
+    }
+
+    @Test
+    public void testGetStatus_failed() {
+        // given
+        statistics.fail(new IOException("Connection reset"));
+
+        // when
+        RunStatusJsonDto status = statistics.getStatus();
+
+        // then
+        assertEquals("FAILED", status.getState());
+        assertEquals("Connection reset", status.getError());
+    }
+}
@@ -1,10 +1,12 @@
 package scraper.services.chan.processor;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.util.StreamUtils;
 import scraper.common.Utils;
 import scraper.services.chan.model.PostDs;
 import scraper.services.chan.model.ThreadDs;
@@ -24,7 +26,7 @@ import static scraper.common.FuncUtils.mapSet;
 @RunWith(MockitoJUnitRunner.class)
 public class ThreadParserTest {
 
-    private ThreadParser parser = new ThreadParser();
+    private ThreadParser parser = new ThreadParser(new SimpleMeterRegistry());
 
     @Test
     public void testSimpleThread() throws IOException {
@@ -99,6 +101,73 @@ public class ThreadParserTest {
                 Utils.set("6481167"), Collections.emptySet());
     }
 
+    @Test
+    public void testParseDate() {
+        // when
+        Date date = ThreadParser.parseDate("02/10/16(Wed)11:59:31 No.6474195");
+
+        // then
+        assertEquals(new GregorianCalendar(2016, 1, 10, 11, 59, 31).getTime(), date);
+    }
+
+    @Test
+    public void testParseDate_invalid() {
+        // when
+        Date outOfRange = ThreadParser.parseDate("13/10/16(Wed)11:59:31");
+        Date malformed = ThreadParser.parseDate("yesterday");
+
+        // then
+        assertEquals(new Date(0L), outOfRange);
+        assertEquals(new Date(0L), malformed);
+    }
+
+    @Test
+    public void testParseDate_century() {
+        // when
+        Date lastCentury = ThreadParser.parseDate("02/10/99(Wed)11:59:31");
+        Date thisCentury = ThreadParser.parseDate("02/10/30(Sun)11:59:31");
+
+        // then
+        assertEquals(new GregorianCalendar(1999, 1, 10, 11, 59, 31).getTime(), lastCentury);
+        assertEquals(new GregorianCalendar(2030, 1, 10, 11, 59, 31).getTime(), thisCentury);
+    }
+
+    @Test
+    public void testSimpleThread_streaming() throws IOException {
+        assertStreamingSameAsDom("/scraper/services/chan/processor/thread1.html");
+    }
+
+    @Test
+    public void testComplexThread_streaming() throws IOException {
+        assertStreamingSameAsDom("/scraper/services/chan/processor/thread2.html");
+    }
+
+    private void assertStreamingSameAsDom(String path) throws IOException {
+        // given
+        Settings settings = new Settings("wg", null);
+        ThreadDs expectedThread = parser.parseThread(getDocument(path), settings);
+
+        // when
+        ThreadDs thread = parser.parseThread(getHtml(path), "http://boards.4chan.org/", settings);
+
+        // then
+        assertThread(thread, expectedThread.getThreadId(), expectedThread.getBoard(), expectedThread.getSubject(), mapSet(expectedThread.getPosts(), PostDs::getPostId));
+        List<PostDs> expectedPosts = expectedThread.getOrderedPosts();
+        List<PostDs> posts = thread.getOrderedPosts();
+        for (int i = 0; i < expectedPosts.size(); i++) {
+            PostDs expected = expectedPosts.get(i);
+            assertPost(posts.get(i), expected.getPostId(), expected.getAuthor(), expected.getDate(), thread, expected.getMd5(), expected.getFileLink(),
+                    expected.getThumbnailLink(), expected.getFileName(), expected.getComment(), expected.getExtension(), expected.getSize(), expected.getWidth(),
+                    expected.getLength(), mapSet(expected.getReplyTo(), PostDs::getPostId), mapSet(expected.getRepliedBy(), PostDs::getPostId));
+        }
+    }
+
+    private String getHtml(String path) throws IOException {
+        try (InputStream in = getClass().getResourceAsStream(path)) {
+            return StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+        }
+    }
+
     private Document getDocument(String path) throws IOException {
         InputStream in = getClass().getResourceAsStream(path);
         return Jsoup.parse(in, StandardCharsets.UTF_8.name(), "http://boards.4chan.org/");
@@ -0,0 +1,164 @@
+package scraper.services.chan.repository;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.neo4j.ogm.model.Result;
+import org.neo4j.ogm.session.Session;
+import scraper.common.Utils;
+import scraper.services.chan.dto.KnownThreadsJsonDto;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.stub;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KnownThreadsIndexTest {
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private ThreadDsRepository threadRepository;
+
+    private KnownThreadsIndex knownThreads;
+
+    @Before
+    public void setUp() {
+        knownThreads = new KnownThreadsIndex(session, threadRepository, 1000, 0.01);
+    }
+
+    @Test
+    public void testFindStored_unknownThreads() {
+        // given
+        knownThreads.add("wg", "6353085");
+
+        // when
+        Set<String> stored = knownThreads.findStored("wg", Utils.set("6353115", "6353173"));
+
+        // then
+        assertTrue(stored.isEmpty());
+        verify(threadRepository, never()).findStoredThreadIds(anyString(), anyCollectionOf(String.class));
+    }
+
+    @Test
+    public void testFindStored_otherBoard() {
+        // given
+        knownThreads.add("wg", "6353085");
+
+        // when
+        Set<String> stored = knownThreads.findStored("g", Utils.set("6353085"));
+
+        // then
+        assertTrue(stored.isEmpty());
+        verify(threadRepository, never()).findStoredThreadIds(anyString(), anyCollectionOf(String.class));
+    }
+
+    @Test
+    public void testFindStored_knownThreads() {
+        // given
+        knownThreads.add("wg", "6353085");
+        knownThreads.add("wg", "6353115");
+        stub(threadRepository.findStoredThreadIds("wg", Arrays.asList("6353085"))).toReturn(Arrays.asList("6353085"));
+
+        // when
+        Set<String> stored = knownThreads.findStored("wg", Utils.set("6353085", "6353173"));
+
+        // then
+        assertEquals(Utils.set("6353085"), stored);
+        verify(threadRepository).findStoredThreadIds("wg", Arrays.asList("6353085"));
+    }
+
+    @Test
+    public void testFindStored_falsePositive() {
+        // given
+        knownThreads.add("wg", "6353085");
+        stub(threadRepository.findStoredThreadIds("wg", Arrays.asList("6353085"))).toReturn(Collections.emptyList());
+
+        // when
+        Set<String> stored = knownThreads.findStored("wg", Utils.set("6353085"));
+
+        // then
+        assertTrue(stored.isEmpty());
+        assertEquals(1, knownThreads.getStatistics().get(0).getObservedFalsePositiveRate(), 0);
+    }
+
+    @Test
+    public void testWarmUp() {
+        // given
+        Result result = mock(Result.class);
+        stub(result.queryResults()).toReturn(Arrays.asList(row("wg", "6353085"), row("g", "6353115")));
+        stub(session.query(anyString(), anyMapOf(String.class, Object.class), eq(true))).toReturn(result);
+        stub(threadRepository.findStoredThreadIds("wg", Arrays.asList("6353085"))).toReturn(Arrays.asList("6353085"));
+
+        // when
+        knownThreads.warmUp();
+
+        // then
+        assertEquals(Utils.set("6353085"), knownThreads.findStored("wg", Utils.set("6353085")));
+        List<KnownThreadsJsonDto> statistics = knownThreads.getStatistics();
+        assertEquals(2, statistics.size());
+        for (KnownThreadsJsonDto boardStatistics : statistics) {
+            assertEquals(1, boardStatistics.getThreads());
+            assertEquals(1200, boardStatistics.getMemoryFootprint(), 64);
+        }
+    }
+
+    @Test
+    public void testFindLastPostIds() {
+        // given
+        Result result = mock(Result.class);
+        stub(result.queryResults()).toReturn(Arrays.asList(lastPostIdRow("6353085", 6371672), lastPostIdRow("6353115", null)));
+        stub(session.query(anyString(), eq(Utils.<String, Object>map("board", "wg", "threadIds", Arrays.asList("6353085", "6353115", "6353173"))), eq(true))).toReturn(result);
+
+        // when
+        Map<String, Long> lastPostIds = knownThreads.findLastPostIds("wg", Arrays.asList("6353085", "6353115", "6353173"));
+
+        // then
+        assertEquals(2, lastPostIds.size());
+        assertEquals(Long.valueOf(6371672L), lastPostIds.get("6353085"));
+        assertTrue(lastPostIds.containsKey("6353115"));
+        assertNull(lastPostIds.get("6353115"));
+    }
+
+    @Test
+    public void testFindLastPostIds_noThreads() {
+        // when
+        Map<String, Long> lastPostIds = knownThreads.findLastPostIds("wg", Collections.emptyList());
+
+        // then
+        assertTrue(lastPostIds.isEmpty());
+        verify(session, never()).query(anyString(), anyMapOf(String.class, Object.class), eq(true));
+    }
+
+    private static Map<String, Object> lastPostIdRow(String threadId, Integer lastPostId) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("threadId", threadId);
+        row.put("lastPostId", lastPostId);
+        return row;
+    }
+
+    private static Map<String, Object> row(String board, String threadId) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("board", board);
+        row.put("threadId", threadId);
+        return row;
+    }
+}
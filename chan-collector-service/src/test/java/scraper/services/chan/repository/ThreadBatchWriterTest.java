@@ -0,0 +1,231 @@
+package scraper.services.chan.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.neo4j.ogm.session.Session;
+import scraper.services.chan.media.MediaCollector;
+import scraper.services.chan.model.PostDs;
+import scraper.services.chan.model.ThreadDs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.stub;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ThreadBatchWriterTest {
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private KnownThreadsIndex knownThreads;
+
+    @Mock
+    private MediaCollector mediaCollector;
+
+    @Captor
+    private ArgumentCaptor<Map<String, Object>> parameters;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ThreadBatchWriter threadWriter;
+
+    @Before
+    public void setUp() {
+        threadWriter = new ThreadBatchWriter(session, knownThreads, mediaCollector, 3, 2, meterRegistry);
+    }
+
+    @Test
+    public void testWrite_batchNotFull() {
+        // when
+        threadWriter.write(new ThreadDs("1", "wg", "subject 1"));
+        threadWriter.write(new ThreadDs("2", "wg", "subject 2"));
+
+        // then
+        verify(session, never()).query(anyString(), anyMapOf(String.class, Object.class));
+    }
+
+    @Test
+    public void testWrite_batchFull() {
+        // when
+        threadWriter.write(new ThreadDs("1", "wg", "subject 1"));
+        threadWriter.write(new ThreadDs("2", "wg", "subject 2"));
+        threadWriter.write(new ThreadDs("3", "wg", "subject 3"));
+        threadWriter.write(new ThreadDs("4", "wg", "subject 4"));
+
+        // then
+        List<Map<String, Object>> threads = captureThreads(1).get(0);
+        assertEquals(3, threads.size());
+        assertEquals("1", threads.get(0).get("threadId"));
+        assertEquals("2", threads.get(1).get("threadId"));
+        assertEquals("3", threads.get(2).get("threadId"));
+    }
+
+    @Test
+    public void testFlush() {
+        // given
+        threadWriter.write(new ThreadDs("1", "wg", "subject 1"));
+
+        // when
+        threadWriter.flush();
+        threadWriter.flush();
+
+        // then
+        List<Map<String, Object>> threads = captureThreads(1).get(0);
+        assertEquals(1, threads.size());
+        assertEquals("1", threads.get(0).get("threadId"));
+        assertEquals("wg", threads.get(0).get("board"));
+        assertEquals("subject 1", threads.get(0).get("subject"));
+        verify(knownThreads).add("wg", "1");
+        assertEquals(1, meterRegistry.get("scraper.repository.save").tags("entity", "thread").timer().count());
+        assertEquals(1, meterRegistry.get("scraper.repository.batch.size").summary().totalAmount(), 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testFlush_mediaCollected() {
+        // given
+        List<String> collectedThreadIds = new ArrayList<>();
+        doAnswer(invocation -> {
+            ((Collection<ThreadDs>) invocation.getArguments()[0]).forEach(thread -> collectedThreadIds.add(thread.getThreadId()));
+            return null;
+        }).when(mediaCollector).collect(anyCollectionOf(ThreadDs.class));
+        threadWriter.write(new ThreadDs("1", "wg", "subject 1"));
+        threadWriter.write(new ThreadDs("2", "wg", "subject 2"));
+
+        // when
+        threadWriter.flush();
+
+        // then
+        assertEquals(Arrays.asList("1", "2"), collectedThreadIds);
+    }
+
+    @Test
+    public void testFlush_empty() {
+        // when
+        threadWriter.flush();
+
+        // then
+        verify(session, never()).query(anyString(), anyMapOf(String.class, Object.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testFlush_postsAndReplies() {
+        // given
+        ThreadDs thread = new ThreadDs("1", "wg", "subject");
+        PostDs post1 = new PostDs("author 1", new Date(0), "1", "comment 1", "file.jpg", "md5", "fileLink", "thumbnailLink", "jpg", 100, 200, "1 MB");
+        PostDs post2 = new PostDs("author 2", null, "2", "comment 2", null, null, null, null, null, null, null, null);
+        post2.addReplyTo(post1);
+        thread.addPost(post1);
+        thread.addPost(post2);
+        threadWriter.write(thread);
+
+        // when
+        threadWriter.flush();
+
+        // then
+        Map<String, Object> threadParameters = captureThreads(1).get(0).get(0);
+        List<Map<String, Object>> posts = (List<Map<String, Object>>) threadParameters.get("posts");
+        List<Map<String, Object>> replies = (List<Map<String, Object>>) threadParameters.get("replies");
+        assertEquals(2L, threadParameters.get("lastPostId"));
+        assertEquals(2, posts.size());
+        assertEquals(1, replies.size());
+        assertEquals("2", replies.get(0).get("from"));
+        assertEquals("1", replies.get(0).get("to"));
+
+        Map<String, Object> post1Parameters = posts.get(0).get("postId").equals("1") ? posts.get(0) : posts.get(1);
+        Map<String, Object> properties = (Map<String, Object>) post1Parameters.get("properties");
+        assertEquals("author 1", properties.get("author"));
+        assertEquals("1970-01-01T00:00:00.000Z", properties.get("date"));
+        assertEquals("comment 1", properties.get("comment"));
+        assertEquals("md5", properties.get("md5"));
+        assertEquals(100, properties.get("length"));
+    }
+
+    @Test
+    public void testFlush_failed() {
+        // given
+        RuntimeException testException = new RuntimeException("test");
+        stub(session.query(anyString(), anyMapOf(String.class, Object.class))).toThrow(testException);
+        threadWriter.write(new ThreadDs("1", "wg", "subject 1"));
+
+        // when
+        try {
+            threadWriter.flush();
+            fail();
+        } catch (RuntimeException ex) {
+            // then
+            assertSame(testException, ex);
+        }
+
+        // when
+        try {
+            threadWriter.flush();
+            fail();
+        } catch (RuntimeException ex) {
+            // then
+            assertSame(testException, ex);
+        }
+
+        // then
+        List<List<Map<String, Object>>> batches = captureThreads(2);
+        assertEquals(1, batches.get(0).size());
+        assertEquals(1, batches.get(1).size());
+        verify(knownThreads, never()).add(anyString(), anyString());
+        verify(mediaCollector, never()).collect(anyCollectionOf(ThreadDs.class));
+    }
+
+    @Test
+    public void testFlush_failedDropped() {
+        // given
+        stub(session.query(anyString(), anyMapOf(String.class, Object.class))).toThrow(new RuntimeException("test"));
+        threadWriter.write(new ThreadDs("1", "wg", "subject 1"));
+
+        // when
+        for (int i = 0; i < 2; i++) {
+            try {
+                threadWriter.flush();
+                fail();
+            } catch (RuntimeException ex) {
+                // expected
+            }
+        }
+        threadWriter.flush();
+
+        // then
+        assertEquals(0, threadWriter.getPending());
+        assertEquals(1, threadWriter.getDroppedBatches());
+        captureThreads(2);
+        verify(knownThreads, never()).add(anyString(), anyString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<List<Map<String, Object>>> captureThreads(int batches) {
+        verify(session, times(batches)).query(anyString(), parameters.capture());
+
+        return parameters.getAllValues().stream().map(p -> (List<Map<String, Object>>) p.get("threads")).collect(Collectors.toList());
+    }
+}
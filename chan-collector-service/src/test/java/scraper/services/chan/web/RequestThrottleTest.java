@@ -0,0 +1,95 @@
+package scraper.services.chan.web;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestThrottleTest {
+
+    private final RequestThrottle throttle = new RequestThrottle(5, "yuki.la=2, i.4cdn.org=0", 0.5, 5, 3, 100, 1000);
+
+    @Test
+    public void testHostRates() {
+        // then
+        assertEquals(2, throttle.getRate("yuki.la"), 0.0001);
+        assertEquals(0, throttle.getRate("i.4cdn.org"), 0.0001);
+        assertEquals(5, throttle.getRate("other.org"), 0.0001);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHostRates_invalid() {
+        // when
+        new RequestThrottle(5, "yuki.la:2", 0.5, 5, 3, 100, 1000);
+    }
+
+    @Test
+    public void testOnFailure_overloaded() {
+        // when
+        throttle.onFailure("yuki.la", 429, 0);
+        throttle.onFailure("other.org", 503, 0);
+
+        // then
+        assertEquals(1, throttle.getRate("yuki.la"), 0.0001);
+        assertEquals(2.5, throttle.getRate("other.org"), 0.0001);
+    }
+
+    @Test
+    public void testOnFailure_notOverloaded() {
+        // when
+        throttle.onFailure("yuki.la", 500, 0);
+        throttle.onFailure("yuki.la", 404, 0);
+
+        // then
+        assertEquals(2, throttle.getRate("yuki.la"), 0.0001);
+    }
+
+    @Test
+    public void testShouldRetry() {
+        // then
+        assertTrue(throttle.shouldRetry(1, 0, 0));
+        assertTrue(throttle.shouldRetry(1, 429, 0));
+        assertTrue(throttle.shouldRetry(1, 503, 1000));
+        assertTrue(throttle.shouldRetry(2, 500, 0));
+        assertTrue(throttle.shouldRetry(2, 502, 0));
+        assertTrue(throttle.shouldRetry(2, 504, 0));
+
+        assertFalse(throttle.shouldRetry(3, 503, 0));
+        assertFalse(throttle.shouldRetry(1, 503, 1001));
+        assertFalse(throttle.shouldRetry(1, 404, 0));
+        assertFalse(throttle.shouldRetry(1, 403, 0));
+        assertFalse(throttle.shouldRetry(1, 501, 0));
+    }
+
+    @Test
+    public void testComputeBackoff() {
+        for (int i = 0; i < 100; i++) {
+            // when
+            long first = throttle.computeBackoff(1, 0);
+            long third = throttle.computeBackoff(3, 0);
+            long tenth = throttle.computeBackoff(10, 0);
+            long retryAfter = throttle.computeBackoff(1, 700);
+
+            // then
+            assertTrue(first >= 0 && first <= 100);
+            assertTrue(third >= 0 && third <= 400);
+            assertTrue(tenth >= 0 && tenth <= 1000);
+            assertEquals(700, retryAfter);
+        }
+    }
+
+    @Test
+    public void testParseRetryAfter() {
+        // given
+        long now = 1476784800000L;
+
+        // then
+        assertEquals(0, RequestThrottle.parseRetryAfter(null, now));
+        assertEquals(120000, RequestThrottle.parseRetryAfter("120", now));
+        assertEquals(0, RequestThrottle.parseRetryAfter("-5", now));
+        assertEquals(30000, RequestThrottle.parseRetryAfter("Tue, 18 Oct 2016 10:00:30 GMT", now));
+        assertEquals(0, RequestThrottle.parseRetryAfter("Tue, 18 Oct 2016 09:00:00 GMT", now));
+        assertEquals(0, RequestThrottle.parseRetryAfter("soon", now));
+    }
+}
@@ -0,0 +1,95 @@
+package scraper.services.chan.web;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong(1000 * SECOND);
+
+    @Test
+    public void testReserve_burst() {
+        // given
+        TokenBucket bucket = new TokenBucket(2, 0.5, 3, clock::get);
+
+        // when
+        long[] waits = {bucket.reserve(), bucket.reserve(), bucket.reserve(), bucket.reserve(), bucket.reserve()};
+
+        // then
+        assertEquals(0, waits[0]);
+        assertEquals(0, waits[1]);
+        assertEquals(0, waits[2]);
+        assertEquals(SECOND / 2, waits[3]);
+        assertEquals(SECOND, waits[4]);
+    }
+
+    @Test
+    public void testReserve_refill() {
+        // given
+        TokenBucket bucket = new TokenBucket(2, 0.5, 1, clock::get);
+        bucket.reserve();
+
+        // when
+        clock.addAndGet(SECOND / 4);
+        long halfRefilled = bucket.reserve();
+        clock.addAndGet(10 * SECOND);
+        long refilled = bucket.reserve();
+
+        // then
+        assertEquals(SECOND / 4, halfRefilled);
+        assertEquals(0, refilled);
+    }
+
+    @Test
+    public void testOnThrottled() {
+        // given
+        TokenBucket bucket = new TokenBucket(4, 0.5, 4, clock::get);
+
+        // when
+        bucket.onThrottled(3 * SECOND);
+
+        // then
+        assertEquals(2, bucket.getRate(), 0.0001);
+        assertEquals(3 * SECOND + SECOND / 2, bucket.reserve());
+    }
+
+    @Test
+    public void testOnThrottled_minRate() {
+        // given
+        TokenBucket bucket = new TokenBucket(4, 0.5, 4, clock::get);
+
+        // when
+        for (int i = 0; i < 10; i++) {
+            bucket.onThrottled(0);
+        }
+
+        // then
+        assertEquals(0.5, bucket.getRate(), 0.0001);
+    }
+
+    @Test
+    public void testOnSuccess_recovers() {
+        // given
+        TokenBucket bucket = new TokenBucket(4, 0.5, 4, clock::get);
+        bucket.onThrottled(0);
+
+        // when
+        for (int i = 0; i < 5; i++) {
+            bucket.onSuccess();
+        }
+        double afterFiveSuccesses = bucket.getRate();
+        for (int i = 0; i < 100; i++) {
+            bucket.onSuccess();
+        }
+
+        // then
+        assertEquals(3, afterFiveSuccesses, 0.0001);
+        assertEquals(4, bucket.getRate(), 0.0001);
+    }
+}
@@ -0,0 +1,150 @@
+package scraper.services.chan.web;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import scraper.test.FileSystemRule;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+public class ValidatorCacheTest {
+
+    private static final String CACHE_FILE = "cache/validators.tsv";
+
+    @Rule
+    public final FileSystemRule rule = new FileSystemRule();
+
+    private FileSystem fs;
+
+    @Before
+    public void setUp() {
+        fs = rule.getFileSystem();
+    }
+
+    @Test
+    public void testGet_missing() {
+        // given
+        ValidatorCache cache = new ValidatorCache(CACHE_FILE, 10, fs);
+
+        // when
+        PageValidators validators = cache.get("http://page/1");
+
+        // then
+        assertSame(PageValidators.NONE, validators);
+    }
+
+    @Test
+    public void testPut() {
+        // given
+        ValidatorCache cache = new ValidatorCache(CACHE_FILE, 10, fs);
+
+        // when
+        cache.put("http://page/1", new PageValidators("\"a\"", null));
+        cache.put("http://page/2", new PageValidators(null, "Sat, 17 Oct 2026 10:00:00 GMT"));
+
+        // then
+        assertEquals(new PageValidators("\"a\"", null), cache.get("http://page/1"));
+        assertEquals(new PageValidators(null, "Sat, 17 Oct 2026 10:00:00 GMT"), cache.get("http://page/2"));
+    }
+
+    @Test
+    public void testPut_emptyRemoves() {
+        // given
+        ValidatorCache cache = new ValidatorCache(CACHE_FILE, 10, fs);
+        cache.put("http://page/1", new PageValidators("\"a\"", null));
+
+        // when
+        cache.put("http://page/1", PageValidators.NONE);
+
+        // then
+        assertSame(PageValidators.NONE, cache.get("http://page/1"));
+    }
+
+    @Test
+    public void testPut_evictsLeastRecentlyUsed() {
+        // given
+        ValidatorCache cache = new ValidatorCache(CACHE_FILE, 2, fs);
+        cache.put("http://page/1", new PageValidators("\"a\"", null));
+        cache.put("http://page/2", new PageValidators("\"b\"", null));
+        cache.get("http://page/1");
+
+        // when
+        cache.put("http://page/3", new PageValidators("\"c\"", null));
+
+        // then
+        assertEquals(new PageValidators("\"a\"", null), cache.get("http://page/1"));
+        assertSame(PageValidators.NONE, cache.get("http://page/2"));
+        assertEquals(new PageValidators("\"c\"", null), cache.get("http://page/3"));
+    }
+
+    @Test
+    public void testSave_reload() throws IOException {
+        // given
+        ValidatorCache cache = new ValidatorCache(CACHE_FILE, 10, fs);
+        cache.put("http://page/1", new PageValidators("\"a\"", "Sat, 17 Oct 2026 10:00:00 GMT"));
+        cache.put("http://page/2", new PageValidators(null, "Sun, 18 Oct 2026 10:00:00 GMT"));
+
+        // when
+        cache.save();
+        ValidatorCache reloaded = new ValidatorCache(CACHE_FILE, 10, fs);
+
+        // then
+        assertEquals(new PageValidators("\"a\"", "Sat, 17 Oct 2026 10:00:00 GMT"), reloaded.get("http://page/1"));
+        assertEquals(new PageValidators(null, "Sun, 18 Oct 2026 10:00:00 GMT"), reloaded.get("http://page/2"));
+        assertEquals(1, countFiles("cache"));
+    }
+
+    @Test
+    public void testSave_notChanged() throws IOException {
+        // given
+        ValidatorCache cache = new ValidatorCache(CACHE_FILE, 10, fs);
+
+        // when
+        cache.save();
+
+        // then
+        assertFalse(Files.exists(fs.getPath(CACHE_FILE)));
+    }
+
+    @Test
+    public void testLoad_invalidLinesSkipped() throws IOException {
+        // given
+        Path cacheFile = fs.getPath(CACHE_FILE);
+        Files.createDirectories(cacheFile.getParent());
+        Files.write(cacheFile, Arrays.asList("http://page/1\t\"a\"\t", "garbage", "http://page/2\t\tSat, 17 Oct 2026 10:00:00 GMT"), StandardCharsets.UTF_8);
+
+        // when
+        ValidatorCache cache = new ValidatorCache(CACHE_FILE, 10, fs);
+
+        // then
+        assertEquals(new PageValidators("\"a\"", null), cache.get("http://page/1"));
+        assertEquals(new PageValidators(null, "Sat, 17 Oct 2026 10:00:00 GMT"), cache.get("http://page/2"));
+    }
+
+    @Test
+    public void testPut_notStorableValueIgnored() throws IOException {
+        // given
+        ValidatorCache cache = new ValidatorCache(CACHE_FILE, 10, fs);
+
+        // when
+        cache.put("http://page/1", new PageValidators("\"a\tb\"", null));
+        cache.save();
+
+        // then
+        assertSame(PageValidators.NONE, cache.get("http://page/1"));
+        assertFalse(Files.exists(fs.getPath(CACHE_FILE)));
+    }
+
+    private long countFiles(String dir) throws IOException {
+        return Files.list(fs.getPath(dir)).count();
+    }
+}
@@ -0,0 +1,459 @@
+package scraper.services.chan.web;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.jsoup.HttpStatusException;
+import org.jsoup.nodes.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WebServiceTest {
+
+    private static final String PAGE = "<html><head><title>Test page</title></head><body><p>zażółć</p></body></html>";
+
+    private static final String ETAG = "\"5f1a-3c\"";
+
+    private static final String LAST_MODIFIED = "Sat, 17 Oct 2026 10:00:00 GMT";
+
+    private final List<HttpExchange> exchanges = new CopyOnWriteArrayList<>();
+
+    private final List<Integer> clientPorts = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private HttpServer server;
+
+    private WebService webService;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/page", exchange -> respond(exchange, 200, PAGE.getBytes(StandardCharsets.UTF_8), false));
+        server.createContext("/gzip", exchange -> respond(exchange, 200, gzip(PAGE.getBytes(StandardCharsets.UTF_8)), true));
+        server.createContext("/missing", exchange -> respond(exchange, 404, new byte[0], false));
+        server.createContext("/conditional", this::respondConditional);
+        server.createContext("/overloaded", exchange -> respondFailing(exchange, 503, "Retry-After", "0"));
+        server.createContext("/throttled", exchange -> respondFailing(exchange, 429, "Retry-After", "0"));
+        server.createContext("/error", exchange -> respondFailing(exchange, 500, null, null));
+        server.createContext("/throttled-long", exchange -> respondFailing(exchange, 429, "Retry-After", "3600"));
+        server.createContext("/unconditional-not-modified", exchange -> respond(exchange, 304, new byte[0], false));
+        server.createContext("/slow", this::respondSlow);
+        server.start();
+
+        webService = new WebService("test-agent", "http://referrer/", 5000, 5000, 2, 10, new RequestThrottle(0, "", 0, 1, 3, 1, 10), meterRegistry);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        webService.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testGetDocument() throws IOException {
+        // when
+        Document document = webService.getDocument(url("/page"));
+
+        // then
+        assertEquals("Test page", document.title());
+        assertEquals("zażółć", document.select("p").text());
+        assertEquals(url("/page"), document.baseUri());
+        assertEquals("test-agent", exchanges.get(0).getRequestHeaders().getFirst("User-Agent"));
+        assertEquals("http://referrer/", exchanges.get(0).getRequestHeaders().getFirst("Referer"));
+    }
+
+    @Test
+    public void testGetDocument_gzip() throws IOException {
+        // when
+        Document document = webService.getDocument(url("/gzip"));
+
+        // then
+        assertEquals("Test page", document.title());
+        assertTrue(exchanges.get(0).getRequestHeaders().getFirst("Accept-Encoding").contains("gzip"));
+    }
+
+    @Test
+    public void testGetDocument_notFound() throws IOException {
+        try {
+            // when
+            webService.getDocument(url("/missing"));
+            fail();
+        } catch (HttpStatusException ex) {
+            // then
+            assertEquals(404, ex.getStatusCode());
+            assertEquals(url("/missing"), ex.getUrl());
+        }
+    }
+
+    @Test
+    public void testGetPage() throws IOException {
+        // when
+        WebPage page = webService.getPage(url("/page"));
+
+        // then
+        assertEquals(url("/page"), page.getUrl());
+        assertEquals(PAGE, page.getBody());
+        assertEquals(PAGE.getBytes(StandardCharsets.UTF_8).length, page.getSize());
+        assertEquals(1, meterRegistry.get("scraper.web.fetch").tags("host", "localhost", "outcome", "success").timer().count());
+        assertEquals(page.getSize(), meterRegistry.get("scraper.web.response.size").summary().totalAmount(), 0);
+    }
+
+    @Test
+    public void testDownload() throws IOException {
+        // given
+        byte[] expected = PAGE.getBytes(StandardCharsets.UTF_8);
+        List<Long> lengths = new ArrayList<>();
+
+        // when
+        byte[] body = webService.download(url("/page"), (content, contentLength) -> {
+            lengths.add(contentLength);
+            return StreamUtils.copyToByteArray(content);
+        });
+
+        // then
+        assertArrayEquals(expected, body);
+        assertEquals(Collections.singletonList((long) expected.length), lengths);
+        assertEquals(1, meterRegistry.get("scraper.web.fetch").tags("host", "localhost", "outcome", "success").timer().count());
+    }
+
+    @Test
+    public void testDownload_notFound() throws IOException {
+        // when
+        try {
+            webService.download(url("/missing"), (content, contentLength) -> {
+                fail();
+                return null;
+            });
+            fail();
+        } catch (HttpStatusException ex) {
+            // then
+            assertEquals(404, ex.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testGetDocument_keepAlive() throws IOException {
+        // when
+        for (int i = 0; i < 5; i++) {
+            webService.getDocument(url("/page"));
+        }
+
+        // then
+        Set<Integer> connections = new HashSet<>(clientPorts);
+        assertEquals(5, clientPorts.size());
+        assertEquals(1, connections.size());
+    }
+
+    @Test
+    public void testGetDocumentConditional_noValidators() throws IOException {
+        // when
+        ConditionalDocument document = webService.getDocument(url("/conditional"), PageValidators.NONE);
+
+        // then
+        assertTrue(document.isModified());
+        assertEquals("Test page", document.getDocument().title());
+        assertEquals(new PageValidators(ETAG, LAST_MODIFIED), document.getValidators());
+        assertNull(exchanges.get(0).getRequestHeaders().getFirst("If-None-Match"));
+        assertNull(exchanges.get(0).getRequestHeaders().getFirst("If-Modified-Since"));
+    }
+
+    @Test
+    public void testGetDocumentConditional_notModified() throws IOException {
+        // when
+        ConditionalDocument document = webService.getDocument(url("/conditional"), new PageValidators(ETAG, LAST_MODIFIED));
+
+        // then
+        assertFalse(document.isModified());
+        assertNull(document.getDocument());
+        assertEquals(0, document.getSize());
+        assertEquals(1, meterRegistry.get("scraper.web.fetch").tags("outcome", "not_modified").timer().count());
+        assertEquals(new PageValidators(ETAG, LAST_MODIFIED), document.getValidators());
+        assertEquals(ETAG, exchanges.get(0).getRequestHeaders().getFirst("If-None-Match"));
+        assertEquals(LAST_MODIFIED, exchanges.get(0).getRequestHeaders().getFirst("If-Modified-Since"));
+    }
+
+    @Test
+    public void testGetDocumentConditional_modified() throws IOException {
+        // when
+        ConditionalDocument document = webService.getDocument(url("/conditional"), new PageValidators("\"old\"", null));
+
+        // then
+        assertTrue(document.isModified());
+        assertEquals("Test page", document.getDocument().title());
+        assertEquals(new PageValidators(ETAG, LAST_MODIFIED), document.getValidators());
+        assertNull(exchanges.get(0).getRequestHeaders().getFirst("If-Modified-Since"));
+    }
+
+    @Test
+    public void testGetDocument_overloadedRetried() throws IOException {
+        // given
+        failuresLeft.set(2);
+
+        // when
+        Document document = webService.getDocument(url("/overloaded"));
+
+        // then
+        assertEquals("Test page", document.title());
+        assertEquals(3, exchanges.size());
+        assertEquals(2, meterRegistry.get("scraper.web.retries").counter().count(), 0);
+        assertEquals(1, meterRegistry.get("scraper.web.fetch").timer().count());
+    }
+
+    @Test
+    public void testGetDocument_serverErrorRetried() throws IOException {
+        // given
+        failuresLeft.set(1);
+
+        // when
+        Document document = webService.getDocument(url("/error"));
+
+        // then
+        assertEquals("Test page", document.title());
+        assertEquals(2, exchanges.size());
+    }
+
+    @Test
+    public void testGetDocument_retriesExhausted() throws IOException {
+        // given
+        failuresLeft.set(3);
+
+        try {
+            // when
+            webService.getDocument(url("/throttled"));
+            fail();
+        } catch (HttpStatusException ex) {
+            // then
+            assertEquals(429, ex.getStatusCode());
+            assertEquals(3, exchanges.size());
+            assertEquals(1, meterRegistry.get("scraper.web.fetch").tags("outcome", "error").timer().count());
+        }
+    }
+
+    @Test
+    public void testGetDocument_retryAfterTooLong() throws IOException {
+        // given
+        failuresLeft.set(1);
+
+        try {
+            // when
+            webService.getDocument(url("/throttled-long"));
+            fail();
+        } catch (HttpStatusException ex) {
+            // then
+            assertEquals(429, ex.getStatusCode());
+            assertEquals(1, exchanges.size());
+        }
+    }
+
+    @Test
+    public void testGetDocument_notFoundNotRetried() throws IOException {
+        try {
+            // when
+            webService.getDocument(url("/missing"));
+            fail();
+        } catch (HttpStatusException ex) {
+            // then
+            assertEquals(1, exchanges.size());
+        }
+    }
+
+    @Test
+    public void testGetDocument_notModifiedWithoutValidators() throws IOException {
+        try {
+            // when
+            webService.getDocument(url("/unconditional-not-modified"));
+            fail();
+        } catch (HttpStatusException ex) {
+            // then
+            assertEquals(304, ex.getStatusCode());
+            assertEquals(1, exchanges.size());
+        }
+    }
+
+    @Test
+    public void testDownload_notModifiedWithoutValidators() throws IOException {
+        try {
+            // when
+            webService.download(url("/unconditional-not-modified"), (body, contentLength) -> "handled");
+            fail();
+        } catch (HttpStatusException ex) {
+            // then
+            assertEquals(304, ex.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testGetDocument_connectionRefusedNotRetried() throws IOException {
+        // given
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+
+        try {
+            // when
+            webService.getDocument(String.format("http://localhost:%d/page", closedPort));
+            fail();
+        } catch (HttpStatusException ex) {
+            fail();
+        } catch (IOException ex) {
+            // then
+            assertEquals(0, meterRegistry.find("scraper.web.retries").counters().size());
+        }
+    }
+
+    @Test
+    public void testGetDocument_timeoutRetried() throws IOException {
+        // given
+        WebService impatientService = new WebService("test-agent", "http://referrer/", 300, 300, 2, 10, new RequestThrottle(0, "", 0, 1, 3, 1, 10), meterRegistry);
+        failuresLeft.set(1);
+
+        try {
+            // when
+            Document document = impatientService.getDocument(url("/slow"));
+
+            // then
+            assertEquals("Test page", document.title());
+            assertEquals(1, meterRegistry.get("scraper.web.retries").counter().count(), 0);
+        } finally {
+            impatientService.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testDownload_poolExhausted() throws IOException {
+        // given
+        WebService impatientService = new WebService("test-agent", "http://referrer/", 300, 300, 1, 1, new RequestThrottle(0, "", 0, 1, 3, 1, 10), meterRegistry);
+
+        try {
+            // when
+            impatientService.download(url("/page"), (content, contentLength) -> impatientService.getDocument(url("/page")));
+            fail();
+        } catch (ConnectionPoolTimeoutException ex) {
+            // then
+            assertEquals(1, exchanges.size());
+        } finally {
+            impatientService.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testDownload_poolWaitLongerThanTimeout() throws Exception {
+        // given
+        WebService patientService = new WebService("test-agent", "http://referrer/", 300, 5000, 1, 1, new RequestThrottle(0, "", 0, 1, 3, 1, 10), meterRegistry);
+        FutureTask<Document> queued = new FutureTask<>(() -> patientService.getDocument(url("/page")));
+
+        try {
+            // when
+            patientService.download(url("/page"), (content, contentLength) -> {
+                new Thread(queued).start();
+                StreamUtils.copyToByteArray(content);
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+                return null;
+            });
+
+            // then
+            assertEquals("Test page", queued.get().title());
+            assertEquals(2, exchanges.size());
+        } finally {
+            patientService.close();
+        }
+    }
+
+    private void respondSlow(HttpExchange exchange) throws IOException {
+        if (failuresLeft.getAndDecrement() <= 0) {
+            respond(exchange, 200, PAGE.getBytes(StandardCharsets.UTF_8), false);
+            return;
+        }
+
+        // late response is sent by another thread, so the server keeps handling following requests
+        new Thread(() -> {
+            try {
+                Thread.sleep(2000);
+                respond(exchange, 200, PAGE.getBytes(StandardCharsets.UTF_8), false);
+            } catch (InterruptedException | IOException ex) {
+                exchange.close();
+            }
+        }).start();
+    }
+
+    private void respondFailing(HttpExchange exchange, int status, String header, String value) throws IOException {
+        if (failuresLeft.getAndDecrement() <= 0) {
+            respond(exchange, 200, PAGE.getBytes(StandardCharsets.UTF_8), false);
+            return;
+        }
+
+        if (header != null) {
+            exchange.getResponseHeaders().add(header, value);
+        }
+        // test server drops connection after error response, client must not reuse it for the retry
+        exchange.getResponseHeaders().add("Connection", "close");
+        respond(exchange, status, new byte[0], false);
+    }
+
+    private void respondConditional(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("ETag", ETAG);
+        exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+        boolean notModified = ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"));
+        respond(exchange, notModified ? 304 : 200, notModified ? new byte[0] : PAGE.getBytes(StandardCharsets.UTF_8), false);
+    }
+
+    private void respond(HttpExchange exchange, int status, byte[] body, boolean gzip) throws IOException {
+        exchanges.add(exchange);
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+        if (gzip) {
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private String url(String path) {
+        return String.format("http://localhost:%d%s", server.getAddress().getPort(), path);
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,113 @@
+package scraper.benchmark;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.springframework.util.StreamUtils;
+import scraper.exception.UnexpectedException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Corpus of saved yuki.la pages used by benchmarks.
+ * <p>
+ * Small and medium threads are saved pages. Large and huge threads are built from the medium one by repeating its first reply with new post ids, as saved threads of
+ * that size are not available.
+ */
+public final class Corpus {
+
+    public static final String BASE_URI = "https://yuki.la/wg/";
+
+    private static final Pattern POST_CONTAINER_START = Pattern.compile("<div class=\"postContainer");
+
+    private static final String TEMPLATE_POST_ID = "6480524";
+
+    private Corpus() {
+    }
+
+    /**
+     * Thread sizes available in the corpus.
+     */
+    public enum ThreadSize {
+        SMALL(5),
+        MEDIUM(9),
+        LARGE(300),
+        HUGE(1500);
+
+        private final int posts;
+
+        ThreadSize(int posts) {
+            this.posts = posts;
+        }
+
+        public int getPosts() {
+            return posts;
+        }
+    }
+
+    /**
+     * Gets html of the thread of given size.
+     *
+     * @param size thread size
+     * @return thread html
+     */
+    public static String getThreadHtml(ThreadSize size) {
+        switch (size) {
+            case SMALL:
+                return read("/corpus/thread-small.html");
+            case MEDIUM:
+                return read("/corpus/thread-medium.html");
+            default:
+                return buildThread(read("/corpus/thread-medium.html"), size.getPosts() - ThreadSize.MEDIUM.getPosts());
+        }
+    }
+
+    /**
+     * Gets DOM of the thread of given size.
+     *
+     * @param size thread size
+     * @return thread document
+     */
+    public static Document getThread(ThreadSize size) {
+        return Jsoup.parse(getThreadHtml(size), BASE_URI);
+    }
+
+    /**
+     * Gets DOM of the saved board page.
+     *
+     * @return page document
+     */
+    public static Document getPage() {
+        return Jsoup.parse(read("/corpus/page.html"), BASE_URI);
+    }
+
+    private static String buildThread(String html, int additionalPosts) {
+        Matcher matcher = POST_CONTAINER_START.matcher(html);
+        if (!matcher.find() || !matcher.find()) {
+            throw new UnexpectedException("Thread template has no replies");
+        }
+        int replyStart = matcher.start();
+        int replyEnd = matcher.find() ? matcher.start() : html.length();
+        String reply = html.substring(replyStart, replyEnd);
+
+        StringBuilder thread = new StringBuilder(html.length() + additionalPosts * reply.length());
+        thread.append(html, 0, replyStart);
+        for (int i = 0; i < additionalPosts; i++) {
+            thread.append(reply.replace(TEMPLATE_POST_ID, String.valueOf(7000000 + i)));
+        }
+        thread.append(html, replyStart, html.length());
+
+        return thread.toString();
+    }
+
+    private static String read(String path) {
+        try (InputStream in = Corpus.class.getResourceAsStream(path)) {
+            return StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new UnexpectedException("Unable to read corpus file %s", ex, path);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package scraper.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link FileUtils#computeSHA2(Path)} for file sizes typical for thumbnails, images and videos.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileUtilsBenchmark {
+
+    @Param({"16384", "1048576", "8388608"})
+    public int fileSize;
+
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] content = new byte[fileSize];
+        new Random(fileSize).nextBytes(content);
+
+        file = Files.createTempFile("benchmark", ".bin");
+        Files.write(file, content);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public String computeSHA2() throws IOException, NoSuchAlgorithmException {
+        return FileUtils.computeSHA2(file);
+    }
+}
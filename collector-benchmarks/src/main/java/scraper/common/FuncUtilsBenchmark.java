@@ -0,0 +1,53 @@
+package scraper.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link FuncUtils} mapping of post id lists of thread sizes found in the corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FuncUtilsBenchmark {
+
+    @Param({"5", "300", "1500"})
+    public int size;
+
+    private List<String> postIds;
+
+    @Setup
+    public void setUp() {
+        postIds = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            postIds.add(">>" + (6480000 + i));
+        }
+    }
+
+    @Benchmark
+    public List<String> map() {
+        return FuncUtils.map(postIds, id -> id.substring(2));
+    }
+
+    @Benchmark
+    public Set<String> mapSet() {
+        return FuncUtils.mapSet(postIds, id -> id.substring(2));
+    }
+}
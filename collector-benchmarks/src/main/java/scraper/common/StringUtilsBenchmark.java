@@ -0,0 +1,49 @@
+package scraper.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Measures {@link StringUtils} methods used for every parsed post, on values taken from the corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringUtilsBenchmark {
+
+    private static final String SIZE_REGEX = ".* (\\d+)x(\\d+).*";
+
+    private static final Pattern SIZE_PATTERN = Pattern.compile(SIZE_REGEX);
+
+    private final String fileText = "File: hugemericans.jpg (424 KB, 1920x1080)";
+
+    private final String mobileFileInfo = "424 KB JPG";
+
+    @Benchmark
+    public String getSingleMatch_regex() {
+        return StringUtils.getSingleMatch(fileText, SIZE_REGEX, 1);
+    }
+
+    @Benchmark
+    public String getSingleMatch_pattern() {
+        return StringUtils.getSingleMatch(fileText, SIZE_PATTERN, 1);
+    }
+
+    @Benchmark
+    public String splitAndJoin() {
+        return StringUtils.splitAndJoin(mobileFileInfo, " ", "", 0, 1);
+    }
+}
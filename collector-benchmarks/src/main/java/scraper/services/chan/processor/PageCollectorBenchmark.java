@@ -0,0 +1,41 @@
+package scraper.services.chan.processor;
+
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import scraper.benchmark.Corpus;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures extraction of thread ids from the board page DOM by {@link PageCollector}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageCollectorBenchmark {
+
+    private Document pageDom;
+
+    @Setup
+    public void setUp() {
+        pageDom = Corpus.getPage();
+    }
+
+    @Benchmark
+    public Set<String> extractThreadIds() {
+        return PageCollector.extractThreadIds(pageDom);
+    }
+}
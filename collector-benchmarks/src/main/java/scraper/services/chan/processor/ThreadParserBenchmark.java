@@ -0,0 +1,127 @@
+package scraper.services.chan.processor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import scraper.benchmark.Corpus;
+import scraper.benchmark.Corpus.ThreadSize;
+import scraper.common.StringUtils;
+import scraper.services.chan.model.ThreadDs;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static scraper.common.FuncUtils.map;
+
+/**
+ * Measures posts parsed per second by {@link ThreadParser}, reported as <tt>posts</tt> secondary result.
+ * <p>
+ * <tt>legacyConversions</tt> converts post date and file size the way parser did before, compiling regular expression and creating date format for every post.
+ * <tt>conversions</tt> does the same with precompiled pattern and shared formatter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThreadParserBenchmark {
+
+    private static final String SIZE_REGEX = ".* (\\d+)x(\\d+).*";
+
+    private static final Pattern SIZE_PATTERN = Pattern.compile(SIZE_REGEX);
+
+    @Param({"SMALL", "MEDIUM", "LARGE", "HUGE"})
+    public ThreadSize size;
+
+    private final ThreadParser parser = new ThreadParser(new SimpleMeterRegistry());
+
+    private final Settings settings = new Settings("wg", null);
+
+    private String threadHtml;
+
+    private Document threadDom;
+
+    private int posts;
+
+    private List<String> dates;
+
+    private List<String> fileTexts;
+
+    @State(Scope.Thread)
+    @AuxCounters
+    public static class PostCounter {
+
+        public long posts;
+    }
+
+    @Setup
+    public void setUp() {
+        threadHtml = Corpus.getThreadHtml(size);
+        threadDom = Corpus.getThread(size);
+
+        List<PostElements> postElements = map(threadDom.select("div.post"), PostElements::extract);
+        posts = postElements.size();
+        dates = map(postElements, post -> post.getDateTime().text());
+        fileTexts = map(postElements, post -> textOf(post.getFileText()));
+    }
+
+    @Benchmark
+    public ThreadDs parseThread(PostCounter counter) throws IOException {
+        counter.posts += posts;
+        return parser.parseThread(threadDom, settings);
+    }
+
+    @Benchmark
+    public ThreadDs parseThreadStreaming(PostCounter counter) throws IOException {
+        counter.posts += posts;
+        return parser.parseThread(threadHtml, Corpus.BASE_URI, settings);
+    }
+
+    @Benchmark
+    public void legacyConversions(PostCounter counter, Blackhole blackhole) {
+        for (int i = 0; i < posts; i++) {
+            try {
+                blackhole.consume(new SimpleDateFormat("MM/dd/yy(EEE)HH:mm:ss", Locale.ENGLISH).parse(dates.get(i)));
+            } catch (ParseException e) {
+                blackhole.consume(new Date(0L));
+            }
+            blackhole.consume(StringUtils.getSingleMatch(fileTexts.get(i), SIZE_REGEX, 1));
+            blackhole.consume(StringUtils.getSingleMatch(fileTexts.get(i), SIZE_REGEX, 2));
+        }
+        counter.posts += posts;
+    }
+
+    @Benchmark
+    public void conversions(PostCounter counter, Blackhole blackhole) {
+        for (int i = 0; i < posts; i++) {
+            blackhole.consume(ThreadParser.parseDate(dates.get(i)));
+            blackhole.consume(StringUtils.getSingleMatch(fileTexts.get(i), SIZE_PATTERN, 1));
+            blackhole.consume(StringUtils.getSingleMatch(fileTexts.get(i), SIZE_PATTERN, 2));
+        }
+        counter.posts += posts;
+    }
+
+    private static String textOf(Element element) {
+        return element == null ? "" : element.text();
+    }
+}
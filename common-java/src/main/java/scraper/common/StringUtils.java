@@ -36,7 +36,36 @@ public final class StringUtils {
      * @return value of the given group or {@code defaultValue}
      */
     public static String getSingleMatch(String text, String regex, int group, String defaultValue) {
-        Matcher m = Pattern.compile(regex).matcher(text);
+        return getSingleMatch(text, Pattern.compile(regex), group, defaultValue);
+    }
+
+    /**
+     * Returns single match from given {@code text}.
+     * <p>
+     * Prefer this method over {@link #getSingleMatch(String, String, int)} for frequently used regular expressions, as compiled {@code pattern} can be reused.
+     *
+     * @param text    text to match
+     * @param pattern compiled regular expression to use
+     * @param group   index of the group in regular expression which value should be returned
+     * @return value of the given group or <tt>null</tt>
+     */
+    public static String getSingleMatch(String text, Pattern pattern, int group) {
+        return getSingleMatch(text, pattern, group, null);
+    }
+
+    /**
+     * Returns single match from given {@code text}.
+     * <p>
+     * Prefer this method over {@link #getSingleMatch(String, String, int, String)} for frequently used regular expressions, as compiled {@code pattern} can be reused.
+     *
+     * @param text         text to match
+     * @param pattern      compiled regular expression to use
+     * @param group        index of the group in regular expression which value should be returned
+     * @param defaultValue default value to return in case regular expression do not match text. May be <tt>null</tt>
+     * @return value of the given group or {@code defaultValue}
+     */
+    public static String getSingleMatch(String text, Pattern pattern, int group, String defaultValue) {
+        Matcher m = pattern.matcher(text);
         if (m.matches()) {
             return m.group(group);
         }
@@ -0,0 +1,145 @@
+package scraper.common.structure;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe Bloom filter of strings.
+ * <p>
+ * Filter answers if given string might have been added. Negative answer is always correct, positive answer is wrong with probability that grows with the number of added
+ * elements, see {@link #getFalsePositiveRate()}. Filter is sized for expected number of elements and desired false positive rate.
+ */
+public class BloomFilter {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final AtomicLongArray bits;
+
+    private final long bitSize;
+
+    private final int hashFunctions;
+
+    private final AtomicLong insertions = new AtomicLong();
+
+    /**
+     * Creates new empty filter.
+     *
+     * @param expectedInsertions expected number of elements. Must be positive
+     * @param falsePositiveRate  desired false positive rate when filter contains {@code expectedInsertions} elements. Must be in range <tt>(0, 1)</tt>
+     * @throws IllegalArgumentException if arguments are out of range
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("Expected insertions must be positive");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be in range (0, 1)");
+        }
+
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE, (optimalBits + Long.SIZE - 1) / Long.SIZE);
+        this.bits = new AtomicLongArray(words);
+        this.bitSize = (long) words * Long.SIZE;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * Adds {@code value} to the filter.
+     *
+     * @param value value to add
+     */
+    public void put(String value) {
+        long hash = hash(value);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashFunctions; i++) {
+            setBit(index(hash1 + (long) i * hash2));
+        }
+        insertions.incrementAndGet();
+    }
+
+    /**
+     * Checks if {@code value} might have been added to the filter.
+     *
+     * @param value value to check
+     * @return <tt>false</tt> if value was definitely not added. <tt>true</tt> if value might have been added
+     */
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashFunctions; i++) {
+            if (!getBit(index(hash1 + (long) i * hash2))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets number of {@link #put(String)} calls made so far. Duplicates are counted.
+     *
+     * @return number of insertions
+     */
+    public long getInsertions() {
+        return insertions.get();
+    }
+
+    /**
+     * Gets memory used by filter bits.
+     *
+     * @return size in bytes
+     */
+    public long getMemoryFootprint() {
+        return bitSize / Byte.SIZE;
+    }
+
+    /**
+     * Estimates current false positive rate, based on the number of insertions made so far.
+     *
+     * @return probability that {@link #mightContain(String)} returns <tt>true</tt> for value that was not added
+     */
+    public double getFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashFunctions * insertions.get() / bitSize), hashFunctions);
+    }
+
+    private long index(long combinedHash) {
+        return (combinedHash & Long.MAX_VALUE) % bitSize;
+    }
+
+    private void setBit(long index) {
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        long current;
+        do {
+            current = bits.get(word);
+            if ((current & mask) != 0) {
+                return;
+            }
+        } while (!bits.compareAndSet(word, current, current | mask));
+    }
+
+    private boolean getBit(long index) {
+        return (bits.get((int) (index >>> 6)) & (1L << index)) != 0;
+    }
+
+    private static long hash(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+}
@@ -2,6 +2,8 @@ package scraper.common;
 
 import org.junit.Test;
 
+import java.util.regex.Pattern;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
@@ -69,6 +71,25 @@ public class StringUtilsTest {
         assertEquals("123", StringUtils.getSingleMatch("foo=aaa bar=123", "foo=([a-zA-Z]+) bar=([0-9]+)", 2, "default"));
     }
 
+    @Test
+    public void testGetSingleMatch_pattern() {
+        Pattern pattern = Pattern.compile("foo=([a-zA-Z]+) bar=([0-9]+)");
+
+        assertEquals("foo=aaa bar=123", StringUtils.getSingleMatch("foo=aaa bar=123", pattern, 0));
+        assertEquals("aaa", StringUtils.getSingleMatch("foo=aaa bar=123", pattern, 1));
+        assertEquals("123", StringUtils.getSingleMatch("foo=aaa bar=123", pattern, 2));
+        assertEquals("bbb", StringUtils.getSingleMatch("foo=bbb bar=456", pattern, 1));
+        assertNull(StringUtils.getSingleMatch("foobar", pattern, 1));
+    }
+
+    @Test
+    public void testGetSingleMatch_patternDefaultValue() {
+        Pattern pattern = Pattern.compile("foo=([a-zA-Z]+) bar=([0-9]+)");
+
+        assertEquals("aaa", StringUtils.getSingleMatch("foo=aaa bar=123", pattern, 1, "default"));
+        assertEquals("default", StringUtils.getSingleMatch("foobar", pattern, 1, "default"));
+    }
+
     @Test
     public void testBytesToText() {
         assertEquals("", StringUtils.bytesToHex(new byte[]{}));
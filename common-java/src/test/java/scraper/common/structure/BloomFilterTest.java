@@ -0,0 +1,78 @@
+package scraper.common.structure;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BloomFilterTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_invalidInsertions() {
+        new BloomFilter(0, 0.01);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_invalidFalsePositiveRate() {
+        new BloomFilter(100, 1);
+    }
+
+    @Test
+    public void testMightContain_empty() {
+        // given
+        BloomFilter filter = new BloomFilter(100, 0.01);
+
+        // when then
+        assertFalse(filter.mightContain("6353085"));
+        assertEquals(0, filter.getInsertions());
+        assertEquals(0, filter.getFalsePositiveRate(), 0);
+    }
+
+    @Test
+    public void testMightContain_noFalseNegatives() {
+        // given
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+
+        // when
+        for (int i = 0; i < 10000; i++) {
+            filter.put(String.valueOf(6000000 + i));
+        }
+
+        // then
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain(String.valueOf(6000000 + i)));
+        }
+        assertEquals(10000, filter.getInsertions());
+    }
+
+    @Test
+    public void testMightContain_falsePositiveRate() {
+        // given
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put(String.valueOf(6000000 + i));
+        }
+
+        // when
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain(String.valueOf(7000000 + i))) {
+                falsePositives++;
+            }
+        }
+
+        // then
+        assertEquals(0.01, filter.getFalsePositiveRate(), 0.002);
+        assertTrue(falsePositives < 2000);
+    }
+
+    @Test
+    public void testGetMemoryFootprint() {
+        // given
+        BloomFilter filter = new BloomFilter(1000000, 0.01);
+
+        // when then
+        assertEquals(1198136, filter.getMemoryFootprint(), 64);
+    }
+}
@@ -0,0 +1,43 @@
+package scraper.services.common.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Binds meters of the beans to the registry, once all singletons are created.
+ * <p>
+ * Every {@link ExecutorService}, {@link ThreadPoolTaskExecutor} and {@link ThreadPoolTaskScheduler} bean gets pool size, active threads, queue size and completed tasks
+ * gauges, tagged with bean name. Every {@link MeterBinder} bean is bound as is. Only already created singletons are inspected, so no bean is initialized early.
+ */
+public class MeterBinderRegistrar implements SmartInitializingSingleton {
+
+    private final ListableBeanFactory beanFactory;
+
+    private final MeterRegistry registry;
+
+    public MeterBinderRegistrar(ListableBeanFactory beanFactory, MeterRegistry registry) {
+        this.beanFactory = beanFactory;
+        this.registry = registry;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        beanFactory.getBeansOfType(ExecutorService.class, false, false).forEach(this::bindExecutor);
+        beanFactory.getBeansOfType(ThreadPoolTaskExecutor.class, false, false).forEach((name, executor) -> bindExecutor(name, executor.getThreadPoolExecutor()));
+        beanFactory.getBeansOfType(ThreadPoolTaskScheduler.class, false, false).forEach((name, scheduler) -> bindExecutor(name, scheduler.getScheduledThreadPoolExecutor()));
+        beanFactory.getBeansOfType(MeterBinder.class, false, false).values().forEach(binder -> binder.bindTo(registry));
+    }
+
+    private void bindExecutor(String name, ExecutorService executor) {
+        new ExecutorServiceMetrics(executor, name, Collections.<Tag>emptyList()).bindTo(registry);
+    }
+}
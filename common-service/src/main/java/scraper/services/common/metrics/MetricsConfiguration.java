@@ -0,0 +1,53 @@
+package scraper.services.common.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ClassLoaderMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmGcMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmThreadMetrics;
+import io.micrometer.core.instrument.binder.system.ProcessorMetrics;
+import io.micrometer.core.instrument.binder.system.UptimeMetrics;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration of metrics, shared by all services.
+ * <p>
+ * Metrics are collected by Micrometer into Prometheus registry, tagged with application name, and exported at <tt>/prometheus</tt>. JVM memory, GC, threads, class
+ * loading, CPU and uptime are measured out of the box. Thread pools defined as beans, and all {@link io.micrometer.core.instrument.binder.MeterBinder} beans, are bound
+ * to the registry at startup.
+ * <p>
+ * Configuration is loaded as auto configuration of every service depending on common service.
+ */
+@Configuration
+public class MetricsConfiguration {
+
+    @Bean
+    public static PrometheusMeterRegistry getMeterRegistry(@Value("${spring.application.name:application}") String applicationName) {
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        registry.config().commonTags("application", applicationName);
+
+        new JvmMemoryMetrics().bindTo(registry);
+        new JvmGcMetrics().bindTo(registry);
+        new JvmThreadMetrics().bindTo(registry);
+        new ClassLoaderMetrics().bindTo(registry);
+        new ProcessorMetrics().bindTo(registry);
+        new UptimeMetrics().bindTo(registry);
+
+        return registry;
+    }
+
+    @Bean
+    public static MeterBinderRegistrar getMeterBinderRegistrar(ListableBeanFactory beanFactory, MeterRegistry registry) {
+        return new MeterBinderRegistrar(beanFactory, registry);
+    }
+
+    @Bean
+    public static PrometheusController getPrometheusController(PrometheusMeterRegistry registry) {
+        return new PrometheusController(registry);
+    }
+}
@@ -0,0 +1,33 @@
+package scraper.services.common.metrics;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Controller exporting metrics of the service in Prometheus text format.
+ * <p>
+ * Controller is registered only as bean of {@link MetricsConfiguration}, it is not annotated as a component, so services scanning the metrics package do not map it twice.
+ */
+@RequestMapping
+public class PrometheusController {
+
+    private final PrometheusMeterRegistry registry;
+
+    public PrometheusController(PrometheusMeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Gets current values of all metrics.
+     *
+     * @return metrics in Prometheus text format
+     */
+    @RequestMapping(path = "/prometheus", method = RequestMethod.GET, produces = TextFormat.CONTENT_TYPE_004)
+    @ResponseBody
+    public String scrape() {
+        return registry.scrape();
+    }
+}
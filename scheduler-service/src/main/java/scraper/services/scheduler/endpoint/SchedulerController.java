@@ -1,5 +1,6 @@
 package scraper.services.scheduler.endpoint;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -7,11 +8,13 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
+import scraper.exception.ResourceNotFoundException;
 import scraper.services.common.StatusMessage;
 import scraper.services.scheduler.dto.ServiceDescriptorJsonDto;
 import scraper.services.scheduler.dto.ServiceInstanceJsonReadDto;
 import scraper.services.scheduler.dto.ServiceInstanceJsonWriteDto;
 import scraper.services.scheduler.service.SchedulerService;
+import scraper.services.scheduler.service.ServiceRunner;
 import scraper.services.scheduler.service.ServicesStore;
 
 import java.util.List;
@@ -26,10 +29,13 @@ public class SchedulerController {
 
     private final ServicesStore servicesStore;
 
+    private final ServiceRunner serviceRunner;
+
     @Autowired
-    public SchedulerController(SchedulerService schedulerService, ServicesStore servicesStore) {
+    public SchedulerController(SchedulerService schedulerService, ServicesStore servicesStore, ServiceRunner serviceRunner) {
         this.schedulerService = schedulerService;
         this.servicesStore = servicesStore;
+        this.serviceRunner = serviceRunner;
     }
 
     /**
@@ -42,6 +48,21 @@ public class SchedulerController {
         return servicesStore.getServices();
     }
 
+    /**
+     * Returns status of the runs of the service, as reported by the service.
+     *
+     * @param serviceId service id
+     * @return service status
+     */
+    @RequestMapping(path = "/service/{serviceId}/status", method = RequestMethod.GET)
+    public JsonNode getServiceStatus(@PathVariable("serviceId") String serviceId) {
+        if (servicesStore.getServices().stream().noneMatch(service -> service.getServiceId().equals(serviceId))) {
+            throw new ResourceNotFoundException("Service [%s] not found", serviceId);
+        }
+
+        return serviceRunner.getServiceStatus(serviceId);
+    }
+
     /**
      * Returns all Runnable Service instances.
      *
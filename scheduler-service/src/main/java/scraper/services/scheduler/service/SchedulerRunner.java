@@ -1,18 +1,35 @@
 package scraper.services.scheduler.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Simple service responsible for safely running scheduled callback.
+ * <p>
+ * Callbacks are measured by <tt>scraper.scheduler.task</tt> timer, tagged with outcome.
  */
 @Service
 public class SchedulerRunner {
 
     private final Log logger = LogFactory.getLog(SchedulerRunner.class);
 
+    private final Timer successTimer;
+
+    private final Timer failureTimer;
+
+    @Autowired
+    public SchedulerRunner(MeterRegistry meterRegistry) {
+        this.successTimer = meterRegistry.timer("scraper.scheduler.task", "outcome", "success");
+        this.failureTimer = meterRegistry.timer("scraper.scheduler.task", "outcome", "failure");
+    }
+
     /**
      * Runs given {@code callback}.
      * <p>
@@ -23,9 +40,12 @@ public class SchedulerRunner {
     @Async
     public void safeRun(Runnable callback) {
         logger.info("Starting scheduled task");
+        long start = System.nanoTime();
         try {
             callback.run();
+            successTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         } catch (Exception ex) {
+            failureTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
             logger.error("Scheduled task failure: " + ex.getMessage(), ex);
         } finally {
             logger.info("Finished scheduled task");
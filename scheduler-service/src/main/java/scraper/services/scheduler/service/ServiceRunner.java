@@ -1,5 +1,8 @@
 package scraper.services.scheduler.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,8 +14,12 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import scraper.services.scheduler.model.ServiceInstanceDs;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Class responsible for running Runnable Service instances.
+ * <p>
+ * Run requests are measured by <tt>scraper.scheduler.service.run</tt> timer, tagged with service id and outcome.
  */
 @Service
 public class ServiceRunner {
@@ -27,9 +34,12 @@ public class ServiceRunner {
 
     private final RestTemplate restTemplate;
 
+    private final MeterRegistry meterRegistry;
+
     @Autowired
-    public ServiceRunner(RestTemplate restTemplate) {
+    public ServiceRunner(RestTemplate restTemplate, MeterRegistry meterRegistry) {
         this.restTemplate = restTemplate;
+        this.meterRegistry = meterRegistry;
     }
 
     /**
@@ -41,6 +51,25 @@ public class ServiceRunner {
         logger.info(String.format("Running: [%s] [%s]", instance.getInstanceName(), instance.getServiceId()));
 
         String url = String.format("http://%s/worker/run", instance.getServiceId());
-        restTemplate.exchange(url, HttpMethod.POST, new HttpEntity<>(instance.getSettings(), JSON_CONTENT_HEADERS), String.class);
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            restTemplate.exchange(url, HttpMethod.POST, new HttpEntity<>(instance.getSettings(), JSON_CONTENT_HEADERS), String.class);
+            outcome = "success";
+        } finally {
+            Timer.builder("scraper.scheduler.service.run").tags("service", instance.getServiceId(), "outcome", outcome).register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Gets status of the runs of Runnable Service. Status format is defined by the service itself.
+     *
+     * @param serviceId service id
+     * @return status reported by the service
+     */
+    public JsonNode getServiceStatus(String serviceId) {
+        String url = String.format("http://%s/worker/status", serviceId);
+        return restTemplate.getForObject(url, JsonNode.class);
     }
 }
@@ -1,11 +1,13 @@
 package scraper.services.scheduler.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
 
@@ -15,11 +17,13 @@ public class SchedulerRunnerTest {
     @Mock
     private Runnable callback;
 
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     private SchedulerRunner runner;
 
     @Before
     public void setUp() {
-        runner = new SchedulerRunner();
+        runner = new SchedulerRunner(meterRegistry);
     }
 
     @Test
@@ -32,6 +36,7 @@ public class SchedulerRunnerTest {
 
         // then
         verify(callback).run();
+        assertEquals(1, meterRegistry.get("scraper.scheduler.task").tags("outcome", "failure").timer().count());
     }
 
     @Test
@@ -41,5 +46,6 @@ public class SchedulerRunnerTest {
 
         // then
         verify(callback).run();
+        assertEquals(1, meterRegistry.get("scraper.scheduler.task").tags("outcome", "success").timer().count());
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,8 @@
 package scraper.services.scheduler.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -12,11 +15,16 @@ import org.springframework.http.MediaType;
 import org.springframework.web.client.RestTemplate;
 import scraper.services.scheduler.model.ServiceInstanceDs;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.stub;
 import static org.mockito.Mockito.verify;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ServiceRunnerTest {
 
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     private ServiceRunner runner;
 
     @Mock
@@ -24,7 +32,7 @@ public class ServiceRunnerTest {
 
     @Before
     public void setUp() {
-        runner = new ServiceRunner(restTemplate);
+        runner = new ServiceRunner(restTemplate, meterRegistry);
     }
 
     @Test
@@ -40,5 +48,19 @@ public class ServiceRunnerTest {
         expectedHeaders.setContentType(MediaType.APPLICATION_JSON);
         HttpEntity<String> expectedEntity = new HttpEntity<>(instance.getSettings(), expectedHeaders);
         verify(restTemplate).exchange("http://service-id/worker/run", HttpMethod.POST, expectedEntity, String.class);
+        assertEquals(1, meterRegistry.get("scraper.scheduler.service.run").tags("service", "service-id", "outcome", "success").timer().count());
+    }
+
+    @Test
+    public void testGetServiceStatus() {
+        // given
+        JsonNode status = JsonNodeFactory.instance.arrayNode();
+        stub(restTemplate.getForObject("http://service-id/worker/status", JsonNode.class)).toReturn(status);
+
+        // when
+        JsonNode result = runner.getServiceStatus("service-id");
+
+        // then
+        assertSame(status, result);
     }
-}
\ No newline at end of file
+}
@@ -1,10 +1,13 @@
 var frontendApp = angular.module('schedulerApp');
 
-frontendApp.controller('schedulerCtrl', ['$scope', 'schedulerSvc', 'notificationSvc', function($scope, schedulerSvc, notificationSvc) {
+frontendApp.controller('schedulerCtrl', ['$scope', '$interval', 'schedulerSvc', 'notificationSvc', function($scope, $interval, schedulerSvc, notificationSvc) {
     "use strict";
 
+    var STATUS_REFRESH_INTERVAL = 5000;
+
     $scope.services = [];
     $scope.serviceInstances = {};
+    $scope.serviceStatus = {};
 
     $scope.refreshServices = function() {
         return notificationSvc.wrap(schedulerSvc.getServices(), function(response) {
@@ -18,6 +21,16 @@ frontendApp.controller('schedulerCtrl', ['$scope', 'schedulerSvc', 'notification
         }, 'Error refreshing service instances list');
     };
 
+    $scope.refreshServiceStatus = function() {
+        angular.forEach($scope.services, function(service) {
+            schedulerSvc.getServiceStatus(service.serviceId).then(function(response) {
+                $scope.serviceStatus[service.serviceId] = angular.isArray(response.data) ? response.data : [];
+            }, function() {
+                delete $scope.serviceStatus[service.serviceId];
+            });
+        });
+    };
+
     var setServiceInstances = function(instances) {
         $scope.serviceInstances = {};
         for(var i = 0; i< instances.length; ++i) {
@@ -62,8 +75,13 @@ frontendApp.controller('schedulerCtrl', ['$scope', 'schedulerSvc', 'notification
 
 
     var init = function() {
-        $scope.refreshServices();
+        $scope.refreshServices().then($scope.refreshServiceStatus);
         $scope.refreshServiceInstances();
+
+        var statusRefresh = $interval($scope.refreshServiceStatus, STATUS_REFRESH_INTERVAL);
+        $scope.$on('$destroy', function() {
+            $interval.cancel(statusRefresh);
+        });
     };
 
     init();
@@ -9,6 +9,10 @@ frontendApp.service('schedulerSvc', ['$http', function($http) {
         return $http.get('/scheduler-service/service');
     };
 
+    self.getServiceStatus = function(serviceId) {
+        return $http.get('/scheduler-service/service/' + serviceId + '/status');
+    };
+
     self.getServiceInstances = function() {
         return $http.get('/scheduler-service/service/instance');
     };
@@ -0,0 +1,176 @@
+package scraper.services.storage;
+
+import scraper.exception.ValidationException;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Length-prefixed framing of blob batches.
+ * <p>
+ * Batch is a sequence of frames. Every frame is length of the blob, as 8 byte big-endian number, followed by content of the blob. Length <tt>-1</tt> without content
+ * marks blob which is missing. Frames are read and written one by one, so batch is never held in memory as a whole.
+ */
+final class BlobFrames {
+
+    static final long MISSING = -1;
+
+    private BlobFrames() {
+    }
+
+    /**
+     * Writes frame with content of the blob.
+     *
+     * @param blob   blob to write
+     * @param target channel to write to
+     * @throws IOException if io failed
+     */
+    static void writeFrame(StoredBlob blob, WritableByteChannel target) throws IOException {
+        writeLength(blob.getLength(), target);
+        blob.transferTo(0, blob.getLength(), target);
+    }
+
+    /**
+     * Writes frame of missing blob.
+     *
+     * @param target channel to write to
+     * @throws IOException if io failed
+     */
+    static void writeMissing(WritableByteChannel target) throws IOException {
+        writeLength(MISSING, target);
+    }
+
+    private static void writeLength(long length, WritableByteChannel target) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).putLong(length);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    /**
+     * Reader of frames with blobs. Reader does not buffer - content of every blob is read straight from the source stream.
+     */
+    static final class Reader {
+
+        private final InputStream source;
+
+        private FrameInputStream current;
+
+        /**
+         * @param source stream of frames, not closed by the reader
+         */
+        Reader(InputStream source) {
+            this.source = source;
+        }
+
+        /**
+         * Reads next frame. Content of the previous frame, which was not read, is skipped.
+         *
+         * @return stream of the blob content, ending with the frame, or <tt>null</tt> if there are no more frames
+         * @throws IOException         if io failed or frame is truncated
+         * @throws ValidationException if frame does not contain a blob
+         */
+        InputStream next() throws IOException {
+            if (current != null) {
+                current.skipRemaining();
+                current = null;
+            }
+
+            int first = source.read();
+            if (first == -1) {
+                return null;
+            }
+            long length = first;
+            for (int i = 1; i < Long.BYTES; i++) {
+                int next = source.read();
+                if (next == -1) {
+                    throw new EOFException("Frame length truncated");
+                }
+                length = length << 8 | next;
+            }
+            if (length < 0) {
+                throw new ValidationException("Invalid frame length %d", length);
+            }
+
+            current = new FrameInputStream(source, length);
+            return current;
+        }
+    }
+
+    /**
+     * Stream of single frame content. Closing it does not close the source stream.
+     */
+    private static final class FrameInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        private FrameInputStream(InputStream source, long length) {
+            super(source);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int read = in.read();
+            if (read == -1) {
+                throw new EOFException("Frame content truncated");
+            }
+            remaining--;
+
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read == -1) {
+                throw new EOFException("Frame content truncated");
+            }
+            remaining -= read;
+
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // source stream stays open for following frames
+        }
+
+        private void skipRemaining() throws IOException {
+            while (remaining > 0) {
+                if (skip(remaining) == 0 && read() == -1) {
+                    return;
+                }
+            }
+        }
+    }
+}
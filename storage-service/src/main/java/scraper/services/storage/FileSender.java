@@ -0,0 +1,84 @@
+package scraper.services.storage;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Service sending stored blobs as http responses, whole or as single byte range.
+ * <p>
+ * Blobs are not copied through heap buffers. When servlet container supports sendfile and the blob is on the default file system, sending is delegated to the container,
+ * so blob is sent by the operating system straight from page cache to the socket. Otherwise blob is transferred to the response stream, see
+ * {@link StoredBlob#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+ * <p>
+ * Single satisfiable range is sent as <tt>206 Partial Content</tt>, unsatisfiable one as <tt>416</tt>. Malformed range and multiple ranges are ignored and whole file
+ * is sent, as allowed by RFC 7233.
+ */
+@Service
+public class FileSender {
+
+    static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+
+    static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+
+    static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+
+    static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * Sends file as response body, with status and content headers.
+     *
+     * @param blob     blob to send
+     * @param request  request, which may contain <tt>Range</tt> header
+     * @param response response to send the file with
+     * @throws IOException if io failed
+     */
+    public void send(StoredBlob blob, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long length = blob.getLength();
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+
+        long start = 0;
+        long end = length;
+        HttpRange range = parseRange(request.getHeader(HttpHeaders.RANGE));
+        if (range != null) {
+            start = range.getRangeStart(length);
+            end = range.getRangeEnd(length) + 1;
+            if (start >= length || start >= end) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, String.format("bytes */%d", length));
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, String.format("bytes %d-%d/%d", start, end - 1, length));
+        }
+        response.setContentLengthLong(end - start);
+
+        Path file = blob.getFile();
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR)) && file.getFileSystem() == FileSystems.getDefault()) {
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, blob.getOffset() + start);
+            request.setAttribute(SENDFILE_END_ATTR, blob.getOffset() + end);
+        } else {
+            blob.transferTo(start, end, Channels.newChannel(response.getOutputStream()));
+        }
+    }
+
+    private static HttpRange parseRange(String header) {
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(header);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+}
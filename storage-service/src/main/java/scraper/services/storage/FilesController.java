@@ -1,23 +1,31 @@
 package scraper.services.storage;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import scraper.exception.ResourceNotFoundException;
 import scraper.exception.UnexpectedException;
 
 import javax.servlet.annotation.MultipartConfig;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Rest controller for managing files.
@@ -26,11 +34,16 @@ import java.security.NoSuchAlgorithmException;
 @MultipartConfig(fileSizeThreshold = 52_428_800)
 public class FilesController {
 
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
     private final StorageService service;
 
+    private final FileSender fileSender;
+
     @Autowired
-    public FilesController(StorageService service) {
+    public FilesController(StorageService service, FileSender fileSender) {
         this.service = service;
+        this.fileSender = fileSender;
     }
 
     /**
@@ -49,20 +62,120 @@ public class FilesController {
     }
 
     /**
-     * Downloads file.
+     * Uploads batch of files, framed as described in {@link BlobFrames}. Files are stored one by one as they are read, so batch is never held in memory.
+     *
+     * @param request request with the batch as its body
+     * @return ids of the files, in order of the batch
+     */
+    @RequestMapping(path = "/batch", method = RequestMethod.POST, consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public List<String> uploadBatch(HttpServletRequest request) {
+        List<String> ids = new ArrayList<>();
+        try (InputStream inStream = request.getInputStream()) {
+            BlobFrames.Reader reader = new BlobFrames.Reader(inStream);
+            InputStream blob;
+            while ((blob = reader.next()) != null) {
+                ids.add(service.saveFile(blob));
+            }
+
+            return ids;
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new UnexpectedException("Unable to process file stream", e);
+        }
+    }
+
+    /**
+     * Downloads batch of files, framed as described in {@link BlobFrames}. Missing files are sent as empty frames with length <tt>-1</tt>.
+     *
+     * @param ids      ids of the files
+     * @param response response the batch is sent with, in order of the ids
+     */
+    @RequestMapping(path = "/batch/download", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public void downloadBatch(@RequestBody List<String> ids, HttpServletResponse response) {
+        try {
+            // all ids are resolved before the response is committed, so invalid one is still reported by status
+            List<StoredBlob> blobs = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                try {
+                    blobs.add(service.getBlob(id));
+                } catch (ResourceNotFoundException ex) {
+                    blobs.add(null);
+                }
+            }
+
+            response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            for (StoredBlob blob : blobs) {
+                if (blob == null) {
+                    BlobFrames.writeMissing(target);
+                } else {
+                    BlobFrames.writeFrame(blob, target);
+                }
+            }
+        } catch (IOException e) {
+            throw new UnexpectedException("Unable to process file stream", e);
+        }
+    }
+
+    /**
+     * Uploads file with id known in advance - its sha2 checksum.
+     * <p>
+     * When the file is already stored, request body is not read at all. So client sending <tt>Expect: 100-continue</tt> never sends body of duplicate file - it receives
+     * final response instead of <tt>100 Continue</tt>.
+     *
+     * @param id      expected id of the file
+     * @param request request with file content as its body
+     * @return file id, with <tt>201 Created</tt> if file was stored or <tt>200 OK</tt> if it already existed
+     */
+    @RequestMapping(path = "/{id}", method = RequestMethod.PUT)
+    public ResponseEntity<String> putFile(@PathVariable("id") String id, HttpServletRequest request) {
+        if (service.exists(id)) {
+            return ResponseEntity.ok(StorageService.normalizeId(id));
+        }
+
+        try (InputStream inStream = request.getInputStream()) {
+            return ResponseEntity.status(HttpStatus.CREATED).body(service.saveFile(inStream, id));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new UnexpectedException("Unable to process file stream", e);
+        }
+    }
+
+    /**
+     * Checks whether file is stored, without touching the file system when it is known.
      *
      * @param id id of the file
-     * @return file
+     * @return <tt>200 OK</tt> if file is stored, <tt>404 Not Found</tt> otherwise
+     */
+    @RequestMapping(path = "/{id}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> fileExists(@PathVariable("id") String id) {
+        if (!service.exists(id)) {
+            return ResponseEntity.notFound().build();
+        }
+
+        return ResponseEntity.ok().eTag(StorageService.normalizeId(id)).header(HttpHeaders.CACHE_CONTROL, IMMUTABLE_CACHE_CONTROL).build();
+    }
+
+    /**
+     * Downloads file, whole or its single byte range.
+     * <p>
+     * File id is its checksum, so content under the id never changes. Normalized id is used as <tt>ETag</tt>, the same as by
+     * {@link #fileExists(String)}, request with matching <tt>If-None-Match</tt> is answered with
+     * <tt>304 Not Modified</tt> and response can be cached forever.
+     *
+     * @param id         id of the file
+     * @param webRequest request used to check <tt>If-None-Match</tt>
+     * @param request    request
+     * @param response   response the file is sent with
      */
-    @RequestMapping(path = "/{id}", method = RequestMethod.GET, produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
-    public ResponseEntity<InputStreamResource> downloadFile(@PathVariable("id") String id) {
+    @RequestMapping(path = "/{id}", method = RequestMethod.GET)
+    public void downloadFile(@PathVariable("id") String id, ServletWebRequest webRequest, HttpServletRequest request, HttpServletResponse response) {
         try {
-            Path file = service.getFile(id);
-            long contentLength = Files.size(file);
-            InputStream inStream = Files.newInputStream(file);
+            StoredBlob blob = service.getBlob(id);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, IMMUTABLE_CACHE_CONTROL);
+            if (webRequest.checkNotModified(StorageService.normalizeId(id))) {
+                return;
+            }
 
-            // TODO investigate UrlResource
-            return ResponseEntity.ok().contentLength(contentLength).contentType(MediaType.APPLICATION_OCTET_STREAM).body(new InputStreamResource(inStream));
+            fileSender.send(blob, request, response);
         } catch (IOException e) {
             throw new UnexpectedException("Unable to process file stream", e);
         }
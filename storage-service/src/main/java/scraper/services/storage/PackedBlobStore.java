@@ -0,0 +1,270 @@
+package scraper.services.storage;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Store packing small blobs into large append-only segment files, so they do not take file of their own each.
+ * <p>
+ * Blobs are appended to the current segment, until it would exceed segment size - then new segment is started. Location of every blob is appended to the index file,
+ * as fixed size record of its sha, segment number, offset and length. Blob is forced to disk before its index record is written, so index never references lost
+ * content, and the record is forced before append returns, so appended blob is not lost by a crash either. Index is loaded into memory on start, record truncated
+ * by a crash is dropped. Append failed half way is truncated from both files.
+ * <p>
+ * Segments are read through memory mappings. Segment which is no longer appended to is mapped once as a whole and the mapping is kept. Current segment still grows,
+ * so only the region of the read blob is mapped, for that read. Store is disabled by default - then it accepts no blob and touches no file.
+ */
+@Service
+public class PackedBlobStore {
+
+    private static final String INDEX_FILE = "index";
+
+    private static final int SHA_LENGTH = 64;
+
+    private static final int RECORD_LENGTH = SHA_LENGTH + Integer.BYTES + 2 * Long.BYTES;
+
+    private final Log logger = LogFactory.getLog(PackedBlobStore.class);
+
+    private final Path segmentsPath;
+
+    private final boolean enabled;
+
+    private final long threshold;
+
+    private final long segmentSize;
+
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+
+    private final Map<Integer, MappedByteBuffer> mappings = new ConcurrentHashMap<>();
+
+    private FileChannel indexChannel;
+
+    private FileChannel segmentChannel;
+
+    private volatile int segment;
+
+    @Autowired
+    public PackedBlobStore(@Value("${scraper.service.storage.packed.dir:segments}") String segmentsDir, @Value("${scraper.service.storage.packed.enabled:false}") boolean enabled,
+            @Value("${scraper.service.storage.packed.threshold:65536}") long threshold, @Value("${scraper.service.storage.packed.segment-size:268435456}") long segmentSize,
+            FileSystem fs) throws IOException {
+        this.segmentsPath = fs.getPath(segmentsDir);
+        this.enabled = enabled;
+        this.threshold = threshold;
+        // segments are mapped as a whole, so they must fit into single buffer
+        this.segmentSize = Math.min(segmentSize, Integer.MAX_VALUE);
+
+        if (enabled) {
+            Files.createDirectories(segmentsPath);
+            open();
+        }
+    }
+
+    private void open() throws IOException {
+        indexChannel = FileChannel.open(segmentsPath.resolve(INDEX_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_LENGTH);
+        byte[] sha = new byte[SHA_LENGTH];
+        long position = 0;
+        while (position + RECORD_LENGTH <= indexChannel.size()) {
+            record.clear();
+            while (record.hasRemaining()) {
+                if (indexChannel.read(record, position + record.position()) < 0) {
+                    throw new EOFException("Index ended unexpectedly");
+                }
+            }
+            record.flip();
+            record.get(sha);
+            Location location = new Location(record.getInt(), record.getLong(), record.getLong());
+            index.put(new String(sha, StandardCharsets.US_ASCII), location);
+            segment = Math.max(segment, location.segment);
+            position += RECORD_LENGTH;
+        }
+        if (indexChannel.size() > position) {
+            logger.warn(String.format("Dropping truncated record at the end of index [%s]", segmentsPath.resolve(INDEX_FILE)));
+            indexChannel.truncate(position);
+        }
+        indexChannel.position(position);
+
+        segmentChannel = openSegment(segment);
+        logger.info(String.format("Packed store [%s] opened with %d blobs in %d segments", segmentsPath, index.size(), segment + 1));
+    }
+
+    private FileChannel openSegment(int number) throws IOException {
+        return FileChannel.open(getSegmentPath(number), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private Path getSegmentPath(int number) {
+        return segmentsPath.resolve(String.format("segment-%08d", number));
+    }
+
+    /**
+     * @param length length of the blob
+     * @return <tt>true</tt> if blob of given length should be packed
+     */
+    public boolean accepts(long length) {
+        return enabled && length < threshold;
+    }
+
+    /**
+     * @param sha sha2 checksum of the blob
+     * @return <tt>true</tt> if the blob is packed
+     */
+    public boolean contains(String sha) {
+        return index.containsKey(sha);
+    }
+
+    /**
+     * Appends blob to the current segment. Blob already packed is not appended again.
+     *
+     * @param sha    sha2 checksum of the blob
+     * @param source file with the blob
+     * @param length length of the blob
+     * @throws IOException           if io failed
+     * @throws IllegalStateException if store does not accept blob of such length
+     */
+    public synchronized void append(String sha, Path source, long length) throws IOException {
+        if (!accepts(length)) {
+            throw new IllegalStateException(String.format("Blob of length %d can not be packed", length));
+        }
+        if (index.containsKey(sha)) {
+            return;
+        }
+
+        if (segmentChannel.size() > 0 && segmentChannel.size() + length > segmentSize) {
+            segmentChannel.close();
+            segment++;
+            segmentChannel = openSegment(segment);
+        }
+
+        long offset = segmentChannel.size();
+        long indexSize = indexChannel.size();
+        Location location = new Location(segment, offset, length);
+        try {
+            try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ)) {
+                long position = 0;
+                while (position < length) {
+                    long transferred = sourceChannel.transferTo(position, length - position, segmentChannel);
+                    if (transferred <= 0) {
+                        throw new EOFException(String.format("File [%s] ended at %d, before %d", source, position, length));
+                    }
+                    position += transferred;
+                }
+            }
+            segmentChannel.force(false);
+
+            ByteBuffer record = ByteBuffer.allocate(RECORD_LENGTH);
+            record.put(sha.getBytes(StandardCharsets.US_ASCII)).putInt(location.segment).putLong(location.offset).putLong(location.length);
+            record.flip();
+            while (record.hasRemaining()) {
+                indexChannel.write(record);
+            }
+            indexChannel.force(false);
+        } catch (IOException ex) {
+            rollback(offset, indexSize, ex);
+            throw ex;
+        }
+        index.put(sha, location);
+    }
+
+    private void rollback(long offset, long indexSize, IOException cause) {
+        try {
+            segmentChannel.truncate(offset);
+            indexChannel.truncate(indexSize);
+            indexChannel.position(indexSize);
+        } catch (IOException ex) {
+            cause.addSuppressed(ex);
+        }
+    }
+
+    /**
+     * Gets packed blob.
+     *
+     * @param sha sha2 checksum of the blob
+     * @return blob with mapped content or <tt>null</tt> if the blob is not packed
+     * @throws IOException if io failed
+     */
+    public StoredBlob get(String sha) throws IOException {
+        Location location = index.get(sha);
+        if (location == null) {
+            return null;
+        }
+
+        Path segmentPath = getSegmentPath(location.segment);
+        if (location.segment == segment) {
+            // mapping of growing segment would be superseded by the next append, so it is not kept
+            try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.READ)) {
+                return new StoredBlob(segmentPath, location.offset, channel.map(FileChannel.MapMode.READ_ONLY, location.offset, location.length));
+            }
+        }
+
+        ByteBuffer content = getMapping(location.segment).duplicate();
+        content.limit((int) (location.offset + location.length)).position((int) location.offset);
+
+        return new StoredBlob(segmentPath, location.offset, content.slice());
+    }
+
+    private MappedByteBuffer getMapping(int number) throws IOException {
+        MappedByteBuffer mapping = mappings.get(number);
+        if (mapping != null) {
+            return mapping;
+        }
+
+        synchronized (mappings) {
+            mapping = mappings.get(number);
+            if (mapping == null) {
+                try (FileChannel channel = FileChannel.open(getSegmentPath(number), StandardOpenOption.READ)) {
+                    mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+                mappings.put(number, mapping);
+            }
+
+            return mapping;
+        }
+    }
+
+    /**
+     * Closes segment and index files.
+     *
+     * @throws IOException if io failed
+     */
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (segmentChannel != null) {
+            segmentChannel.close();
+        }
+        if (indexChannel != null) {
+            indexChannel.close();
+        }
+    }
+
+    private static final class Location {
+
+        private final int segment;
+
+        private final long offset;
+
+        private final long length;
+
+        private Location(int segment, long offset, long length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
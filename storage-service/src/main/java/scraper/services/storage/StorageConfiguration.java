@@ -2,14 +2,19 @@ package scraper.services.storage;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import scraper.services.common.CommonControllerExceptionHandler;
 
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 
 /**
  * Configuration for storage service.
+ * <p>
+ * Common exception handler is imported, so invalid ids and checksums are answered with <tt>400</tt> and missing files with <tt>404</tt>.
  */
 @Configuration
+@Import(CommonControllerExceptionHandler.class)
 public class StorageConfiguration {
 
     @Bean(destroyMethod = "")
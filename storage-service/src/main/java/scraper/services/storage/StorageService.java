@@ -1,44 +1,118 @@
 package scraper.services.storage;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.context.config.annotation.RefreshScope;
 import org.springframework.stereotype.Service;
-import scraper.common.FileUtils;
+import scraper.common.StringUtils;
 import scraper.exception.ResourceNotFoundException;
+import scraper.exception.ValidationException;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.FileAlreadyExistsException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * Service used for storing and accessing files.
+ * <p>
+ * Ids of stored files are kept in memory, so existence checks done before uploads do not touch the file system. Index is loaded from the data directory on start
+ * and updated by every save. Id missing in the index is still looked up on disk, in case the file was stored by another process.
+ * <p>
+ * When {@link PackedBlobStore} is enabled, files smaller than its threshold are packed into its segments instead of being stored as files of their own. Both kinds are
+ * accessed in the same way, by {@link #getBlob(String)}.
+ * <p>
+ * Saving and getting files are measured by <tt>scraper.storage.save</tt> and <tt>scraper.storage.get</tt> timers, tagged with outcome. Sizes of saved files are
+ * recorded by <tt>scraper.storage.save.size</tt>.
  */
 @Service
 @RefreshScope
 public class StorageService {
 
+    private static final String SHA_ALGORITHM = "SHA-256";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Pattern SHA_PATTERN = Pattern.compile("[0-9A-Fa-f]{64}");
+
+    private static final String PART_SUFFIX = ".part";
+
     private final Path dataPath;
 
     private final Path tempPath;
 
+    private final MeterRegistry meterRegistry;
+
+    private final DistributionSummary savedSizes;
+
+    private final PackedBlobStore packedStore;
+
+    private final Set<String> knownIds = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
     @Autowired
-    public StorageService(@Value("${scraper.service.storage.dir:data}") String dataDir, @Value("${scraper.service.storage.temp:temp}") String tempDir, FileSystem fs)
-            throws IOException {
+    public StorageService(@Value("${scraper.service.storage.dir:data}") String dataDir, @Value("${scraper.service.storage.temp:temp}") String tempDir, FileSystem fs,
+            MeterRegistry meterRegistry, PackedBlobStore packedStore) throws IOException {
         this.dataPath = fs.getPath(dataDir);
         this.tempPath = fs.getPath(tempDir);
+        this.meterRegistry = meterRegistry;
+        this.packedStore = packedStore;
+        this.savedSizes = DistributionSummary.builder("scraper.storage.save.size").baseUnit("bytes").register(meterRegistry);
 
         Files.createDirectories(dataPath);
         Files.createDirectories(tempPath);
+        loadKnownIds();
+    }
+
+    private void loadKnownIds() throws IOException {
+        try (Stream<Path> files = Files.walk(dataPath)) {
+            files.filter(Files::isRegularFile).map(file -> file.getFileName().toString()).filter(name -> !name.endsWith(PART_SUFFIX)).forEach(knownIds::add);
+        }
+    }
+
+    /**
+     * Checks whether file with given id is stored.
+     *
+     * @param id id of the file. Its sha2 checksum, in any case
+     * @return <tt>true</tt> if file is stored
+     * @throws IllegalArgumentException if id has incorrect form
+     */
+    public boolean exists(String id) {
+        String sha = normalizeId(id);
+        if (knownIds.contains(sha) || packedStore.contains(sha)) {
+            return true;
+        }
+        if (Files.exists(getPathForSha(sha))) {
+            knownIds.add(sha);
+            return true;
+        }
+
+        return false;
     }
 
     /**
      * Saves file.
+     * <p>
+     * Data are read only once - they are hashed while being written to temporary file, which is then atomically moved to its final location. So partially written file is
+     * never visible under its id.
      *
      * @param inputStream stream of the data to save
      * @return id of the file - its sha2 checksum
@@ -46,15 +120,39 @@ public class StorageService {
      * @throws NoSuchAlgorithmException if sha algorithm is not supported
      */
     public String saveFile(InputStream inputStream) throws IOException, NoSuchAlgorithmException {
+        return saveFile(inputStream, null);
+    }
+
+    /**
+     * Saves file with id known in advance. File is not stored if its checksum does not match the id.
+     *
+     * @param inputStream stream of the data to save
+     * @param expectedId  expected id of the file or <tt>null</tt> if it is not known
+     * @return id of the file - its sha2 checksum
+     * @throws IOException              id io failed
+     * @throws NoSuchAlgorithmException if sha algorithm is not supported
+     * @throws ValidationException      if checksum of the data does not match expected id
+     */
+    public String saveFile(InputStream inputStream, String expectedId) throws IOException, NoSuchAlgorithmException {
+        String expectedSha = expectedId == null ? null : normalizeId(expectedId);
+        long start = System.nanoTime();
+        String outcome = "error";
         Path tempFile = createTemp();
         try {
-            Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
-            String sha = FileUtils.computeSHA2(tempFile);
-            saveIfMissing(tempFile, sha);
+            MessageDigest digest = MessageDigest.getInstance(SHA_ALGORITHM);
+            long size = copy(new DigestInputStream(inputStream, digest), tempFile);
+            savedSizes.record(size);
+            String sha = StringUtils.bytesToHex(digest.digest());
+            if (expectedSha != null && !expectedSha.equals(sha)) {
+                outcome = "mismatch";
+                throw new ValidationException("Checksum of the file [%s] does not match its id [%s]", sha, expectedSha);
+            }
+            outcome = storeIfMissing(tempFile, sha, size) ? "stored" : "duplicate";
 
             return sha;
         } finally {
-            Files.delete(tempFile);
+            Files.deleteIfExists(tempFile);
+            record("scraper.storage.save", outcome, start);
         }
     }
 
@@ -62,17 +160,67 @@ public class StorageService {
         return Files.createTempFile(tempPath, "upload", "tmp");
     }
 
-    private void saveIfMissing(Path tempFile, String sha) throws IOException {
+    private static long copy(InputStream inputStream, Path target) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0;
+        try (OutputStream outputStream = Files.newOutputStream(target)) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+                size += read;
+            }
+        }
+
+        return size;
+    }
+
+    private boolean storeIfMissing(Path tempFile, String sha, long size) throws IOException {
         Path path = getPathForSha(sha);
+        if (knownIds.contains(sha) || packedStore.contains(sha) || Files.exists(path)) {
+            knownIds.add(sha);
+            return false;
+        }
+        if (packedStore.accepts(size)) {
+            packedStore.append(sha, tempFile, size);
+            knownIds.add(sha);
+            return true;
+        }
         Files.createDirectories(path.getParent());
 
         try {
-            Files.createFile(path);
-        } catch (FileAlreadyExistsException ex) {
-            return;
+            Files.move(tempFile, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            // temp directory is on another file store - copy to unique staging file next to the target first, so the target still appears atomically
+            Path partFile = Files.createTempFile(path.getParent(), sha, PART_SUFFIX);
+            try {
+                Files.move(tempFile, partFile, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(partFile, path, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(partFile);
+            }
+        }
+        knownIds.add(sha);
+        return true;
+    }
+
+    private void record(String timer, String outcome, long start) {
+        timers.computeIfAbsent(timer + ':' + outcome, key -> Timer.builder(timer).tags("outcome", outcome).publishPercentileHistogram().register(meterRegistry))
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Normalizes id of a file to its canonical form - upper case sha2 checksum - used for storing and as <tt>ETag</tt>.
+     *
+     * @param id id of the file, in any case
+     * @return normalized id
+     * @throws IllegalArgumentException if id has incorrect form
+     */
+    public static String normalizeId(String id) {
+        if (!SHA_PATTERN.matcher(id).matches()) {
+            throw new IllegalArgumentException("Resource id " + id + " is not sha2 checksum");
         }
 
-        Files.copy(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+        return id.toUpperCase(Locale.ROOT);
     }
 
     private Path getPathForSha(String sha) {
@@ -83,24 +231,35 @@ public class StorageService {
     }
 
     /**
-     * Gets file.
+     * Gets blob of stored file.
      *
      * @param id id of the file. Its sha2 checksum.
-     * @return path to the file. File under this path will exist
+     * @return blob of the file, either whole file or region of packed segment
      * @throws IOException               if io failed
      * @throws IllegalArgumentException  if id has incorrect form
      * @throws ResourceNotFoundException if file with given id does not exist
      */
-    public Path getFile(String id) throws IOException {
-        if (id.length() < 5) {
-            throw new IllegalArgumentException("Resource id " + id + " too short");
-        }
+    public StoredBlob getBlob(String id) throws IOException {
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            String sha = normalizeId(id);
+            StoredBlob packed = packedStore.get(sha);
+            if (packed != null) {
+                outcome = "found";
+                return packed;
+            }
 
-        Path path = getPathForSha(id);
-        if (!Files.exists(path)) {
-            throw new ResourceNotFoundException("Resource [id=%s] not found");
-        }
+            Path path = getPathForSha(sha);
+            if (!Files.exists(path)) {
+                outcome = "not_found";
+                throw new ResourceNotFoundException("Resource [id=%s] not found", sha);
+            }
 
-        return path;
+            outcome = "found";
+            return new StoredBlob(path, Files.size(path));
+        } finally {
+            record("scraper.storage.get", outcome, start);
+        }
     }
 }
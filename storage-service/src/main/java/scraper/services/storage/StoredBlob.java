@@ -0,0 +1,103 @@
+package scraper.services.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Content of stored blob - region of a file on disk.
+ * <p>
+ * Large blob is whole file of its own. Small blob may be region of packed segment, see {@link PackedBlobStore}, with content already mapped into memory.
+ */
+public final class StoredBlob {
+
+    private final Path file;
+
+    private final long offset;
+
+    private final long length;
+
+    private final ByteBuffer content;
+
+    /**
+     * Creates blob stored as whole file.
+     *
+     * @param file   file with the blob
+     * @param length length of the file
+     */
+    public StoredBlob(Path file, long length) {
+        this.file = file;
+        this.offset = 0;
+        this.length = length;
+        this.content = null;
+    }
+
+    /**
+     * Creates blob stored as mapped region of a segment.
+     *
+     * @param segment segment with the blob
+     * @param offset  offset of the blob in the segment
+     * @param content mapped content of the blob, from its position to its limit
+     */
+    public StoredBlob(Path segment, long offset, ByteBuffer content) {
+        this.file = segment;
+        this.offset = offset;
+        this.length = content.remaining();
+        this.content = content;
+    }
+
+    /**
+     * @return file containing the blob
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return offset of the blob in its file
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return length of the blob
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Transfers part of the blob to the channel, without copying it through heap buffers.
+     *
+     * @param start  start of the part in the blob, inclusive
+     * @param end    end of the part in the blob, exclusive
+     * @param target channel to transfer to
+     * @throws IOException if io failed
+     */
+    public void transferTo(long start, long end, WritableByteChannel target) throws IOException {
+        if (content != null) {
+            ByteBuffer part = content.duplicate();
+            part.limit(content.position() + (int) end).position(content.position() + (int) start);
+            while (part.hasRemaining()) {
+                target.write(part);
+            }
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = offset + start;
+            while (position < offset + end) {
+                long transferred = channel.transferTo(position, offset + end - position, target);
+                if (transferred <= 0) {
+                    throw new EOFException(String.format("File [%s] ended at %d, before %d", file, position, offset + end));
+                }
+                position += transferred;
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package scraper.services.storage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import scraper.exception.ValidationException;
+import scraper.test.FileSystemRule;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BlobFramesTest {
+
+    @Rule
+    public final FileSystemRule rule = new FileSystemRule();
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        // given
+        Path file1 = file("file1", "Something\nis here");
+        Path file2 = file("file2", "");
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        WritableByteChannel target = Channels.newChannel(batch);
+
+        // when
+        BlobFrames.writeFrame(new StoredBlob(file1, Files.size(file1)), target);
+        BlobFrames.writeFrame(new StoredBlob(file2, Files.size(file2)), target);
+        BlobFrames.Reader reader = new BlobFrames.Reader(new ByteArrayInputStream(batch.toByteArray()));
+
+        // then
+        assertEquals(8 + 17 + 8, batch.size());
+        assertEquals("Something\nis here", read(reader.next()));
+        assertEquals("", read(reader.next()));
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void testWriteMissing() throws Exception {
+        // given
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+
+        // when
+        BlobFrames.writeMissing(Channels.newChannel(batch));
+
+        // then
+        byte[] expected = new byte[8];
+        Arrays.fill(expected, (byte) 0xFF);
+        assertEquals(Arrays.toString(expected), Arrays.toString(batch.toByteArray()));
+    }
+
+    @Test
+    public void testRead_unreadContentSkipped() throws Exception {
+        // given
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        WritableByteChannel target = Channels.newChannel(batch);
+        BlobFrames.writeFrame(new StoredBlob(file("file1", "Another file"), 12), target);
+        BlobFrames.writeFrame(new StoredBlob(file("file2", "This\nis\nmadness"), 15), target);
+        BlobFrames.Reader reader = new BlobFrames.Reader(new ByteArrayInputStream(batch.toByteArray()));
+
+        // when
+        InputStream first = reader.next();
+        first.read();
+        InputStream second = reader.next();
+
+        // then
+        assertEquals("This\nis\nmadness", read(second));
+        assertEquals(-1, first.read());
+    }
+
+    @Test(expected = EOFException.class)
+    public void testRead_truncatedContent() throws Exception {
+        // given
+        byte[] batch = {0, 0, 0, 0, 0, 0, 0, 10, 'a', 'b'};
+        BlobFrames.Reader reader = new BlobFrames.Reader(new ByteArrayInputStream(batch));
+
+        // when
+        read(reader.next());
+    }
+
+    @Test(expected = EOFException.class)
+    public void testRead_truncatedLength() throws Exception {
+        // given
+        byte[] batch = {0, 0, 0};
+        BlobFrames.Reader reader = new BlobFrames.Reader(new ByteArrayInputStream(batch));
+
+        // when
+        reader.next();
+    }
+
+    @Test(expected = ValidationException.class)
+    public void testRead_missingBlob() throws Exception {
+        // given
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        BlobFrames.writeMissing(Channels.newChannel(batch));
+        BlobFrames.Reader reader = new BlobFrames.Reader(new ByteArrayInputStream(batch.toByteArray()));
+
+        // when
+        reader.next();
+    }
+
+    private Path file(String name, String content) throws IOException {
+        Path file = rule.getFileSystem().getPath(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+
+        return file;
+    }
+
+    private static String read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            content.write(buffer, 0, read);
+        }
+
+        return new String(content.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,189 @@
+package scraper.services.storage;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import scraper.test.FileSystemRule;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.stub;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FileSenderTest {
+
+    private static final String CONTENT = "0123456789";
+
+    @Rule
+    public final FileSystemRule rule = new FileSystemRule();
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private HttpServletRequest request;
+
+    @Mock
+    private HttpServletResponse response;
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    private final FileSender fileSender = new FileSender();
+
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = rule.getFileSystem().getPath("file");
+        Files.write(file, CONTENT.getBytes(StandardCharsets.UTF_8));
+        stub(response.getOutputStream()).toReturn(new BodyStream());
+    }
+
+    @Test
+    public void testSend() throws Exception {
+        // when
+        fileSender.send(new StoredBlob(file, 10), request, response);
+
+        // then
+        assertEquals(CONTENT, body.toString("UTF-8"));
+        verify(response).setContentLengthLong(10);
+        verify(response).setHeader("Accept-Ranges", "bytes");
+        verify(response, never()).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+    }
+
+    @Test
+    public void testSend_range() throws Exception {
+        // given
+        stub(request.getHeader("Range")).toReturn("bytes=2-5");
+
+        // when
+        fileSender.send(new StoredBlob(file, 10), request, response);
+
+        // then
+        assertEquals("2345", body.toString("UTF-8"));
+        verify(response).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        verify(response).setHeader("Content-Range", "bytes 2-5/10");
+        verify(response).setContentLengthLong(4);
+    }
+
+    @Test
+    public void testSend_suffixRange() throws Exception {
+        // given
+        stub(request.getHeader("Range")).toReturn("bytes=-3");
+
+        // when
+        fileSender.send(new StoredBlob(file, 10), request, response);
+
+        // then
+        assertEquals("789", body.toString("UTF-8"));
+        verify(response).setHeader("Content-Range", "bytes 7-9/10");
+    }
+
+    @Test
+    public void testSend_unsatisfiableRange() throws Exception {
+        // given
+        stub(request.getHeader("Range")).toReturn("bytes=10-");
+
+        // when
+        fileSender.send(new StoredBlob(file, 10), request, response);
+
+        // then
+        assertEquals(0, body.size());
+        verify(response).setHeader("Content-Range", "bytes */10");
+        verify(response).sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+    }
+
+    @Test
+    public void testSend_malformedRange() throws Exception {
+        // given
+        stub(request.getHeader("Range")).toReturn("lines=1-2");
+
+        // when
+        fileSender.send(new StoredBlob(file, 10), request, response);
+
+        // then
+        assertEquals(CONTENT, body.toString("UTF-8"));
+        verify(response, never()).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+    }
+
+    @Test
+    public void testSend_sendfile() throws Exception {
+        // given
+        Path diskFile = temporaryFolder.newFile().toPath();
+        Files.write(diskFile, CONTENT.getBytes(StandardCharsets.UTF_8));
+        stub(request.getAttribute(FileSender.SENDFILE_SUPPORTED_ATTR)).toReturn(Boolean.TRUE);
+        stub(request.getHeader("Range")).toReturn("bytes=2-");
+
+        // when
+        fileSender.send(new StoredBlob(diskFile, 10), request, response);
+
+        // then
+        verify(request).setAttribute(FileSender.SENDFILE_FILENAME_ATTR, diskFile.toAbsolutePath().toString());
+        verify(request).setAttribute(FileSender.SENDFILE_START_ATTR, 2L);
+        verify(request).setAttribute(FileSender.SENDFILE_END_ATTR, 10L);
+        verify(response).setContentLengthLong(8);
+        verify(response, never()).getOutputStream();
+    }
+
+    @Test
+    public void testSend_packedBlob() throws Exception {
+        // given
+        ByteBuffer segment = ByteBuffer.wrap("xxx0123456789yyy".getBytes(StandardCharsets.UTF_8));
+        segment.limit(13).position(3);
+        stub(request.getHeader("Range")).toReturn("bytes=4-6");
+
+        // when
+        fileSender.send(new StoredBlob(file, 3, segment.slice()), request, response);
+
+        // then
+        assertEquals("456", body.toString("UTF-8"));
+        verify(response).setHeader("Content-Range", "bytes 4-6/10");
+    }
+
+    @Test
+    public void testSend_packedBlob_sendfile() throws Exception {
+        // given
+        Path diskFile = temporaryFolder.newFile().toPath();
+        stub(request.getAttribute(FileSender.SENDFILE_SUPPORTED_ATTR)).toReturn(Boolean.TRUE);
+
+        // when
+        fileSender.send(new StoredBlob(diskFile, 3, ByteBuffer.allocate(10)), request, response);
+
+        // then
+        verify(request).setAttribute(FileSender.SENDFILE_START_ATTR, 3L);
+        verify(request).setAttribute(FileSender.SENDFILE_END_ATTR, 13L);
+        verify(response).setContentLengthLong(10);
+    }
+
+    private final class BodyStream extends ServletOutputStream {
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+
+        @Override
+        public void write(int b) {
+            body.write(b);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package scraper.services.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.ExceptionHandlerExceptionResolver;
+import scraper.exception.ResourceNotFoundException;
+import scraper.exception.ValidationException;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.stub;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FilesControllerTest {
+
+    private static final String SHA = "02C85CEA9E45CC036DAE7A44C487EB0BE95E5FF6E3D73C2F7DBB66E58C38F869";
+
+    @Mock
+    private StorageService storageService;
+
+    @Mock
+    private FileSender fileSender;
+
+    @Mock
+    private HttpServletRequest request;
+
+    @Mock
+    private HttpServletResponse response;
+
+    private AnnotationConfigApplicationContext context;
+
+    private ExceptionHandlerExceptionResolver exceptionResolver;
+
+    private FilesController filesController;
+
+    @Before
+    public void setUp() {
+        context = new AnnotationConfigApplicationContext(StorageConfiguration.class);
+        exceptionResolver = new ExceptionHandlerExceptionResolver();
+        exceptionResolver.setApplicationContext(context);
+        exceptionResolver.afterPropertiesSet();
+        filesController = new FilesController(storageService, fileSender);
+    }
+
+    @After
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    public void testPutFile_invalidId() throws Exception {
+        // given
+        stub(storageService.exists("../12AB")).toThrow(new IllegalArgumentException("Resource id ../12AB is not sha2 checksum"));
+
+        // when
+        try {
+            filesController.putFile("../12AB", request);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            resolve("putFile", ex, String.class, HttpServletRequest.class);
+        }
+
+        // then
+        verify(response).sendError(400, "Resource id ../12AB is not sha2 checksum");
+    }
+
+    @Test
+    public void testPutFile_checksumMismatch() throws Exception {
+        // given
+        InputStream content = new ByteArrayInputStream(new byte[0]);
+        stub(request.getInputStream()).toReturn(new BodyStream(content));
+        stub(storageService.saveFile(any(InputStream.class), eq(SHA))).toThrow(new ValidationException("Checksum mismatch"));
+
+        // when
+        try {
+            filesController.putFile(SHA, request);
+            fail();
+        } catch (ValidationException ex) {
+            resolve("putFile", ex, String.class, HttpServletRequest.class);
+        }
+
+        // then
+        verify(response).sendError(400, "Checksum mismatch");
+    }
+
+    @Test
+    public void testDownloadFile_missing() throws Exception {
+        // given
+        stub(storageService.getBlob(SHA)).toThrow(new ResourceNotFoundException("Resource [id=%s] not found", SHA));
+
+        // when
+        try {
+            filesController.downloadFile(SHA, new ServletWebRequest(request, response), request, response);
+            fail();
+        } catch (ResourceNotFoundException ex) {
+            resolve("downloadFile", ex, String.class, ServletWebRequest.class, HttpServletRequest.class, HttpServletResponse.class);
+        }
+
+        // then
+        verify(response).sendError(404, "Resource [id=" + SHA + "] not found");
+    }
+
+    @Test
+    public void testDownloadFile_notModifiedLowerCaseId() throws Exception {
+        // given
+        stub(storageService.getBlob(SHA.toLowerCase(Locale.ROOT))).toReturn(new StoredBlob(Paths.get(SHA), 10));
+        stub(request.getMethod()).toReturn("GET");
+        stub(response.getStatus()).toReturn(200);
+        stub(request.getHeaders(HttpHeaders.IF_NONE_MATCH)).toReturn(Collections.enumeration(Collections.singletonList("\"" + SHA + "\"")));
+
+        // when
+        filesController.downloadFile(SHA.toLowerCase(Locale.ROOT), new ServletWebRequest(request, response), request, response);
+
+        // then
+        verify(response).setStatus(304);
+        verify(fileSender, never()).send(any(StoredBlob.class), any(HttpServletRequest.class), any(HttpServletResponse.class));
+    }
+
+    @Test
+    public void testFileExists_lowerCaseId() {
+        // given
+        stub(storageService.exists(SHA.toLowerCase(Locale.ROOT))).toReturn(true);
+
+        // when
+        ResponseEntity<Void> result = filesController.fileExists(SHA.toLowerCase(Locale.ROOT));
+
+        // then
+        assertEquals("\"" + SHA + "\"", result.getHeaders().getETag());
+    }
+
+    private void resolve(String method, Exception ex, Class<?>... parameterTypes) throws NoSuchMethodException {
+        HandlerMethod handler = new HandlerMethod(filesController, method, parameterTypes);
+        assertNotNull(exceptionResolver.resolveException(request, response, handler, ex));
+    }
+
+    private static final class BodyStream extends ServletInputStream {
+
+        private final InputStream content;
+
+        private BodyStream(InputStream content) {
+            this.content = content;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return false;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+        }
+
+        @Override
+        public int read() throws IOException {
+            return content.read();
+        }
+    }
+}
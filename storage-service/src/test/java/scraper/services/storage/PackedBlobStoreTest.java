@@ -0,0 +1,204 @@
+package scraper.services.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PackedBlobStoreTest {
+
+    private static final String SHA_1 = "02C85CEA9E45CC036DAE7A44C487EB0BE95E5FF6E3D73C2F7DBB66E58C38F869";
+
+    private static final String SHA_2 = "2D7B141433885598043EFAB600B0A582FC3921C3D2A0B67D8FCDAE45DAC3F27B";
+
+    private static final String SHA_3 = "AA6F79E6B96E48EF6BB1399889AE8361C943E34197A9C212C8BF7178618D14B6";
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path segmentsPath;
+
+    private PackedBlobStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        segmentsPath = temporaryFolder.getRoot().toPath().resolve("segments");
+        store = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    public void testAppend() throws Exception {
+        // when
+        store.append(SHA_1, file("Something\nis here"), 17);
+        store.append(SHA_2, file("Another file"), 12);
+
+        // then
+        assertTrue(store.contains(SHA_1));
+        assertTrue(store.contains(SHA_2));
+        assertFalse(store.contains(SHA_3));
+        assertNull(store.get(SHA_3));
+        assertBlob("Something\nis here", 0, store.get(SHA_1));
+        assertBlob("Another file", 17, store.get(SHA_2));
+        assertEquals(29, Files.size(segmentsPath.resolve("segment-00000000")));
+    }
+
+    @Test
+    public void testAppend_duplicate() throws Exception {
+        // when
+        store.append(SHA_1, file("Something\nis here"), 17);
+        store.append(SHA_1, file("Something\nis here"), 17);
+
+        // then
+        assertEquals(17, Files.size(segmentsPath.resolve("segment-00000000")));
+    }
+
+    @Test
+    public void testAppend_newSegment() throws Exception {
+        // when
+        store.append(SHA_1, file("Something\nis here"), 17);
+        store.append(SHA_2, file("Another file"), 12);
+        store.append(SHA_3, file("This\nis\nmadness"), 15);
+
+        // then
+        assertBlob("Another file", 17, store.get(SHA_2));
+        assertBlob("This\nis\nmadness", 0, store.get(SHA_3));
+        assertEquals(segmentsPath.resolve("segment-00000001"), store.get(SHA_3).getFile());
+    }
+
+    @Test
+    public void testAppend_failedTruncated() throws Exception {
+        // given
+        store.append(SHA_1, file("Something\nis here"), 17);
+
+        // when
+        try {
+            store.append(SHA_2, file("Another"), 12);
+            fail();
+        } catch (EOFException ex) {
+            // then
+            assertFalse(store.contains(SHA_2));
+            assertEquals(17, Files.size(segmentsPath.resolve("segment-00000000")));
+            assertEquals(84, Files.size(segmentsPath.resolve("index")));
+        }
+        store.append(SHA_2, file("Another file"), 12);
+        assertBlob("Another file", 17, store.get(SHA_2));
+    }
+
+    @Test
+    public void testGet_sealedSegment() throws Exception {
+        // given
+        store.append(SHA_1, file("Something\nis here"), 17);
+        StoredBlob current = store.get(SHA_1);
+        store.append(SHA_2, file("Another file"), 12);
+        store.append(SHA_3, file("This\nis\nmadness"), 15);
+
+        // when
+        StoredBlob sealed = store.get(SHA_1);
+
+        // then
+        assertBlob("Something\nis here", 0, current);
+        assertBlob("Something\nis here", 0, sealed);
+        assertBlob("Another file", 17, store.get(SHA_2));
+        assertBlob("This\nis\nmadness", 0, store.get(SHA_3));
+    }
+
+    @Test
+    public void testAccepts() throws Exception {
+        // when
+        PackedBlobStore disabled = new PackedBlobStore(temporaryFolder.getRoot().toPath().resolve("disabled").toString(), false, 20, 32, FileSystems.getDefault());
+
+        // then
+        assertTrue(store.accepts(19));
+        assertFalse(store.accepts(20));
+        assertFalse(disabled.accepts(1));
+        assertFalse(Files.exists(temporaryFolder.getRoot().toPath().resolve("disabled")));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAppend_tooLarge() throws Exception {
+        // when
+        store.append(SHA_1, file("Something\nis here, but it is too long"), 37);
+    }
+
+    @Test
+    public void testOpen_indexLoaded() throws Exception {
+        // given
+        store.append(SHA_1, file("Something\nis here"), 17);
+        store.append(SHA_2, file("Another file"), 12);
+        store.append(SHA_3, file("This\nis\nmadness"), 15);
+        store.close();
+
+        // when
+        store = open();
+        store.append(SHA_1, file("Something\nis here"), 17);
+
+        // then
+        assertBlob("Something\nis here", 0, store.get(SHA_1));
+        assertBlob("This\nis\nmadness", 0, store.get(SHA_3));
+        assertEquals(15, Files.size(segmentsPath.resolve("segment-00000001")));
+    }
+
+    @Test
+    public void testOpen_truncatedRecordDropped() throws Exception {
+        // given
+        store.append(SHA_1, file("Something\nis here"), 17);
+        store.append(SHA_2, file("Another file"), 12);
+        store.close();
+        Path index = segmentsPath.resolve("index");
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(index) - 1);
+        }
+
+        // when
+        store = open();
+
+        // then
+        assertTrue(store.contains(SHA_1));
+        assertFalse(store.contains(SHA_2));
+        store.append(SHA_2, file("Another file"), 12);
+        assertBlob("Another file", 0, store.get(SHA_2));
+    }
+
+    private PackedBlobStore open() throws IOException {
+        return new PackedBlobStore(segmentsPath.toString(), true, 20, 32, FileSystems.getDefault());
+    }
+
+    private Path file(String content) throws IOException {
+        Path file = temporaryFolder.newFile().toPath();
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+
+        return file;
+    }
+
+    private static void assertBlob(String content, long offset, StoredBlob blob) throws IOException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        blob.transferTo(0, blob.getLength(), Channels.newChannel(target));
+
+        assertEquals(content, new String(target.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(offset, blob.getOffset());
+        assertEquals(content.length(), blob.getLength());
+    }
+}
@@ -1,10 +1,13 @@
 package scraper.services.storage;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import scraper.common.FileUtils;
 import scraper.exception.ResourceNotFoundException;
+import scraper.exception.ValidationException;
 import scraper.test.FileSystemRule;
 
 import java.io.ByteArrayInputStream;
@@ -12,10 +15,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Random;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -24,14 +31,19 @@ public class StorageServiceTest {
     @Rule
     public final FileSystemRule rule = new FileSystemRule();
 
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private StorageService storageService;
 
     private FileSystem fs;
 
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @Before
     public void setUp() throws IOException {
         fs = rule.getFileSystem();
-        storageService = new StorageService("data", "temp", fs);
+        storageService = new StorageService("data", "temp", fs, meterRegistry, disabledPackedStore());
     }
 
     @Test
@@ -105,48 +117,173 @@ public class StorageServiceTest {
         assertExists(fileContent, "data", "02", "C8", "02C85CEA9E45CC036DAE7A44C487EB0BE95E5FF6E3D73C2F7DBB66E58C38F869");
         assertCountFiles(0, "temp");
         assertCountFiles(1, "data");
+        assertEquals(1, meterRegistry.get("scraper.storage.save").tags("outcome", "stored").timer().count());
+        assertEquals(1, meterRegistry.get("scraper.storage.save").tags("outcome", "duplicate").timer().count());
+        assertEquals(2 * fileContent.length(), meterRegistry.get("scraper.storage.save.size").summary().totalAmount(), 0);
+    }
+
+    @Test
+    public void testSaveFile_largeFile() throws Exception {
+        // given
+        byte[] fileContent = new byte[200 * 1024 + 17];
+        new Random(42).nextBytes(fileContent);
+
+        // when
+        String sha2 = storageService.saveFile(new ByteArrayInputStream(fileContent));
+
+        // then
+        Path stored = fs.getPath("data", sha2.substring(0, 2), sha2.substring(2, 4), sha2);
+        assertArrayEquals(fileContent, Files.readAllBytes(stored));
+        assertEquals(FileUtils.computeSHA2(stored), sha2);
+        assertCountFiles(0, "temp");
+        assertCountFiles(1, "data");
+        assertEquals(fileContent.length, meterRegistry.get("scraper.storage.save.size").summary().totalAmount(), 0);
+    }
+
+    @Test
+    public void testSaveFile_expectedId() throws Exception {
+        // given
+        String fileContent = "Something\nis here";
+        InputStream inStream = new ByteArrayInputStream(fileContent.getBytes(StandardCharsets.UTF_8));
+
+        // when
+        String sha2 = storageService.saveFile(inStream, "02c85cea9e45cc036dae7a44c487eb0be95e5ff6e3d73c2f7dbb66e58c38f869");
+
+        // then
+        assertEquals("02C85CEA9E45CC036DAE7A44C487EB0BE95E5FF6E3D73C2F7DBB66E58C38F869", sha2);
+        assertExists(fileContent, "data", "02", "C8", "02C85CEA9E45CC036DAE7A44C487EB0BE95E5FF6E3D73C2F7DBB66E58C38F869");
+    }
+
+    @Test
+    public void testSaveFile_checksumMismatch() throws Exception {
+        // given
+        InputStream inStream = new ByteArrayInputStream("Another file".getBytes(StandardCharsets.UTF_8));
+
+        // when
+        try {
+            storageService.saveFile(inStream, "02C85CEA9E45CC036DAE7A44C487EB0BE95E5FF6E3D73C2F7DBB66E58C38F869");
+            fail();
+        } catch (ValidationException ex) {
+            // then
+            assertCountFiles(0, "temp");
+            assertCountFiles(0, "data");
+            assertFalse(storageService.exists("2D7B141433885598043EFAB600B0A582FC3921C3D2A0B67D8FCDAE45DAC3F27B"));
+            assertEquals(1, meterRegistry.get("scraper.storage.save").tags("outcome", "mismatch").timer().count());
+        }
+    }
+
+    @Test
+    public void testExists() throws Exception {
+        // given
+        storageService.saveFile(new ByteArrayInputStream("Something\nis here".getBytes(StandardCharsets.UTF_8)));
+
+        // when
+        boolean stored = storageService.exists("02c85cea9e45cc036dae7a44c487eb0be95e5ff6e3d73c2f7dbb66e58c38f869");
+        boolean missing = storageService.exists("2D7B141433885598043EFAB600B0A582FC3921C3D2A0B67D8FCDAE45DAC3F27B");
+
+        // then
+        assertTrue(stored);
+        assertFalse(missing);
+    }
+
+    @Test
+    public void testExists_storedBeforeStart() throws Exception {
+        // given
+        Path existingFile = fs.getPath("data", "2D", "7B", "2D7B141433885598043EFAB600B0A582FC3921C3D2A0B67D8FCDAE45DAC3F27B");
+        Files.createDirectories(existingFile.getParent());
+        Files.createFile(existingFile);
+        StorageService restarted = new StorageService("data", "temp", fs, meterRegistry, disabledPackedStore());
+        Files.delete(existingFile);
+
+        // when
+        boolean stored = restarted.exists("2D7B141433885598043EFAB600B0A582FC3921C3D2A0B67D8FCDAE45DAC3F27B");
+
+        // then
+        assertTrue(stored);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testExists_invalidId() {
+        // when
+        storageService.exists("../12AB");
+    }
+
+    @Test
+    public void testSaveFile_packed() throws Exception {
+        // given
+        Path root = temporaryFolder.getRoot().toPath();
+        PackedBlobStore packedStore = new PackedBlobStore(root.resolve("segments").toString(), true, 16, 1024, FileSystems.getDefault());
+        StorageService packedService = new StorageService(root.resolve("data").toString(), root.resolve("temp").toString(), FileSystems.getDefault(), meterRegistry,
+                packedStore);
+
+        // when
+        String smallSha2 = packedService.saveFile(new ByteArrayInputStream("Another file".getBytes(StandardCharsets.UTF_8)));
+        String largeSha2 = packedService.saveFile(new ByteArrayInputStream("Something\nis here".getBytes(StandardCharsets.UTF_8)));
+
+        // then
+        StoredBlob small = packedService.getBlob(smallSha2);
+        StoredBlob large = packedService.getBlob(largeSha2);
+        assertEquals(root.resolve("segments").resolve("segment-00000000"), small.getFile());
+        assertEquals(12, small.getLength());
+        assertEquals(root.resolve("data").resolve("02").resolve("C8").resolve(largeSha2), large.getFile());
+        assertTrue(packedService.exists(smallSha2));
+        assertFalse(Files.exists(root.resolve("data").resolve("2D")));
+        assertEquals(0, Files.list(root.resolve("temp")).count());
+        packedStore.close();
     }
 
     @Test(expected = IllegalArgumentException.class)
     public void testGetFile_tooShortId() throws IOException {
         // when
-        storageService.getFile("1234");
+        storageService.getBlob("1234");
     }
 
     @Test(expected = ResourceNotFoundException.class)
     public void testGetFile_missingFile_noOtherFiles() throws IOException {
         // when
-        storageService.getFile("02C85CEA9E45CC036DAE7A44C487EB0BE95E5FF6E3D73C2F7DBB66E58C38F869");
+        storageService.getBlob("02C85CEA9E45CC036DAE7A44C487EB0BE95E5FF6E3D73C2F7DBB66E58C38F869");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetFile_invalidId() throws IOException {
+        // when
+        storageService.getBlob("../12AB/02C85CEA9E45CC036DAE7A44C487EB0BE95E5FF6E3D73C2F7DBB66E58C38");
     }
 
     @Test
     public void testGetFile_missingFile_otherFiles() throws Exception {
         // given
-        Path existingFile = fs.getPath("data", "12", "AB", "12ABCD");
+        Path existingFile = fs.getPath("data", "02", "C8", "02C85CEA9E45CC036DAE7A44C487EB0BE95E5FF6E3D73C2F7DBB66E58C38F869");
         Files.createDirectories(existingFile.getParent());
         Files.createFile(existingFile);
 
         // when
         try {
-            storageService.getFile("123456");
+            storageService.getBlob("02C85CEA9E45CC036DAE7A44C487EB0BE95E5FF6E3D73C2F7DBB66E58C38F860");
             fail();
         } catch (ResourceNotFoundException ex) {
             // then
+            assertEquals(1, meterRegistry.get("scraper.storage.get").tags("outcome", "not_found").timer().count());
         }
     }
 
     @Test
     public void testGetFile() throws Exception {
         // given
-        Path existingFile = fs.getPath("data", "12", "AB", "12ABCD");
+        Path existingFile = fs.getPath("data", "02", "C8", "02C85CEA9E45CC036DAE7A44C487EB0BE95E5FF6E3D73C2F7DBB66E58C38F869");
         Files.createDirectories(existingFile.getParent());
         Files.createFile(existingFile);
 
         // when
-        Path obtainedPath = storageService.getFile("12ABCD");
+        StoredBlob obtainedBlob = storageService.getBlob("02c85cea9e45cc036dae7a44c487eb0be95e5ff6e3d73c2f7dbb66e58c38f869");
 
         // then
-        assertEquals(existingFile, obtainedPath);
+        assertEquals(existingFile, obtainedBlob.getFile());
+        assertEquals(0, obtainedBlob.getLength());
+    }
+
+    private PackedBlobStore disabledPackedStore() throws IOException {
+        return new PackedBlobStore("segments", false, 0, 0, fs);
     }
 
     private void assertExists(String fileContent, String dir, String... path) throws IOException {